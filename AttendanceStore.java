@@ -0,0 +1,376 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * AttendanceStore
+ * Append-only, time-ordered store of check-in records (participant, event, timestamp, status)
+ * with per-event and per-hour indexes, kept next to the CSVs ("attendance.dat").
+ *
+ * Layout (big-endian):
+ *   magic "SRAT", int version, long reserved
+ *   records of 24 bytes: int participant key, int event ID, long epoch millis, byte status
+ *   (1 Present, 0 Absent), 7 bytes spare
+ * Participant keys index "attendance.dat.ids", one participant ID per line, appended (and synced)
+ * before the records that use them.
+ *
+ * Timestamps are made non-decreasing on append, so every event's records are already in time order:
+ * the per-event index is a list of record numbers, split into hour buckets that also count the
+ * marks per status. An hourly series is read off the buckets without touching any record, and a
+ * time-range query only reads records in its two boundary hours beyond the ones it returns. The
+ * latest mark per participant and event is kept for "who is in" queries.
+ *
+ * A torn trailing record (crash mid-append) is cut off when the store is opened.
+ *
+ * Shared mode (several desks on one folder, see ParticipantFileHandler.setShared) takes the
+ * cross-process FileMutex "<path>.lock" for opening and for every append, and an append first reads
+ * the IDs and records the other processes added, so keys and record numbers stay the same in every
+ * process. Queries see other processes' marks as of this process's last append.
+ */
+public class AttendanceStore implements Closeable {
+    private static final int MAGIC = 0x53524154; // "SRAT"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    static final int RECORD_BYTES = 24;
+    public static final long HOUR_MILLIS = 3_600_000L;
+
+    /** Per-event index: record numbers in time order, hour buckets over them, latest mark per participant. */
+    private static final class EventIndex {
+        int[] recs = new int[16];
+        int size;
+        long[] hour = new long[4];        // bucket start (epoch millis, whole hours), ascending
+        int[] hourFirst = new int[4];     // position in recs of the bucket's first record
+        int[] hourPresent = new int[4];
+        int[] hourAbsent = new int[4];
+        int hours;
+        final Map<Integer, Integer> latest = new HashMap<>(); // participant key -> record number, ~record if Absent
+        int presentNow;                                        // participants whose latest mark is Present
+    }
+
+    private final File dataFile;
+    private final File idsFile;
+    private final FileChannel channel;
+    private final FileChannel idsChannel;
+    private final FileMutex mutex;    // shared mode only
+    private long idsLength;           // bytes of the ids file read or written so far (whole lines)
+    private final List<String> ids = new ArrayList<>();
+    private final Map<String, Integer> keys = new HashMap<>();
+    private final Map<Integer, EventIndex> byEvent = new HashMap<>();
+    private int count;
+    private long lastTimestamp = Long.MIN_VALUE;
+    private MappedByteBuffer view;    // read-only mapping of the records, remapped as the file grows
+    private int viewRecords;
+
+    public AttendanceStore(String path) throws IOException {
+        this(path, false);
+    }
+
+    // shared: other processes append to the same files
+    public AttendanceStore(String path, boolean shared) throws IOException {
+        dataFile = new File(path);
+        idsFile = new File(path + ".ids");
+        mutex = shared ? new FileMutex(path + ".lock") : null;
+        channel = FileChannel.open(dataFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        idsChannel = FileChannel.open(idsFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            lock();
+            try {
+                if (channel.size() < HEADER_BYTES) writeHeader();
+                else checkHeader();
+                catchUp();
+            } finally {
+                unlock();
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    // ---------- Writing ----------
+
+    /**
+     * Append a group of marks with one write and one sync (plus one for participant IDs seen for the
+     * first time). Returns the marks as stored, i.e. with timestamps clamped to be non-decreasing.
+     */
+    public synchronized List<CheckInPipeline.CheckIn> append(List<CheckInPipeline.CheckIn> group) throws IOException {
+        lock();
+        try {
+            if (mutex != null) catchUp();
+            return appendLocked(group);
+        } finally {
+            unlock();
+        }
+    }
+
+    private List<CheckInPipeline.CheckIn> appendLocked(List<CheckInPipeline.CheckIn> group) throws IOException {
+        List<CheckInPipeline.CheckIn> stored = new ArrayList<>(group.size());
+        Set<String> newIds = new LinkedHashSet<>();
+        for (CheckInPipeline.CheckIn c : group) if (!keys.containsKey(c.participantId)) newIds.add(c.participantId);
+        if (!newIds.isEmpty()) writeIds(newIds);
+        ByteBuffer buf = ByteBuffer.allocate(group.size() * RECORD_BYTES);
+        long ts = lastTimestamp;
+        for (CheckInPipeline.CheckIn c : group) {
+            ts = Math.max(ts, c.timestamp);
+            buf.putInt(keys.get(c.participantId)).putInt(c.eventId).putLong(ts).put((byte) (c.present() ? 1 : 0));
+            buf.position(buf.position() + 7);
+            stored.add(ts == c.timestamp ? c : new CheckInPipeline.CheckIn(c.participantId, c.eventId, ts, c.status));
+        }
+        buf.flip();
+        long pos = HEADER_BYTES + (long) count * RECORD_BYTES;
+        while (buf.hasRemaining()) pos += channel.write(buf, pos);
+        channel.force(false);
+        for (CheckInPipeline.CheckIn c : stored) index(count++, keys.get(c.participantId), c.eventId, c.timestamp, c.present());
+        lastTimestamp = ts;
+        return stored;
+    }
+
+    public void close() throws IOException {
+        try {
+            idsChannel.close();
+            channel.close();
+        } finally {
+            if (mutex != null) mutex.close();
+        }
+    }
+
+    private void lock() {
+        if (mutex != null) mutex.lock();
+    }
+
+    private void unlock() {
+        if (mutex != null) mutex.unlock();
+    }
+
+    /**
+     * Read the IDs and whole records added since the last look (all of them on open), and cut off a
+     * torn tail left by a crash. Holds the mutex in shared mode, so nobody is mid-append.
+     */
+    private void catchUp() throws IOException {
+        readIds();
+        long whole = (channel.size() - HEADER_BYTES) / RECORD_BYTES;
+        if (channel.size() > HEADER_BYTES + whole * RECORD_BYTES) channel.truncate(HEADER_BYTES + whole * RECORD_BYTES);
+        if (whole > Integer.MAX_VALUE) throw new IOException("attendance store over " + Integer.MAX_VALUE + " records");
+        if (whole > count) {
+            int from = count;
+            count = (int) whole;
+            indexRecords(from);
+        }
+    }
+
+    // ---------- Queries ----------
+
+    public synchronized int size() {
+        return count;
+    }
+
+    // Latest mark of the participant at the event, or null
+    public synchronized CheckInPipeline.CheckIn last(String participantId, int eventId) {
+        EventIndex ix = byEvent.get(eventId);
+        Integer key = keys.get(participantId);
+        if (ix == null || key == null) return null;
+        Integer rec = ix.latest.get(key);
+        return rec == null ? null : read(rec < 0 ? ~rec : rec);
+    }
+
+    // Participants whose latest mark at the event is Present
+    public synchronized int presentCount(int eventId) {
+        EventIndex ix = byEvent.get(eventId);
+        return ix == null ? 0 : ix.presentNow;
+    }
+
+    // Participants who were ever marked at the event
+    public synchronized int participantCount(int eventId) {
+        EventIndex ix = byEvent.get(eventId);
+        return ix == null ? 0 : ix.latest.size();
+    }
+
+    // Marks recorded for the event
+    public synchronized int markCount(int eventId) {
+        EventIndex ix = byEvent.get(eventId);
+        return ix == null ? 0 : ix.size;
+    }
+
+    /**
+     * Marks per hour for the event in [from, to): hour start (epoch millis) -> {Present marks, Absent marks}.
+     * Read from the hour buckets only; an hour partly inside the range counts as a whole.
+     */
+    public synchronized SortedMap<Long, int[]> hourly(int eventId, long from, long to) {
+        SortedMap<Long, int[]> out = new TreeMap<>();
+        EventIndex ix = byEvent.get(eventId);
+        if (ix == null) return out;
+        for (int b = firstBucket(ix, hourOf(from)); b < ix.hours && ix.hour[b] < to; b++) {
+            out.put(ix.hour[b], new int[]{ix.hourPresent[b], ix.hourAbsent[b]});
+        }
+        return out;
+    }
+
+    // The event's marks with from <= timestamp < to, in time order
+    public synchronized List<CheckInPipeline.CheckIn> records(int eventId, long from, long to) {
+        List<CheckInPipeline.CheckIn> out = new ArrayList<>();
+        EventIndex ix = byEvent.get(eventId);
+        if (ix == null) return out;
+        int b = firstBucket(ix, hourOf(from));
+        if (b == ix.hours) return out;
+        for (int pos = ix.hourFirst[b]; pos < ix.size; pos++) {
+            CheckInPipeline.CheckIn c = read(ix.recs[pos]);
+            if (c.timestamp >= to) break;
+            if (c.timestamp >= from) out.add(c);
+        }
+        return out;
+    }
+
+    // ---------- Index ----------
+
+    private void index(int rec, int key, int eventId, long ts, boolean present) {
+        EventIndex ix = byEvent.computeIfAbsent(eventId, k -> new EventIndex());
+        if (ix.size == ix.recs.length) ix.recs = Arrays.copyOf(ix.recs, ix.size * 2);
+        long hour = hourOf(ts);
+        if (ix.hours == 0 || ix.hour[ix.hours - 1] != hour) {
+            if (ix.hours == ix.hour.length) {
+                int n = ix.hours * 2;
+                ix.hour = Arrays.copyOf(ix.hour, n);
+                ix.hourFirst = Arrays.copyOf(ix.hourFirst, n);
+                ix.hourPresent = Arrays.copyOf(ix.hourPresent, n);
+                ix.hourAbsent = Arrays.copyOf(ix.hourAbsent, n);
+            }
+            ix.hour[ix.hours] = hour;
+            ix.hourFirst[ix.hours] = ix.size;
+            ix.hours++;
+        }
+        if (present) ix.hourPresent[ix.hours - 1]++;
+        else ix.hourAbsent[ix.hours - 1]++;
+        ix.recs[ix.size++] = rec;
+
+        Integer prev = ix.latest.put(key, present ? rec : ~rec);
+        if (prev != null && prev >= 0) ix.presentNow--;
+        if (present) ix.presentNow++;
+    }
+
+    // First bucket whose hour is >= hour
+    private static int firstBucket(EventIndex ix, long hour) {
+        int lo = 0, hi = ix.hours;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (ix.hour[mid] < hour) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    private static long hourOf(long millis) {
+        if (millis < Long.MIN_VALUE + HOUR_MILLIS) return Long.MIN_VALUE; // "from the beginning" must not wrap
+        return Math.floorDiv(millis, HOUR_MILLIS) * HOUR_MILLIS;
+    }
+
+    // Index records from..count-1 of the file; reads whole blocks rather than one record at a time
+    private void indexRecords(int from) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_BYTES * 4096);
+        long pos = HEADER_BYTES + (long) from * RECORD_BYTES;
+        int rec = from;
+        while (rec < count) {
+            buf.clear();
+            buf.limit(Math.min(buf.capacity(), (count - rec) * RECORD_BYTES));
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, pos + buf.position());
+                if (n < 0) throw new EOFException("attendance store shorter than its record count");
+            }
+            pos += buf.limit();
+            buf.flip();
+            while (buf.remaining() >= RECORD_BYTES) {
+                int key = buf.getInt(), eventId = buf.getInt();
+                long ts = buf.getLong();
+                boolean present = buf.get() == 1;
+                buf.position(buf.position() + 7);
+                index(rec++, key, eventId, ts, present);
+                lastTimestamp = Math.max(lastTimestamp, ts);
+            }
+        }
+    }
+
+    // ---------- Record access ----------
+
+    private CheckInPipeline.CheckIn read(int rec) {
+        ByteBuffer b = mapped(rec);
+        int at = HEADER_BYTES + rec * RECORD_BYTES;
+        int key = b.getInt(at), eventId = b.getInt(at + 4);
+        long ts = b.getLong(at + 8);
+        return new CheckInPipeline.CheckIn(ids.get(key), eventId, ts, b.get(at + 16) == 1 ? "Present" : "Absent");
+    }
+
+    // Mapping covering record rec; grows (with slack) as records are appended
+    private ByteBuffer mapped(int rec) {
+        if (rec >= viewRecords) {
+            try {
+                int records = Math.max(count, rec + 1);
+                long len = HEADER_BYTES + (long) records * RECORD_BYTES;
+                if (len > Integer.MAX_VALUE) throw new IOException("attendance store over 2 GB");
+                view = channel.map(FileChannel.MapMode.READ_ONLY, 0, len);
+                viewRecords = records;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return view;
+    }
+
+    // ---------- Header and participant IDs ----------
+
+    private void writeHeader() throws IOException {
+        ByteBuffer h = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putInt(VERSION).putLong(0);
+        h.flip();
+        channel.truncate(0);
+        channel.write(h, 0);
+        channel.force(false);
+    }
+
+    private void checkHeader() throws IOException {
+        ByteBuffer h = ByteBuffer.allocate(8);
+        channel.read(h, 0);
+        if (h.getInt(0) != MAGIC) throw new IOException("not an attendance store: " + dataFile);
+        if (h.getInt(4) != VERSION) throw new IOException("unsupported attendance store version " + h.getInt(4));
+    }
+
+    // In memory only: IDs are on disk before they get here
+    private void register(String participantId) {
+        keys.put(participantId, ids.size());
+        ids.add(participantId);
+    }
+
+    // Append new IDs to the ids file and sync it; they get keys only once they are on disk
+    private void writeIds(Set<String> newIds) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (String id : newIds) sb.append(id).append('\n');
+        ByteBuffer buf = StandardCharsets.UTF_8.encode(sb.toString());
+        if (idsChannel.size() > idsLength) idsChannel.truncate(idsLength); // what a failed write left behind
+        long pos = idsLength;
+        while (buf.hasRemaining()) pos += idsChannel.write(buf, pos);
+        idsChannel.force(false);
+        idsLength = pos;
+        for (String id : newIds) register(id);
+    }
+
+    // One ID per line, from idsLength on; a torn last line (no newline) is ignored and cut off
+    private void readIds() throws IOException {
+        long size = idsChannel.size();
+        if (size == idsLength) return;
+        if (size - idsLength > Integer.MAX_VALUE) throw new IOException("attendance ids file too large");
+        ByteBuffer buf = ByteBuffer.allocate((int) (size - idsLength));
+        while (buf.hasRemaining()) {
+            if (idsChannel.read(buf, idsLength + buf.position()) < 0) break;
+        }
+        byte[] bytes = buf.array();
+        int start = 0;
+        for (int i = 0; i < buf.position(); i++) {
+            if (bytes[i] != '\n') continue;
+            register(new String(bytes, start, i - start, StandardCharsets.UTF_8));
+            start = i + 1;
+        }
+        idsLength += start;
+        if (idsChannel.size() > idsLength) idsChannel.truncate(idsLength);
+    }
+}
@@ -0,0 +1,146 @@
+import javax.swing.*;
+import java.awt.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * BackgroundRunner
+ * Runs file-handler work off the Event Dispatch Thread and hands results back on the EDT.
+ *
+ * Tasks are SwingWorkers executed on one dedicated thread, so handler calls never overlap and run
+ * in the order the user triggered them. Long tasks get a progress dialog with a Cancel button.
+ * Each task is timed in Metrics as "gui.task.<what>", and its completion on the EDT as "gui.edt.<what>".
+ */
+public class BackgroundRunner {
+    private final Component owner;
+    private final ExecutorService io = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "smartreg-io");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** Work that reports progress and polls for cancellation. */
+    public interface Task<T> {
+        T run(Progress progress) throws Exception;
+    }
+
+    public interface Progress {
+        // total < 0 means unknown (indeterminate bar)
+        void update(int done, int total);
+        boolean isCancelled();
+    }
+
+    public BackgroundRunner(Component owner) {
+        this.owner = owner;
+    }
+
+    // Run work in the background; onDone receives the result on the EDT
+    public <T> SwingWorker<T, Void> run(String what, Callable<T> work, Consumer<T> onDone) {
+        String metric = metricName(what);
+        SwingWorker<T, Void> w = new SwingWorker<T, Void>() {
+            protected T doInBackground() throws Exception {
+                long start = System.nanoTime();
+                try {
+                    return work.call();
+                } finally {
+                    Metrics.histogram("gui.task." + metric).record(System.nanoTime() - start);
+                }
+            }
+            protected void done() {
+                finish(this, what, metric, onDone);
+            }
+        };
+        io.execute(w);
+        return w;
+    }
+
+    /**
+     * Run long work with a progress dialog. Cancel only raises a flag the task polls through
+     * Progress.isCancelled(), so the task can stop at a safe point and still return a partial result.
+     */
+    public <T> SwingWorker<T, int[]> runWithProgress(String title, Task<T> work, Consumer<T> onDone) {
+        JProgressBar bar = new JProgressBar();
+        bar.setIndeterminate(true);
+        bar.setStringPainted(true);
+        bar.setString("Waiting...");
+        JButton cancel = new JButton("Cancel");
+        JDialog dlg = new JDialog(SwingUtilities.getWindowAncestor(owner), title, Dialog.ModalityType.MODELESS);
+        JPanel p = new JPanel(new BorderLayout(8, 8));
+        p.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        p.add(bar, BorderLayout.CENTER);
+        p.add(cancel, BorderLayout.EAST);
+        dlg.setContentPane(p);
+        dlg.setDefaultCloseOperation(WindowConstants.DO_NOTHING_ON_CLOSE);
+        dlg.setSize(360, 90);
+        dlg.setLocationRelativeTo(owner);
+
+        AtomicBoolean cancelled = new AtomicBoolean();
+        String metric = metricName(title.split(" ")[0]); // the rest of a progress title is usually a file name
+        SwingWorker<T, int[]> w = new SwingWorker<T, int[]>() {
+            protected T doInBackground() throws Exception {
+                int[] rows = new int[1];
+                try (Metrics.Timer t = Metrics.time("gui.task." + metric)) {
+                    T result = work.run(new Progress() {
+                        public void update(int done, int total) { rows[0] = done; publish(new int[]{done, total}); }
+                        public boolean isCancelled() { return cancelled.get(); }
+                    });
+                    t.rows(rows[0]);
+                    return result;
+                }
+            }
+            protected void process(List<int[]> chunks) {
+                int[] last = chunks.get(chunks.size() - 1);
+                if (last[1] > 0) {
+                    bar.setIndeterminate(false);
+                    bar.setMaximum(last[1]);
+                    bar.setValue(last[0]);
+                    bar.setString(last[0] + " / " + last[1]);
+                } else {
+                    bar.setString(last[0] + " rows");
+                }
+            }
+            protected void done() {
+                dlg.dispose();
+                finish(this, title, metric, onDone);
+            }
+        };
+        cancel.addActionListener(e -> {
+            cancel.setEnabled(false);
+            bar.setString("Cancelling...");
+            cancelled.set(true);
+        });
+        dlg.setVisible(true);
+        io.execute(w);
+        return w;
+    }
+
+    private <T> void finish(SwingWorker<T, ?> w, String what, String metric, Consumer<T> onDone) {
+        T result;
+        try {
+            result = w.get();
+        } catch (CancellationException e) {
+            return; // superseded, e.g. a stale search
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            Metrics.error("gui", e.getCause());
+            JOptionPane.showMessageDialog(owner, what + " failed: " + e.getCause().getMessage());
+            return;
+        }
+        if (onDone == null) return;
+        long start = System.nanoTime();
+        try {
+            onDone.accept(result);
+        } finally {
+            Metrics.histogram("gui.edt." + metric).record(System.nanoTime() - start);
+        }
+    }
+
+    // "Load events" -> "load-events"
+    private static String metricName(String what) {
+        return what.trim().toLowerCase().replaceAll("[^a-z0-9]+", "-");
+    }
+}
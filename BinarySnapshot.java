@@ -0,0 +1,404 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * BinarySnapshot
+ * Compact binary image of the participant rows, kept next to the CSV ("participants.csv.bin")
+ * so startup can skip CSV parsing.
+ *
+ * The image is laid out the way the handler holds rows in memory: loading it fills the
+ * ParticipantStore columns, the ContactIndex tables and the analytics counters with bulk copies,
+ * without a String[] (or any other object) per row. See ParticipantStore.load.
+ *
+ * Layout (big-endian, varint = unsigned LEB128, string = varint length + UTF-8):
+ *   magic "SRB1", int version
+ *   long csvSize, long csvModified   - the CSV state this image was taken from
+ *   int rowCount, int nextId
+ *   byte eventIds                    - 1 if the Events column holds event IDs (as in the CSV)
+ *   4 dictionaries (Department, College, Year, Events): varint count, then strings, then per
+ *     string a varint number of rows holding it; an Events entry is a whole Events value
+ *     ("Coding | Quiz", or "3 | 7" with event IDs)
+ *   varint count, then strings       - IDs that are not of the form P<number>
+ *   columns, each a fixed-width array over all rows in order, so it is read with one bulk copy:
+ *     ID                       - int: n for "P<n>", or -1 - index into the IDs above
+ *     Name, Email, Phone       - int byte count, then per row the three as strings (the store's
+ *                                packed text), then int offset of each row's first string
+ *     Department, College, Year, Events - byte width (2 or 4), then char or int dictionary codes
+ *     Attendance               - Present and Absent bitsets (int word count, longs each), then
+ *                                varint count of other values and (int row, string) for each
+ *   Email and Phone ContactIndex tables: int entry count, int capacity, then hashes and owners
+ *     as int arrays of that capacity; owners use the ID column's numbering
+ *
+ * Rows are kept exactly as the CSV stores them. The image is only trusted while the CSV's size and modification time still match its header.
+ * Command line: java BinarySnapshot import-csv <csv> <bin> | export-csv <bin> <csv>
+ */
+public class BinarySnapshot {
+    private static final int MAGIC = 0x53524231; // "SRB1"
+    private static final int VERSION = 3;
+    private static final int STAMP_BYTES = 24;   // magic, version, csvSize, csvModified
+
+    public final int size;
+    public final int nextId;
+    public final boolean eventIds;
+    public final long csvSize;
+    public final long csvModified;
+    // Columns, read by ParticipantStore.load and the handler
+    final String[][] dicts;        // Department, College, Year, Events
+    final int[][] valueCounts;     // rows holding each dictionary value
+    final Column[] codes;          // per row, one per dictionary
+    final int[] keys;              // per row: n of P<n>, or -1 - index into otherIds
+    final String[] otherIds;
+    final byte[] text;             // packed Name, Email, Phone of every row
+    final int[] textAt;            // per row offset into text
+    final BitSet present, absent;
+    final Map<Integer, String> otherAttendance; // by row
+    final ContactTable emails, phones;
+
+    /** A ContactIndex table as stored; owners negative for IDs not of the form P<number> (see keys). */
+    static final class ContactTable {
+        final int count;
+        final int[] hashes, owners;
+
+        ContactTable(int count, int[] hashes, int[] owners) {
+            this.count = count;
+            this.hashes = hashes;
+            this.owners = owners;
+        }
+    }
+
+    /** Dictionary codes of one column: chars while the dictionary has at most 65536 values, else ints. */
+    static final class Column {
+        final char[] narrow;
+        final int[] wide;
+
+        Column(char[] narrow, int[] wide) {
+            this.narrow = narrow;
+            this.wide = wide;
+        }
+
+        int get(int row) {
+            return narrow != null ? narrow[row] : wide[row];
+        }
+
+        // Largest code among the first n rows, or -1
+        int max(int n) {
+            int m = -1;
+            if (narrow != null) for (int i = 0; i < n; i++) m = Math.max(m, narrow[i]);
+            else for (int i = 0; i < n; i++) m = Math.max(m, wide[i]);
+            return m;
+        }
+    }
+
+    private BinarySnapshot(int size, int nextId, boolean eventIds, long csvSize, long csvModified, String[][] dicts,
+                           int[][] valueCounts, Column[] codes, int[] keys, String[] otherIds, byte[] text, int[] textAt,
+                           BitSet present, BitSet absent, Map<Integer, String> otherAttendance, ContactTable emails,
+                           ContactTable phones) {
+        this.size = size;
+        this.nextId = nextId;
+        this.eventIds = eventIds;
+        this.csvSize = csvSize;
+        this.csvModified = csvModified;
+        this.dicts = dicts;
+        this.valueCounts = valueCounts;
+        this.codes = codes;
+        this.keys = keys;
+        this.otherIds = otherIds;
+        this.text = text;
+        this.textAt = textAt;
+        this.present = present;
+        this.absent = absent;
+        this.otherAttendance = otherAttendance;
+        this.emails = emails;
+        this.phones = phones;
+    }
+
+    // True if the snapshot was taken from the CSV exactly as it is now on disk
+    public boolean matches(File csv) {
+        return csv.exists() && csv.length() == csvSize && csv.lastModified() == csvModified;
+    }
+
+    // matches() from the header alone, without reading the rows
+    public static boolean matches(File bin, File csv) {
+        if (!bin.exists() || !csv.exists()) return false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(bin))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION
+                    && in.readLong() == csv.length() && in.readLong() == csv.lastModified();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Row i as the CSV stores it
+    public String[] row(int i) {
+        String[] r = new String[9];
+        r[0] = keys[i] >= 0 ? "P" + keys[i] : otherIds[-keys[i] - 1];
+        int[] at = {textAt[i]};
+        for (int c = 1; c <= 3; c++) r[c] = string(text, at);
+        for (int k = 0; k < 4; k++) r[4 + k] = dicts[k][codes[k].get(i)];
+        r[8] = present.get(i) ? "Present" : absent.get(i) ? "Absent" : otherAttendance.get(i);
+        return r;
+    }
+
+    // ---------- Writing ----------
+
+    /** Write rows atomically (temp file + move), stamped with the current size/mtime of csv. */
+    public static void write(File dest, List<String[]> rows, int nextId, boolean eventIds, File csv) throws IOException {
+        List<Map<String, Integer>> dicts = new ArrayList<>();
+        List<List<Integer>> valueCounts = new ArrayList<>();
+        for (int k = 0; k < 4; k++) {
+            dicts.add(new LinkedHashMap<>());
+            valueCounts.add(new ArrayList<>());
+        }
+        Map<String, Integer> otherIds = new LinkedHashMap<>();
+        int[] keys = new int[rows.size()];
+        ContactIndex emails = new ContactIndex(), phones = new ContactIndex();
+        ByteArrayOutputStream textBytes = new ByteArrayOutputStream(rows.size() * 48);
+        DataOutputStream text = new DataOutputStream(textBytes);
+        int[] textAt = new int[rows.size()];
+        BitSet present = new BitSet(), absent = new BitSet();
+        Map<Integer, String> otherAttendance = new LinkedHashMap<>();
+        for (int i = 0; i < rows.size(); i++) {
+            String[] r = rows.get(i);
+            for (int k = 0; k < 4; k++) {
+                Integer code = dicts.get(k).putIfAbsent(value(r[4 + k]), dicts.get(k).size());
+                if (code == null) valueCounts.get(k).add(1);
+                else valueCounts.get(k).set(code, valueCounts.get(k).get(code) + 1);
+            }
+            keys[i] = ParticipantStore.numericKey(r[0]);
+            if (keys[i] < 0) {
+                otherIds.putIfAbsent(r[0], otherIds.size());
+                keys[i] = -1 - otherIds.get(r[0]);
+            }
+            emails.add(ParticipantFileHandler.normalizeEmail(r[2]), keys[i]);
+            phones.add(ParticipantFileHandler.normalizePhone(r[3]), keys[i]);
+            textAt[i] = text.size();
+            for (int c = 1; c <= 3; c++) writeString(text, r[c]);
+            if ("Present".equals(r[8])) present.set(i);
+            else if ("Absent".equals(r[8])) absent.set(i);
+            else otherAttendance.put(i, value(r[8]));
+        }
+        File tmp = new File(dest.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(csv != null && csv.exists() ? csv.length() : -1);
+            out.writeLong(csv != null && csv.exists() ? csv.lastModified() : -1);
+            out.writeInt(rows.size());
+            out.writeInt(nextId);
+            out.writeByte(eventIds ? 1 : 0);
+            for (int k = 0; k < 4; k++) {
+                writeVarint(out, dicts.get(k).size());
+                for (String s : dicts.get(k).keySet()) writeString(out, s);
+                for (int count : valueCounts.get(k)) writeVarint(out, count);
+            }
+            writeVarint(out, otherIds.size());
+            for (String id : otherIds.keySet()) writeString(out, id);
+            for (int key : keys) out.writeInt(key);
+            out.writeInt(textBytes.size());
+            textBytes.writeTo(out);
+            for (int at : textAt) out.writeInt(at);
+            for (int k = 0; k < 4; k++) {
+                Map<String, Integer> dict = dicts.get(k);
+                boolean narrow = dict.size() <= Character.MAX_VALUE + 1;
+                out.writeByte(narrow ? 2 : 4);
+                for (String[] r : rows) {
+                    int code = dict.get(value(r[4 + k]));
+                    if (narrow) out.writeChar(code);
+                    else out.writeInt(code);
+                }
+            }
+            for (BitSet bits : Arrays.asList(present, absent)) {
+                long[] words = bits.toLongArray();
+                out.writeInt(words.length);
+                for (long w : words) out.writeLong(w);
+            }
+            writeVarint(out, otherAttendance.size());
+            for (Map.Entry<Integer, String> e : otherAttendance.entrySet()) {
+                out.writeInt(e.getKey());
+                writeString(out, e.getValue());
+            }
+            for (ContactIndex idx : Arrays.asList(emails, phones)) {
+                out.writeInt(idx.size());
+                out.writeInt(idx.hashTable().length);
+                for (int h : idx.hashTable()) out.writeInt(h);
+                for (int o : idx.ownerTable()) out.writeInt(o);
+            }
+        }
+        Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static String value(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] b = value(s).getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, b.length);
+        out.write(b);
+    }
+
+    private static void writeVarint(DataOutputStream out, int v) throws IOException {
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    // ---------- Reading ----------
+
+    /** Read a snapshot; IOException if the file is missing, truncated or not a snapshot. */
+    public static BinarySnapshot read(File src) throws IOException {
+        Decoder d = new Decoder(Files.readAllBytes(src.toPath()));
+        try {
+            if (d.bytes.length < STAMP_BYTES || d.int32() != MAGIC) throw new IOException("not a participant snapshot: " + src);
+            if (d.int32() != VERSION) throw new IOException("unsupported snapshot version: " + src);
+            long csvSize = d.int64();
+            long csvModified = d.int64();
+            int n = d.int32();
+            int nextId = d.int32();
+            boolean eventIds = d.bytes[d.pos++] != 0;
+            String[][] dicts = new String[4][];
+            int[][] valueCounts = new int[4][];
+            for (int k = 0; k < 4; k++) {
+                dicts[k] = new String[d.varint()];
+                valueCounts[k] = new int[dicts[k].length];
+                for (int i = 0; i < dicts[k].length; i++) dicts[k][i] = d.string();
+                for (int i = 0; i < dicts[k].length; i++) valueCounts[k][i] = d.varint();
+            }
+            String[] otherIds = new String[d.varint()];
+            for (int i = 0; i < otherIds.length; i++) otherIds[i] = d.string();
+            int[] keys = d.ints(n);
+            for (int key : keys) if (key < -otherIds.length) throw new IOException("bad ID in snapshot: " + src);
+            int textLength = d.int32();
+            if (textLength < 0 || textLength > d.bytes.length - d.pos) throw new IOException("truncated snapshot: " + src);
+            byte[] text = Arrays.copyOfRange(d.bytes, d.pos, d.pos + textLength);
+            d.pos += textLength;
+            int[] textAt = d.ints(n);
+            for (int at : textAt) if (at < 0 || at >= textLength) throw new IOException("bad text offset in snapshot: " + src);
+            Column[] codes = new Column[4];
+            for (int k = 0; k < 4; k++) {
+                int width = d.bytes[d.pos++];
+                codes[k] = width == 2 ? new Column(d.chars(n), null) : new Column(null, d.ints(n));
+                if (codes[k].max(n) >= dicts[k].length) throw new IOException("bad dictionary code in snapshot: " + src);
+            }
+            BitSet present = BitSet.valueOf(d.longs(d.int32()));
+            BitSet absent = BitSet.valueOf(d.longs(d.int32()));
+            Map<Integer, String> otherAttendance = new HashMap<>();
+            for (int i = d.varint(); i > 0; i--) otherAttendance.put(d.int32(), d.string());
+            ContactTable[] contacts = new ContactTable[2];
+            for (int t = 0; t < 2; t++) {
+                int count = d.int32(), cap = d.int32();
+                if (Integer.bitCount(cap) != 1 || count > cap) throw new IOException("bad contact table in snapshot: " + src);
+                contacts[t] = new ContactTable(count, d.ints(cap), d.ints(cap));
+            }
+            return new BinarySnapshot(n, nextId, eventIds, csvSize, csvModified, dicts, valueCounts, codes, keys,
+                    otherIds, text, textAt, present, absent, otherAttendance, contacts[0], contacts[1]);
+        } catch (IndexOutOfBoundsException | BufferUnderflowException | NegativeArraySizeException | IllegalArgumentException e) {
+            throw new IOException("truncated snapshot: " + src, e);
+        }
+    }
+
+    // The string at at[0]; moves at[0] past it
+    private static String string(byte[] b, int[] at) {
+        int off = at[0], len = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte x = b[off++];
+            len |= (x & 0x7F) << shift;
+            if (x >= 0) break;
+        }
+        at[0] = off + len;
+        return new String(b, off, len, StandardCharsets.UTF_8);
+    }
+
+    private static final class Decoder {
+        final byte[] bytes;
+        int pos;
+
+        Decoder(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int int32() {
+            int v = ((bytes[pos] & 0xFF) << 24) | ((bytes[pos + 1] & 0xFF) << 16) | ((bytes[pos + 2] & 0xFF) << 8) | (bytes[pos + 3] & 0xFF);
+            pos += 4;
+            return v;
+        }
+
+        // n big-endian ints (chars, longs) with one bulk copy
+        int[] ints(int n) {
+            int[] v = new int[n];
+            ByteBuffer.wrap(bytes, pos, bytes.length - pos).asIntBuffer().get(v);
+            pos += 4 * n;
+            return v;
+        }
+
+        char[] chars(int n) {
+            char[] v = new char[n];
+            ByteBuffer.wrap(bytes, pos, bytes.length - pos).asCharBuffer().get(v);
+            pos += 2 * n;
+            return v;
+        }
+
+        long[] longs(int n) {
+            long[] v = new long[n];
+            ByteBuffer.wrap(bytes, pos, bytes.length - pos).asLongBuffer().get(v);
+            pos += 8 * n;
+            return v;
+        }
+
+        long int64() {
+            long hi = int32() & 0xFFFFFFFFL;
+            return (hi << 32) | (int32() & 0xFFFFFFFFL);
+        }
+
+        int varint() {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[pos++];
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) return v;
+            }
+        }
+
+        String string() {
+            int len = varint();
+            String s = new String(bytes, pos, len, StandardCharsets.UTF_8);
+            pos += len;
+            return s;
+        }
+    }
+
+    // ---------- Conversion commands ----------
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("import-csv")) {
+            // CSV -> binary: the rows exactly as on disk (Events names or IDs alike) and the next ID a
+            // handler would hand out; the CSV is only read, never converted
+            boolean eventIds;
+            try (CsvTokenizer t = new CsvTokenizer(new FileReader(args[1]))) {
+                String[] header = t.next();
+                eventIds = header != null && header.length > 7 && header[7].equals("EventIds");
+            }
+            List<String[]> rows = new ArrayList<>();
+            int nextId = ParticipantFileHandler.readDiskRows(new File(args[1]), rows);
+            write(new File(args[2]), rows, nextId, eventIds, new File(args[1]));
+            System.out.println("Wrote " + rows.size() + " participants to " + args[2]);
+        } else if (args.length == 3 && args[0].equals("export-csv")) {
+            BinarySnapshot snap = read(new File(args[1]));
+            try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(args[2], false)))) {
+                pw.println(snap.eventIds ? ParticipantFileHandler.HEADER_IDS : ParticipantFileHandler.HEADER);
+                for (int i = 0; i < snap.size; i++) pw.println(ParticipantFileHandler.toLine(snap.row(i)));
+            }
+            System.out.println("Wrote " + snap.size + " participants to " + args[2]);
+        } else {
+            System.err.println("Usage: java BinarySnapshot import-csv <participants.csv> <participants.bin>");
+            System.err.println("       java BinarySnapshot export-csv <participants.bin> <participants.csv>");
+            System.exit(2);
+        }
+    }
+}
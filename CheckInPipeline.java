@@ -0,0 +1,243 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * CheckInPipeline
+ * Fast path for event check-in at the door: validates against the resident participant store,
+ * queues the mark and commits queued marks in groups.
+ *
+ * Every check-in is timestamped and kept per event in an AttendanceStore ("attendance.dat"); the
+ * participant's Attendance column is set to the latest status so the table and analytics keep
+ * working. A committer thread takes the first queued mark, lets the commit window fill for N ms,
+ * then appends the whole group to the store with one write and one fsync, updates the Attendance
+ * column with one handler write, and only then completes the callers' futures. The queue is
+ * bounded: producers block when the committer falls behind.
+ *
+ * A check-in log from before the store ("attendance.csv" in the same folder: participant ID,
+ * event ID, epoch millis, status) is imported the first time the store is created.
+ *
+ * The store is opened in shared mode when the participant handler is shared, so create the
+ * pipeline after ParticipantFileHandler.setShared.
+ *
+ * Events are recorded by EventDictionary ID (pass the EventFileHandler's dictionary), so a
+ * renamed event keeps its check-ins.
+ */
+public class CheckInPipeline implements Closeable {
+    public static final long DEFAULT_COMMIT_MILLIS = 10;
+    static final String LEGACY_LOG = "attendance.csv";
+    private static final int QUEUE_CAPACITY = 1 << 16;
+
+    public enum Outcome { CHECKED_IN, UNKNOWN_PARTICIPANT, UNKNOWN_EVENT, NOT_REGISTERED, WRITE_FAILED, CLOSED }
+
+    /** One timestamped mark of a participant at an event ("Present" checks in, "Absent" reverts it). */
+    public static final class CheckIn {
+        public final String participantId;
+        public final int eventId;
+        public final long timestamp;   // epoch millis
+        public final String status;
+
+        public CheckIn(String participantId, int eventId, long timestamp, String status) {
+            this.participantId = participantId;
+            this.eventId = eventId;
+            this.timestamp = timestamp;
+            this.status = status;
+        }
+
+        public boolean present() {
+            return "Present".equals(status);
+        }
+    }
+
+    // a queued mark, or a flush() barrier when checkIn is null
+    private static final class Pending {
+        final CheckIn checkIn;
+        final CompletableFuture<Outcome> done = new CompletableFuture<>();
+
+        Pending(CheckIn checkIn) {
+            this.checkIn = checkIn;
+        }
+    }
+
+    private final ParticipantFileHandler participants;
+    private final EventDictionary events;
+    private final AttendanceStore store;
+    private final long commitNanos;
+    private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread committer;
+    private volatile boolean closed;
+    private long groups, committed;
+
+    public CheckInPipeline(ParticipantFileHandler participants, EventDictionary events, String storePath) throws IOException {
+        this(participants, events, storePath, DEFAULT_COMMIT_MILLIS);
+    }
+
+    public CheckInPipeline(ParticipantFileHandler participants, EventDictionary events, String storePath,
+                           long commitMillis) throws IOException {
+        this.participants = participants;
+        this.events = events;
+        this.commitNanos = TimeUnit.MILLISECONDS.toNanos(commitMillis);
+        boolean created = !new File(storePath).exists();
+        this.store = new AttendanceStore(storePath, participants.isShared());
+        File legacy = new File(new File(storePath).getAbsoluteFile().getParentFile(), LEGACY_LOG);
+        if (created && legacy.exists()) importLegacyLog(legacy);
+        committer = new Thread(this::run, "check-in-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    // Check a participant in at an event now
+    public CompletableFuture<Outcome> checkIn(String participantId, String event) {
+        return submit(participantId, event, "Present");
+    }
+
+    /**
+     * Queue a mark. Unknown participants and events, and participants not registered for the event,
+     * are answered at once without touching the queue; otherwise the future completes once the
+     * group holding the mark is on disk.
+     */
+    public CompletableFuture<Outcome> submit(String participantId, String event, String status) {
+        if (closed) return CompletableFuture.completedFuture(Outcome.CLOSED);
+        int ev = events.idOf(event);
+        if (ev < 0) return CompletableFuture.completedFuture(Outcome.UNKNOWN_EVENT);
+        if (participants.findById(participantId) == null) return CompletableFuture.completedFuture(Outcome.UNKNOWN_PARTICIPANT);
+        if (!participants.inEvent(participantId, event)) return CompletableFuture.completedFuture(Outcome.NOT_REGISTERED);
+        Pending p = new Pending(new CheckIn(participantId, ev, System.currentTimeMillis(), status));
+        try {
+            queue.put(p);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.completedFuture(Outcome.CLOSED);
+        }
+        // raced with close() after its final drain: nobody will commit this one
+        if (closed && !committer.isAlive() && queue.remove(p)) p.done.complete(Outcome.CLOSED);
+        return p.done;
+    }
+
+    // Block until every mark queued before this call is committed
+    public void flush() {
+        if (closed) return;
+        Pending barrier = new Pending(null);
+        try {
+            queue.put(barrier);
+            barrier.done.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Latest mark of the participant at the event, or null
+    public CheckIn lastCheckIn(String participantId, String event) {
+        return store.last(participantId, events.idOf(event));
+    }
+
+    // Participants whose latest mark at the event is Present
+    public int presentCount(String event) {
+        return store.presentCount(events.idOf(event));
+    }
+
+    // The committed marks, for time-series queries
+    public AttendanceStore store() {
+        return store;
+    }
+
+    // Group commits and committed marks so far (marks / groups = average group size)
+    public synchronized long[] commitCounts() {
+        return new long[]{groups, committed};
+    }
+
+    /** Commit what is queued, stop the committer and close the log. */
+    public void close() {
+        if (closed) return;
+        closed = true;
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // marks that raced with close(): commit them here rather than dropping them
+        List<Pending> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        if (!rest.isEmpty()) commit(rest);
+        try {
+            store.close();
+        } catch (IOException e) {
+            Metrics.error("checkin", e);
+        }
+    }
+
+    // ---------- Committer ----------
+
+    private void run() {
+        List<Pending> group = new ArrayList<>();
+        while (true) {
+            try {
+                Pending first = queue.poll(50, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) return;
+                    continue;
+                }
+                group.add(first);
+                // let the window fill so one write and one fsync cover the whole group
+                long deadline = System.nanoTime() + commitNanos;
+                for (long wait; (wait = deadline - System.nanoTime()) > 0; ) {
+                    Pending p = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (p == null) break;
+                    group.add(p);
+                    queue.drainTo(group);
+                }
+                commit(group);
+                group.clear();
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void commit(List<Pending> group) {
+        List<CheckIn> marks = new ArrayList<>(group.size());
+        Map<String, String> statusById = new LinkedHashMap<>();
+        for (Pending p : group) {
+            CheckIn c = p.checkIn;
+            if (c == null) continue;
+            marks.add(c);
+            statusById.put(c.participantId, c.status); // the latest mark wins
+        }
+        Outcome outcome = Outcome.CHECKED_IN;
+        if (!marks.isEmpty()) {
+            try (Metrics.Timer t = Metrics.time("checkin.commit")) {
+                store.append(marks);
+                t.rows(marks.size()).bytesWritten((long) marks.size() * AttendanceStore.RECORD_BYTES);
+                // the store is the record; the column is a derived view, so a failed update is only reported
+                if (participants.markAttendance(statusById) < 0) Metrics.error("checkin", new IOException("Attendance column not updated"));
+                synchronized (this) {
+                    groups++;
+                    committed += marks.size();
+                }
+            } catch (IOException e) {
+                Metrics.error("checkin", e);
+                outcome = Outcome.WRITE_FAILED;
+            }
+        }
+        for (Pending p : group) p.done.complete(p.checkIn == null ? Outcome.CHECKED_IN : outcome);
+    }
+
+    // Move the CSV check-in log of earlier versions into the new store (in time order); a torn last line is skipped
+    private void importLegacyLog(File csvLog) throws IOException {
+        List<CheckIn> marks = new ArrayList<>();
+        try (CsvTokenizer csv = new CsvTokenizer(new FileReader(csvLog))) {
+            List<String> f = new ArrayList<>(4);
+            csv.next(f); // header
+            while (csv.next(f)) {
+                if (f.size() < 4) continue;
+                try {
+                    marks.add(new CheckIn(f.get(0), Integer.parseInt(f.get(1)), Long.parseLong(f.get(2)), f.get(3)));
+                } catch (NumberFormatException ignored) {}
+            }
+        }
+        marks.sort(Comparator.comparingLong(c -> c.timestamp));
+        for (int from = 0; from < marks.size(); from += 65536) {
+            store.append(marks.subList(from, Math.min(marks.size(), from + 65536)));
+        }
+    }
+}
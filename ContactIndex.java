@@ -0,0 +1,154 @@
+import java.util.*;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * ContactIndex
+ * Hash index from a normalized contact value (email or phone) to the participants holding it,
+ * by ParticipantStore key.
+ *
+ * Values are kept only as 32-bit hashes in an open-addressing table (8 bytes per slot, no
+ * objects per entry), so owners() may return a participant whose contact merely hashes the same:
+ * callers confirm a hit against the row. A key held by several participants (a duplicate
+ * let through under the WARN policy) simply has several entries. Empty keys are never indexed.
+ */
+public class ContactIndex {
+    private static final int EMPTY = 0, REMOVED = 1;
+    private static final int[] NONE = new int[0];
+
+    private int[] hashes = new int[16];
+    private int[] owners = new int[16];
+    private int used, live; // used counts removed slots too
+
+    public void add(String key, int owner) {
+        if (!key.isEmpty()) add(hash(key), owner);
+    }
+
+    // add() for a value already hashed with hash(); 0 (no value) is ignored
+    void add(int h, int owner) {
+        if (h == EMPTY) return;
+        if ((used + 1) * 4L > hashes.length * 3L) resize();
+        int mask = hashes.length - 1, free = -1, i = slot(h);
+        for (; hashes[i] != EMPTY; i = (i + 1) & mask) {
+            if (hashes[i] == h && owners[i] == owner) return;
+            if (hashes[i] == REMOVED && free < 0) free = i;
+        }
+        if (free < 0) {
+            free = i;
+            used++;
+        }
+        hashes[free] = h;
+        owners[free] = owner;
+        live++;
+    }
+
+    public void remove(String key, int owner) {
+        if (key.isEmpty()) return;
+        int h = hash(key);
+        int mask = hashes.length - 1;
+        for (int i = slot(h); hashes[i] != EMPTY; i = (i + 1) & mask) {
+            if (hashes[i] == h && owners[i] == owner) {
+                hashes[i] = REMOVED;
+                live--;
+                return;
+            }
+        }
+    }
+
+    // Participants whose contact may equal key, in no particular order
+    public int[] owners(String key) {
+        if (key.isEmpty()) return NONE;
+        int h = hash(key);
+        int mask = hashes.length - 1, n = 0;
+        int[] out = NONE;
+        for (int i = slot(h); hashes[i] != EMPTY; i = (i + 1) & mask) {
+            if (hashes[i] != h) continue;
+            if (n == out.length) out = Arrays.copyOf(out, Math.max(1, n * 2));
+            out[n++] = owners[i];
+        }
+        return n == out.length ? out : Arrays.copyOf(out, n);
+    }
+
+    public int size() {
+        return live;
+    }
+
+    // The open-addressing table itself, for BinarySnapshot to store and load() to adopt
+    int[] hashTable() {
+        return hashes;
+    }
+
+    int[] ownerTable() {
+        return owners;
+    }
+
+    // Adopt a table written from hashTable()/ownerTable(); owners are passed through remap
+    void load(int[] hashTable, int[] ownerTable, int entries, IntUnaryOperator remap) {
+        if (hashTable.length != ownerTable.length || Integer.bitCount(hashTable.length) != 1 || entries * 4L > hashTable.length * 3L) {
+            throw new IllegalArgumentException("bad contact table");
+        }
+        int n = 0;
+        for (int i = 0; i < hashTable.length; i++) {
+            if (hashTable[i] == REMOVED) throw new IllegalArgumentException("bad contact table");
+            if (hashTable[i] == EMPTY) continue;
+            ownerTable[i] = remap.applyAsInt(ownerTable[i]);
+            n++;
+        }
+        if (n != entries) throw new IllegalArgumentException("bad contact table");
+        hashes = hashTable;
+        owners = ownerTable;
+        used = live = n;
+    }
+
+    public void clear() {
+        hashes = new int[16];
+        owners = new int[16];
+        used = live = 0;
+    }
+
+    // Make room for that many more entries at once (a bulk load), instead of growing step by step
+    void reserve(int entries) {
+        if ((used + entries) * 4L > hashes.length * 3L) resize(live + entries);
+    }
+
+    // Rehash the live entries; also drops removed slots
+    private void resize() {
+        resize(live + 1);
+    }
+
+    private void resize(int entries) {
+        int[] oldHashes = hashes;
+        int[] oldOwners = owners;
+        int cap = 16;
+        while (cap < entries * 2L) cap <<= 1;
+        hashes = new int[cap];
+        owners = new int[cap];
+        used = live = 0;
+        int mask = cap - 1;
+        for (int j = 0; j < oldHashes.length; j++) {
+            if (oldHashes[j] == EMPTY || oldHashes[j] == REMOVED) continue;
+            int i = slot(oldHashes[j]);
+            while (hashes[i] != EMPTY) i = (i + 1) & mask;
+            hashes[i] = oldHashes[j];
+            owners[i] = oldOwners[j];
+            used++;
+            live++;
+        }
+    }
+
+    private int slot(int h) {
+        return h & (hashes.length - 1);
+    }
+
+    // FNV-1a over the chars, mixed; never EMPTY or REMOVED
+    static int hash(String s) {
+        int h = 0x811c9dc5;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x01000193;
+        }
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        return h == EMPTY || h == REMOVED ? 2 : h;
+    }
+}
@@ -0,0 +1,147 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * CsvTokenizer
+ * Streaming RFC 4180 record reader shared by the handlers.
+ *
+ * Reads through one reusable char buffer; each field becomes a String straight from that buffer
+ * (no per-line String, StringBuilder or array). Quoted fields may contain commas, doubled quotes
+ * and line breaks (CR, LF or CRLF), which is what ParticipantFileHandler.escape produces.
+ * Blank lines are skipped. The caller's List is refilled per record, so a full pass over a file
+ * allocates only the field Strings themselves.
+ */
+public class CsvTokenizer implements Closeable {
+    private static final int DEFAULT_BUFFER = 64 * 1024;
+
+    private final Reader in;
+    private char[] buf;
+    private int pos, limit;
+    private int fieldStart;  // first buffered char the current field still needs
+    private boolean eof;
+    private long records;
+    // only used for fields containing doubled quotes
+    private final StringBuilder unescaped = new StringBuilder();
+
+    public CsvTokenizer(Reader in) {
+        this(in, DEFAULT_BUFFER);
+    }
+
+    public CsvTokenizer(Reader in, int bufferSize) {
+        this.in = in;
+        this.buf = new char[Math.max(16, bufferSize)];
+    }
+
+    // Records returned so far
+    public long recordCount() {
+        return records;
+    }
+
+    /** Read the next record into fields (cleared first). Returns false at end of input. */
+    public boolean next(List<String> fields) throws IOException {
+        fields.clear();
+        // skip blank lines
+        while (true) {
+            fieldStart = pos;
+            if (pos >= limit && !fill()) return false;
+            char c = buf[pos];
+            if (c != '\n' && c != '\r') break;
+            pos++;
+        }
+        while (true) {
+            fields.add(readField());
+            fieldStart = pos;
+            if (pos >= limit && !fill()) break;
+            char c = buf[pos++];
+            if (c == ',') {
+                if (pos >= limit && !fill()) { fields.add(""); break; }
+                continue;
+            }
+            if (c == '\r') {
+                if ((pos < limit || fill()) && buf[pos] == '\n') pos++;
+            }
+            break; // '\n' or '\r'
+        }
+        records++;
+        return true;
+    }
+
+    // Convenience form that allocates the record array
+    public String[] next() throws IOException {
+        List<String> f = new ArrayList<>(9);
+        return next(f) ? f.toArray(new String[0]) : null;
+    }
+
+    // Split one CSV line (or several lines forming one record) into fields
+    public static String[] split(String line) {
+        if (line == null) return new String[0];
+        try (CsvTokenizer t = new CsvTokenizer(new StringReader(line), line.length() + 1)) {
+            String[] r = t.next();
+            return r == null ? new String[]{""} : r;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // cannot happen for a StringReader
+        }
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    // Read one field, leaving pos on the delimiter that ended it (or at end of input)
+    private String readField() throws IOException {
+        fieldStart = pos;
+        if (pos >= limit && !fill()) return "";
+        if (buf[pos] != '"') {
+            while (true) {
+                if (pos >= limit && !fill()) break;
+                char c = buf[pos];
+                if (c == ',' || c == '\n' || c == '\r') break;
+                pos++;
+            }
+            return new String(buf, fieldStart, pos - fieldStart);
+        }
+        pos++;
+        fieldStart = pos;
+        boolean escaped = false;
+        while (true) {
+            if (pos >= limit && !fill()) break; // unterminated quote: take what we have
+            if (buf[pos] != '"') { pos++; continue; }
+            if (pos + 1 >= limit) fill();
+            if (pos + 1 < limit && buf[pos + 1] == '"') {
+                if (!escaped) { unescaped.setLength(0); escaped = true; }
+                unescaped.append(buf, fieldStart, pos + 1 - fieldStart);
+                pos += 2;
+                fieldStart = pos;
+                continue;
+            }
+            break;
+        }
+        String value;
+        if (escaped) value = unescaped.append(buf, fieldStart, pos - fieldStart).toString();
+        else value = new String(buf, fieldStart, pos - fieldStart);
+        if (pos < limit) pos++; // closing quote
+        // tolerate stray characters between the closing quote and the delimiter
+        while ((pos < limit || fill()) && buf[pos] != ',' && buf[pos] != '\n' && buf[pos] != '\r') pos++;
+        return value;
+    }
+
+    // Refill the buffer keeping everything from fieldStart on; false once input is exhausted
+    private boolean fill() throws IOException {
+        if (eof) return false;
+        if (fieldStart > 0) {
+            int keep = limit - fieldStart;
+            System.arraycopy(buf, fieldStart, buf, 0, keep);
+            pos -= fieldStart;
+            limit = keep;
+            fieldStart = 0;
+        }
+        if (limit == buf.length) buf = Arrays.copyOf(buf, buf.length * 2);
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n <= 0) {
+            eof = true;
+            return false;
+        }
+        limit += n;
+        return true;
+    }
+}
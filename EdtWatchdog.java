@@ -0,0 +1,296 @@
+import javax.swing.*;
+import javax.swing.table.AbstractTableModel;
+import java.awt.*;
+import java.io.*;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.List;
+
+/**
+ * EdtWatchdog
+ * Measures how responsive the Event Dispatch Thread is and catches the places where it blocks.
+ *
+ * install() pushes an EventQueue that notes when the EDT starts and stops working on an event.
+ * A daemon thread checks every few milliseconds; once the EDT has been busy for longer than the
+ * threshold it takes the EDT's stack trace, which shows the listener that is blocking. Stalls go
+ * into a ring buffer of the last CAPACITY (shown by showDialog) and, with
+ * -Dsmartreg.edt.log=<file>, are appended to a log file.
+ *
+ * Time the EDT spends waiting inside a modal dialog's event loop is not counted as busy. Every
+ * event's dispatch time is recorded in Metrics as "edt.dispatch" (events that opened a modal
+ * dialog are left out), and the same thread posts a probe every PROBE_MILLIS whose queue wait
+ * is recorded as "edt.latency".
+ */
+public final class EdtWatchdog {
+    public static final long DEFAULT_THRESHOLD_MILLIS = 100;
+    static final int CAPACITY = 64;
+    static final long PROBE_MILLIS = 250;
+
+    private static EdtWatchdog installed;
+
+    /** One stall: the EDT was busy with one event for at least the threshold. */
+    public static final class Stall {
+        public final long time;                  // epoch millis when the event started
+        public final String event;
+        public final StackTraceElement[] stack;  // EDT stack when the threshold was crossed
+        private final long segment;
+        private final long since;
+        volatile long millis;                    // blocked so far; final once done
+        volatile boolean done;
+
+        Stall(long segment, long since, long time, String event, StackTraceElement[] stack, long millis) {
+            this.segment = segment;
+            this.since = since;
+            this.time = time;
+            this.event = event;
+            this.stack = stack;
+            this.millis = millis;
+        }
+
+        public long millis() {
+            return millis;
+        }
+
+        // False while the EDT is still blocked on the event
+        public boolean done() {
+            return done;
+        }
+    }
+
+    private final long thresholdNanos;
+    private final Metrics.Histogram dispatch = Metrics.histogram("edt.dispatch");
+    private final Metrics.Histogram latency = Metrics.histogram("edt.latency");
+    private final Stall[] ring = new Stall[CAPACITY];
+    private int next, count;
+    private final String logFile = System.getProperty("smartreg.edt.log");
+
+    // Written by the EDT only; a busy segment is one uninterrupted stretch of work on one event
+    private volatile Thread edt;
+    private volatile long busySince;   // nanoTime the segment began, 0 while the EDT waits for events
+    private volatile long segment;
+    private volatile AWTEvent current;
+    private volatile Stall open;       // stall of the current segment, finished by the EDT
+    private int depth;
+    private boolean nested;
+
+    private EdtWatchdog(long thresholdMillis) {
+        this.thresholdNanos = Math.max(1, thresholdMillis) * 1_000_000L;
+    }
+
+    /** Start watching the EDT (once per process; later calls return the running watchdog). */
+    public static synchronized EdtWatchdog install(long thresholdMillis) {
+        if (installed != null) return installed;
+        EdtWatchdog w = new EdtWatchdog(thresholdMillis);
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(w.new Queue());
+        Thread t = new Thread(w::watch, "smartreg-edt-watchdog");
+        t.setDaemon(true);
+        t.start();
+        installed = w;
+        return w;
+    }
+
+    // The running watchdog, or null
+    public static synchronized EdtWatchdog get() {
+        return installed;
+    }
+
+    public long thresholdMillis() {
+        return thresholdNanos / 1_000_000L;
+    }
+
+    // The recorded stalls, oldest first
+    public synchronized List<Stall> stalls() {
+        List<Stall> out = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) out.add(ring[(next - count + i + CAPACITY) % CAPACITY]);
+        return out;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(ring, null);
+        next = count = 0;
+    }
+
+    // ---------- EDT side ----------
+
+    private final class Queue extends EventQueue {
+        public AWTEvent getNextEvent() throws InterruptedException {
+            endSegment(System.nanoTime(), 0); // waiting, in the main loop or a modal dialog's
+            return super.getNextEvent();
+        }
+
+        protected void dispatchEvent(AWTEvent event) {
+            if (edt == null) edt = Thread.currentThread();
+            long start = System.nanoTime();
+            AWTEvent outer = current;
+            depth++;
+            current = event;
+            endSegment(start, start);
+            nested = false;
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                long end = System.nanoTime();
+                if (!nested) dispatch.record(end - start);
+                depth--;
+                current = outer;
+                nested = depth > 0; // the enclosing event runs a modal loop: its time is not all work
+                endSegment(end, depth > 0 ? end : 0); // back in the enclosing event, if any
+            }
+        }
+    }
+
+    // Close the current busy segment at now and start the next (since = 0: idle)
+    private void endSegment(long now, long since) {
+        Stall s = open;
+        if (s != null && s.segment == segment) {
+            s.millis = (now - s.since) / 1_000_000L;
+            s.done = true;
+            open = null;
+        }
+        segment++;
+        busySince = since;
+    }
+
+    // ---------- Watchdog thread ----------
+
+    private void watch() {
+        long check = Math.max(5, thresholdNanos / 4_000_000L);
+        long nextProbe = 0;
+        while (true) {
+            try {
+                Thread.sleep(check);
+            } catch (InterruptedException e) {
+                return;
+            }
+            long now = System.nanoTime();
+            if (now - nextProbe >= 0) {
+                nextProbe = now + PROBE_MILLIS * 1_000_000L;
+                long posted = now;
+                EventQueue.invokeLater(() -> latency.record(System.nanoTime() - posted));
+            }
+            Stall s = open;
+            if (s != null && s.segment != segment) { // the EDT moved on before it saw the stall
+                s.done = true;
+                open = null;
+            }
+            long seg = segment, since = busySince;
+            Thread t = edt;
+            if (t == null || since == 0 || open != null || now - since < thresholdNanos) continue;
+            StackTraceElement[] stack = t.getStackTrace();
+            if (seg != segment) continue; // finished while the stack was taken
+            long blocked = (System.nanoTime() - since) / 1_000_000L;
+            Stall stall = new Stall(seg, since, System.currentTimeMillis() - blocked, describe(current), stack, blocked);
+            open = stall;
+            add(stall);
+        }
+    }
+
+    private void add(Stall s) {
+        synchronized (this) {
+            ring[next] = s;
+            next = (next + 1) % CAPACITY;
+            if (count < CAPACITY) count++;
+        }
+        Metrics.add("edt.stalls", 1);
+        if (logFile != null) log(s);
+    }
+
+    private void log(Stall s) {
+        try (PrintWriter out = new PrintWriter(new FileWriter(logFile, true))) {
+            out.println(format(s.time) + " EDT blocked >= " + s.millis + " ms on " + s.event);
+            for (StackTraceElement e : s.stack) out.println("\tat " + e);
+        } catch (IOException e) {
+            Metrics.error("gui", e);
+        }
+    }
+
+    // Event class, id and source class only: reading more of an event off the EDT is not safe
+    static String describe(AWTEvent e) {
+        if (e == null) return "?";
+        String s = e.getClass().getSimpleName() + " #" + e.getID();
+        Object src = e.getSource();
+        return src == null ? s : s + " on " + src.getClass().getName();
+    }
+
+    private static String format(long millis) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(millis));
+    }
+
+    // ---------- Diagnostics panel ----------
+
+    /** Modeless window with dispatch latency, the recorded stalls and the stack of the selected one. */
+    public void showDialog(Component owner) {
+        JDialog dlg = new JDialog(SwingUtilities.getWindowAncestor(owner), "EDT Diagnostics", Dialog.ModalityType.MODELESS);
+        JLabel summary = new JLabel();
+        StallTableModel model = new StallTableModel();
+        JTable table = new JTable(model);
+        table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+        table.getColumnModel().getColumn(0).setPreferredWidth(160);
+        table.getColumnModel().getColumn(1).setPreferredWidth(80);
+        table.getColumnModel().getColumn(2).setPreferredWidth(420);
+        JTextArea stack = new JTextArea();
+        stack.setEditable(false);
+        stack.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        table.getSelectionModel().addListSelectionListener(e -> {
+            int row = table.getSelectedRow();
+            StringBuilder sb = new StringBuilder();
+            if (row >= 0) for (StackTraceElement el : model.stalls.get(row).stack) sb.append("at ").append(el).append('\n');
+            stack.setText(sb.toString());
+            stack.setCaretPosition(0);
+        });
+        Runnable refresh = () -> {
+            summary.setText(String.format(Locale.ROOT,
+                    "Dispatch p50 %.1f ms, p99 %.1f ms, max %.1f ms   Queue wait p99 %.1f ms   Stalls > %d ms: %d",
+                    dispatch.getP50Micros() / 1e3, dispatch.getP99Micros() / 1e3, dispatch.getMaxMicros() / 1e3,
+                    latency.getP99Micros() / 1e3, thresholdMillis(), Metrics.counter("edt.stalls")));
+            model.setStalls(stalls());
+        };
+        refresh.run();
+
+        JButton refreshBtn = new JButton("Refresh");
+        JButton clearBtn = new JButton("Clear");
+        JButton closeBtn = new JButton("Close");
+        refreshBtn.addActionListener(e -> refresh.run());
+        clearBtn.addActionListener(e -> { clear(); stack.setText(""); refresh.run(); });
+        closeBtn.addActionListener(e -> dlg.dispose());
+        JPanel btns = new JPanel(new FlowLayout(FlowLayout.RIGHT));
+        btns.add(refreshBtn); btns.add(clearBtn); btns.add(closeBtn);
+
+        JSplitPane split = new JSplitPane(JSplitPane.VERTICAL_SPLIT, new JScrollPane(table), new JScrollPane(stack));
+        split.setResizeWeight(0.4);
+        JPanel p = new JPanel(new BorderLayout(8, 8));
+        p.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+        p.add(summary, BorderLayout.NORTH);
+        p.add(split, BorderLayout.CENTER);
+        p.add(btns, BorderLayout.SOUTH);
+        dlg.setContentPane(p);
+        dlg.setSize(820, 520);
+        dlg.setLocationRelativeTo(owner);
+        dlg.setVisible(true);
+    }
+
+    private static final class StallTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+        private static final String[] COLUMNS = {"Time", "Blocked (ms)", "Event"};
+        List<Stall> stalls = new ArrayList<>();
+
+        void setStalls(List<Stall> list) {
+            Collections.reverse(list); // newest first
+            stalls = list;
+            fireTableDataChanged();
+        }
+
+        public int getRowCount() { return stalls.size(); }
+        public int getColumnCount() { return COLUMNS.length; }
+        public String getColumnName(int col) { return COLUMNS[col]; }
+
+        public Object getValueAt(int row, int col) {
+            Stall s = stalls.get(row);
+            switch (col) {
+                case 0: return format(s.time);
+                case 1: return s.done() ? String.valueOf(s.millis()) : ">= " + s.millis();
+                default: return s.event;
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * EventDictionary
+ * Interns event names to small integer IDs so a participant's events can be held as a BitSet.
+ *
+ * IDs are dense, handed out in first-seen order and never reused: renaming an event keeps its ID,
+ * removing one retires the ID. Names are matched exactly after trimming, so "Dance" and
+ * "Dance Battle" are different events.
+ *
+ * A dictionary loaded by EventFileHandler is persistent: IDs are what participants.csv stores,
+ * and a name interned for the first time is written to events.csv before the ID is handed out,
+ * so no stored row can reference an event that is not on disk. Shared between EventFileHandler
+ * and ParticipantFileHandler; all methods are synchronized, except reload and update, which call
+ * out to the handlers without holding the dictionary. The save run by intern holds the dictionary,
+ * and EventFileHandler takes no other lock for it, so there is no second lock to order.
+ *
+ * When several processes share events.csv (ParticipantFileHandler.setShared), every change runs
+ * through update() under their common lock, after reload() has read what the others saved, so two
+ * processes never hand out the same ID for different events.
+ */
+public class EventDictionary {
+    public static final String SEPARATOR = " | ";
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>(); // null = retired
+    private Runnable onNewEvent;                           // saves the dictionary (persistent only)
+    private BooleanSupplier onReload;                      // re-reads it if another process saved it
+    private Guard guard;                                   // lock of the processes sharing it, or null
+
+    /** Runs a change under the lock the processes sharing the files hold (see shareWith). */
+    public interface Guard {
+        <T> T run(Supplier<T> op);
+    }
+
+    // ID of the event, assigning the next free one for a new name; -1 for a blank name
+    public synchronized int intern(String name) {
+        if (name == null) return -1;
+        name = name.trim();
+        if (name.isEmpty()) return -1;
+        Integer id = ids.get(name);
+        if (id != null) return id;
+        ids.put(name, names.size());
+        names.add(name);
+        if (onNewEvent != null) onNewEvent.run();
+        return names.size() - 1;
+    }
+
+    // ID of a live event, or -1
+    public synchronized int idOf(String name) {
+        if (name == null) return -1;
+        Integer id = ids.get(name.trim());
+        return id == null ? -1 : id;
+    }
+
+    // Name of the event, or null if the ID was retired
+    public synchronized String nameOf(int id) {
+        return id >= 0 && id < names.size() ? names.get(id) : null;
+    }
+
+    public synchronized boolean isLive(int id) {
+        return nameOf(id) != null;
+    }
+
+    // IDs handed out so far (live or retired); the next new event gets this ID
+    public synchronized int size() {
+        return names.size();
+    }
+
+    // Live event names in ID order
+    public synchronized List<String> names() {
+        List<String> out = new ArrayList<>(ids.size());
+        for (String n : names) if (n != null) out.add(n);
+        return out;
+    }
+
+    /** Give a live event a new name that no other live event has. Returns false otherwise. */
+    public synchronized boolean rename(int id, String name) {
+        if (!isLive(id) || name == null || name.trim().isEmpty() || ids.containsKey(name.trim())) return false;
+        ids.remove(names.get(id));
+        names.set(id, name.trim());
+        ids.put(name.trim(), id);
+        return true;
+    }
+
+    // Retire an ID; it is never handed out again
+    public synchronized boolean retire(int id) {
+        if (!isLive(id)) return false;
+        ids.remove(names.get(id));
+        names.set(id, null);
+        return true;
+    }
+
+    // ---------- Persistence (EventFileHandler) ----------
+
+    synchronized void define(int id, String name) {
+        while (names.size() <= id) names.add(null);
+        String old = names.set(id, name);
+        if (old != null) ids.remove(old);
+        ids.put(name, id);
+    }
+
+    synchronized void reserve(int nextId) {
+        while (names.size() < nextId) names.add(null);
+    }
+
+    synchronized void persistWith(Runnable save) {
+        this.onNewEvent = save;
+    }
+
+    synchronized void reloadWith(BooleanSupplier reload) {
+        this.onReload = reload;
+    }
+
+    // Replace the contents with what was read from disk; IDs beyond the file's stay retired. True
+    // when a live event was renamed or removed (new events change no existing row)
+    synchronized boolean replace(int nextId, Map<Integer, String> live) {
+        boolean changed = false;
+        for (int id = 0; id < names.size(); id++) {
+            if (names.get(id) != null && !names.get(id).equals(live.get(id))) changed = true;
+            names.set(id, null);
+        }
+        ids.clear();
+        reserve(nextId);
+        for (Map.Entry<Integer, String> e : live.entrySet()) define(e.getKey(), e.getValue());
+        return changed;
+    }
+
+    /** Re-read the dictionary if another process saved it since; true when a live event was renamed or removed. */
+    public boolean reload() {
+        BooleanSupplier reload;
+        synchronized (this) {
+            reload = onReload;
+        }
+        return reload != null && reload.getAsBoolean();
+    }
+
+    /** Lock changes with the processes sharing the files (null: this process alone). */
+    public synchronized void shareWith(Guard guard) {
+        this.guard = guard;
+    }
+
+    /** Run a change (add, rename, remove) under the shared lock if there is one; directly otherwise. */
+    public <T> T update(Supplier<T> op) {
+        Guard g;
+        synchronized (this) {
+            g = guard;
+        }
+        return g != null ? g.run(op) : op.get();
+    }
+
+    public synchronized boolean isPersistent() {
+        return onNewEvent != null;
+    }
+
+    // ---------- Masks ----------
+
+    /**
+     * Parse an Events column (names joined with "|") into a mask, interning unknown names. Only
+     * for rows being registered or imported; read paths use maskOfKnown.
+     */
+    public BitSet maskOf(String events) {
+        return mask(events, true);
+    }
+
+    /** Parse an Events column into a mask of the live events it names; unknown names are left out. */
+    public BitSet maskOfKnown(String events) {
+        return mask(events, false);
+    }
+
+    private BitSet mask(String events, boolean create) {
+        BitSet mask = new BitSet();
+        if (events == null || events.isEmpty()) return mask;
+        int start = 0;
+        while (start <= events.length()) {
+            int end = events.indexOf('|', start);
+            if (end < 0) end = events.length();
+            String name = events.substring(start, end);
+            int id = create ? intern(name) : idOf(name);
+            if (id >= 0) mask.set(id);
+            start = end + 1;
+        }
+        return mask;
+    }
+
+    // Mask for a list of event names
+    public BitSet maskOf(Collection<String> events) {
+        BitSet mask = new BitSet();
+        for (String ev : events) {
+            int id = intern(ev);
+            if (id >= 0) mask.set(id);
+        }
+        return mask;
+    }
+
+    /** Events column text for a mask, live names in ID order. */
+    public synchronized String format(BitSet mask) {
+        StringBuilder sb = new StringBuilder();
+        for (int id = mask.nextSetBit(0); id >= 0; id = mask.nextSetBit(id + 1)) {
+            String name = nameOf(id);
+            if (name == null) continue;
+            if (sb.length() > 0) sb.append(SEPARATOR);
+            sb.append(name);
+        }
+        return sb.toString();
+    }
+
+    /** EventIds column text for a mask ("3 | 7"). */
+    public static String formatIds(BitSet mask) {
+        StringBuilder sb = new StringBuilder();
+        for (int id = mask.nextSetBit(0); id >= 0; id = mask.nextSetBit(id + 1)) {
+            if (sb.length() > 0) sb.append(SEPARATOR);
+            sb.append(id);
+        }
+        return sb.toString();
+    }
+
+    /** Parse an EventIds column, keeping only live IDs (a removed event drops out here). */
+    public BitSet parseIds(String eventIds) {
+        BitSet mask = new BitSet();
+        if (eventIds == null || eventIds.isEmpty()) return mask;
+        for (String s : eventIds.split("\\|")) {
+            try {
+                int id = Integer.parseInt(s.trim());
+                if (isLive(id)) mask.set(id);
+            } catch (NumberFormatException ignored) {}
+        }
+        return mask;
+    }
+}
@@ -5,147 +5,265 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
+// events.csv: "# nextId=<n>" then one "<id>,<name>" line per live event. Event IDs are stable:
+// participants.csv refers to events by ID, so a rename or removal only rewrites this file.
+// A file with bare names (one per line, the original format) is read with IDs in line order.
+// Changes go through EventDictionary.update, so processes sharing the files make them one at a time.
+// Saving and re-reading lock the dictionary itself rather than this handler: intern() saves while
+// holding it, so a second lock taken in the other order could deadlock.
 public class EventFileHandler {
+   private static final String NEXT_ID = "# nextId=";
    private final String filePath;
+   private final EventDictionary dictionary;
+   private String diskState; // identity/size/mtime of events.csv as last read or written here
 
    public EventFileHandler() {
       this("events.csv");
    }
 
-   public EventFileHandler(String var1) {
-      this.filePath = var1;
+   public EventFileHandler(String filePath) {
+      this.filePath = filePath;
+      this.dictionary = new EventDictionary();
       this.ensureFileExistsWithDefaults();
+      String state = stateOf(new File(filePath));
+      this.readDictionary();
+      if (this.diskState == null) {
+         this.diskState = state;
+      }
+
+      this.dictionary.persistWith(() -> this.saveDictionary());
+      this.dictionary.reloadWith(() -> this.reloadIfChanged());
+   }
+
+   // Event name -> stable integer ID; persistent, so participants can store the IDs
+   public EventDictionary dictionary() {
+      return this.dictionary;
+   }
+
+   public int idOf(String name) {
+      return this.dictionary.idOf(name);
    }
 
    private void ensureFileExistsWithDefaults() {
       File var1 = new File(this.filePath);
       if (!var1.exists()) {
          List var2 = Arrays.asList("Coding", "Dance", "Debate", "Robotics");
-         this.saveEvents(var2);
+         Iterator var3 = var2.iterator();
+
+         while(var3.hasNext()) {
+            this.dictionary.intern((String)var3.next());
+         }
+
+         this.saveDictionary();
       }
 
    }
 
-   public List<String> loadEvents() {
-      ArrayList var1 = new ArrayList();
-      File var2 = new File(this.filePath);
-      if (!var2.exists()) {
-         return var1;
-      } else {
-         try {
-            BufferedReader var3 = new BufferedReader(new FileReader(var2));
-
-            String var4;
-            try {
-               while((var4 = var3.readLine()) != null) {
-                  var4 = var4.trim();
-                  if (!var4.isEmpty()) {
-                     var1.add(var4);
-                  }
-               }
-            } catch (Throwable var7) {
-               try {
-                  var3.close();
-               } catch (Throwable var6) {
-                  var7.addSuppressed(var6);
-               }
+   private void readDictionary() {
+      File file = new File(this.filePath);
+      if (!file.exists()) {
+         return;
+      }
 
-               throw var7;
+      boolean bareNames = false;
+      try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+         String first = in.readLine();
+         if (first != null && first.startsWith(NEXT_ID)) {
+            this.dictionary.reserve(nextIdOf(first));
+            Map<Integer, String> live = new HashMap<>();
+            try {
+               readIds(in, live);
+            } finally {
+               live.forEach(this.dictionary::define); // lines before a bad one still count
             }
+         } else {
+            for (String line = first; line != null; line = in.readLine()) {
+               this.dictionary.intern(line);
+            }
+            bareNames = true;
+         }
+      } catch (IOException | NumberFormatException e) {
+         Metrics.error("events", e);
+      }
 
-            var3.close();
-         } catch (IOException var8) {
-            var8.printStackTrace();
+      if (bareNames) {
+         this.saveDictionary(); // fix the IDs on disk before participants start referring to them
+      }
+   }
+
+   private static int nextIdOf(String header) {
+      return Integer.parseInt(header.substring(NEXT_ID.length()).trim());
+   }
+
+   // The "<id>,<name>" lines after the header, into live
+   private static void readIds(BufferedReader in, Map<Integer, String> live) throws IOException {
+      String line;
+      while ((line = in.readLine()) != null) {
+         int comma = line.indexOf(',');
+         if (comma <= 0) {
+            continue;
          }
+         String name = line.substring(comma + 1).trim();
+         if (!name.isEmpty()) {
+            live.put(Integer.parseInt(line.substring(0, comma).trim()), name);
+         }
+      }
+   }
+
+   // Re-read events.csv if another process saved it since; true when a live event was renamed or removed
+   private boolean reloadIfChanged() {
+      synchronized (this.dictionary) {
+         return this.reloadIfChangedLocked();
+      }
+   }
 
-         return var1;
+   private boolean reloadIfChangedLocked() {
+      File file = new File(this.filePath);
+      String state = stateOf(file);
+      if (state.equals(this.diskState)) {
+         return false;
       }
+
+      Map<Integer, String> live = new HashMap<>();
+      int nextId;
+      try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+         String header = in.readLine();
+         if (header == null || !header.startsWith(NEXT_ID)) {
+            throw new IOException("no " + NEXT_ID + " header: " + file); // only ever written with one
+         }
+         nextId = nextIdOf(header);
+         readIds(in, live);
+      } catch (IOException | NumberFormatException e) {
+         Metrics.error("events", e); // keep what we have; the next catch-up tries again
+         return false;
+      }
+
+      this.diskState = state;
+      Metrics.add("events.reloads", 1);
+      return this.dictionary.replace(nextId, live);
    }
 
-   public boolean saveEvents(List<String> var1) {
+   private static String stateOf(File file) {
       try {
-         PrintWriter var2 = new PrintWriter(new FileWriter(this.filePath, false));
+         BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+         return attrs.fileKey() + "/" + attrs.size() + "/" + attrs.lastModifiedTime().toMillis();
+      } catch (IOException e) {
+         return "missing";
+      }
+   }
 
-         boolean var8;
-         try {
-            Iterator var3 = var1.iterator();
+   // Live event names in ID order
+   public List<String> loadEvents() {
+      return this.dictionary.names();
+   }
 
-            while(true) {
-               if (!var3.hasNext()) {
-                  var8 = true;
-                  break;
-               }
+   // Make the live events exactly these: listed names keep (or get) an ID, the others are retired
+   public boolean saveEvents(List<String> events) {
+      return this.dictionary.update(() -> this.saveEventsLocked(events));
+   }
+
+   private boolean saveEventsLocked(List<String> events) {
+      for (String name : this.dictionary.names()) {
+         if (!events.contains(name)) {
+            this.dictionary.retire(this.dictionary.idOf(name));
+         }
+      }
+      for (String name : events) {
+         this.dictionary.intern(name);
+      }
+      return this.saveDictionary();
+   }
 
-               String var4 = (String)var3.next();
-               var2.println(var4);
+   // Write to a temp file and move it into place, so a rename or removal is all-or-nothing
+   private boolean saveDictionary() {
+      synchronized (this.dictionary) {
+         return this.saveDictionaryLocked();
+      }
+   }
+
+   private boolean saveDictionaryLocked() {
+      File file = new File(this.filePath);
+      File tmp = new File(file.getAbsolutePath() + ".tmp");
+      try {
+         try (PrintWriter out = new PrintWriter(new FileWriter(tmp, false))) {
+            int nextId = this.dictionary.size();
+            out.println(NEXT_ID + nextId);
+            for (int id = 0; id < nextId; id++) {
+               String name = this.dictionary.nameOf(id);
+               if (name != null) {
+                  out.println(id + "," + name);
+               }
             }
-         } catch (Throwable var6) {
-            try {
-               var2.close();
-            } catch (Throwable var5) {
-               var6.addSuppressed(var5);
+            if (out.checkError()) {
+               throw new IOException("write failed: " + tmp);
             }
-
-            throw var6;
          }
-
-         var2.close();
-         return var8;
-      } catch (IOException var7) {
-         var7.printStackTrace();
+         Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+         this.diskState = stateOf(file);
+         return true;
+      } catch (IOException e) {
+         Metrics.error("events", e);
          return false;
       }
    }
 
-   public boolean addEvent(String var1) {
-      if (var1 == null) {
+   public boolean addEvent(String name) {
+      return this.dictionary.update(() -> this.addEventLocked(name));
+   }
+
+   private boolean addEventLocked(String name) {
+      if (name == null || name.trim().isEmpty() || this.dictionary.idOf(name) >= 0) {
          return false;
-      } else {
-         var1 = var1.trim();
-         if (var1.isEmpty()) {
-            return false;
-         } else {
-            List var2 = this.loadEvents();
-            if (var2.contains(var1)) {
-               return false;
-            } else {
-               var2.add(var1);
-               return this.saveEvents(var2);
-            }
-         }
       }
+      this.dictionary.intern(name);
+      return this.saveDictionary();
    }
 
-   public boolean renameEvent(String var1, String var2) {
-      if (var1 != null && var2 != null) {
-         var2 = var2.trim();
-         if (var2.isEmpty()) {
-            return false;
-         } else {
-            List var3 = this.loadEvents();
-            if (!var3.contains(var1)) {
-               return false;
-            } else if (var3.contains(var2)) {
-               return false;
-            } else {
-               int var4 = var3.indexOf(var1);
-               var3.set(var4, var2);
-               return this.saveEvents(var3);
-            }
-         }
-      } else {
+   // Only events.csv changes; participants keep referring to the same ID
+   public boolean renameEvent(String oldName, String newName) {
+      return this.dictionary.update(() -> this.renameEventLocked(oldName, newName));
+   }
+
+   private boolean renameEventLocked(String oldName, String newName) {
+      if (oldName == null || newName == null || newName.trim().isEmpty()) {
+         return false;
+      }
+      int id = this.dictionary.idOf(oldName);
+      if (id < 0 || !this.dictionary.rename(id, newName)) {
          return false;
       }
+      if (this.saveDictionary()) {
+         return true;
+      }
+      this.dictionary.rename(id, oldName);
+      return false;
    }
 
-   public boolean removeEvent(String var1) {
-      List var2 = this.loadEvents();
-      boolean var3 = var2.remove(var1);
-      return var3 ? this.saveEvents(var2) : false;
+   // Retires the ID; participants still listing it drop it when they are next loaded
+   public boolean removeEvent(String name) {
+      return this.dictionary.update(() -> this.removeEventLocked(name));
+   }
+
+   private boolean removeEventLocked(String name) {
+      int id = this.dictionary.idOf(name);
+      if (id < 0) {
+         return false;
+      }
+      String oldName = this.dictionary.nameOf(id);
+      this.dictionary.retire(id);
+      if (this.saveDictionary()) {
+         return true;
+      }
+      this.dictionary.define(id, oldName);
+      return false;
    }
 }
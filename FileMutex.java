@@ -0,0 +1,54 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * FileMutex
+ * Reentrant lock shared by threads of this JVM and by other processes using the same lock file.
+ *
+ * Threads queue on an in-process ReentrantLock; the outermost holder additionally takes an exclusive
+ * FileChannel lock on the lock file, which is what other processes contend on. (Two channels of the
+ * same JVM may not lock the same file at once, hence the in-process lock in front.)
+ */
+public class FileMutex implements Closeable {
+    private final ReentrantLock local = new ReentrantLock();
+    private final FileChannel channel;
+    private FileLock fileLock;
+
+    public FileMutex(String lockPath) throws IOException {
+        channel = FileChannel.open(Paths.get(lockPath), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+    }
+
+    public void lock() {
+        local.lock();
+        if (local.getHoldCount() > 1) return;
+        try {
+            fileLock = channel.lock();
+        } catch (IOException e) {
+            local.unlock();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void unlock() {
+        if (local.getHoldCount() == 1 && fileLock != null) {
+            try {
+                fileLock.release();
+            } catch (IOException e) {
+                Metrics.error("lock", e);
+            }
+            fileLock = null;
+        }
+        local.unlock();
+    }
+
+    public boolean isHeldByCurrentThread() {
+        return local.isHeldByCurrentThread();
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,178 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * ImportPipeline
+ * Bulk import of an import sheet (see ParticipantFileHandler.IMPORT_COLUMNS) on all cores.
+ *
+ * Three stages with bounded hand-offs:
+ *  - a reader thread cuts the input into chunks of about CHUNK_CHARS at record boundaries (a line
+ *    break outside quotes), so no record is split between chunks;
+ *  - worker threads tokenize, trim, split the events and validate whole chunks in parallel;
+ *  - the calling thread is the single writer: it takes parsed chunks back in input order and hands
+ *    each to the handler as one batch, which applies the duplicate policy, assigns IDs the way
+ *    generateID() does and writes the batch.
+ * IDs, row numbers in error messages and duplicate handling are therefore the same as with
+ * ParticipantFileHandler.importCSV. At most 2 x workers chunks are between reader and writer at
+ * any time, so the reader blocks when parsing or writing falls behind and memory stays bounded.
+ */
+public class ImportPipeline {
+    static final int CHUNK_CHARS = 256 * 1024;
+
+    // Where the chunk cutter is within a record, following CsvTokenizer's quoting rules: a quote
+    // only opens a field at its start, and anything between a closing quote and the delimiter is plain
+    private static final int FIELD_START = 0, PLAIN = 1, QUOTED = 2, QUOTE_SEEN = 3;
+
+    private final ParticipantFileHandler handler;
+    private final int workers;
+
+    public ImportPipeline(ParticipantFileHandler handler) {
+        this(handler, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ImportPipeline(ParticipantFileHandler handler, int workers) {
+        this.handler = handler;
+        this.workers = Math.max(1, workers);
+    }
+
+    // A chunk parsed by a worker, or the reader's end marker (seq = number of chunks)
+    private static final class Chunk {
+        final int seq;
+        final boolean end;
+        List<ParticipantFileHandler.PreparedRow> rows;
+        Throwable failure;
+
+        Chunk(int seq, boolean end) {
+            this.seq = seq;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Import a sheet (with header). Progress is reported after each chunk with total -1; on
+     * cancellation the chunks already written are kept. Throws if reading the input fails.
+     */
+    public ParticipantFileHandler.ImportResult run(Reader in, ParticipantFileHandler.ImportListener listener) throws IOException {
+        ParticipantFileHandler.ImportResult res = new ParticipantFileHandler.ImportResult();
+        if (!handler.beginImport(res)) return res;
+        Semaphore inFlight = new Semaphore(workers * 2);
+        BlockingQueue<Chunk> parsed = new LinkedBlockingQueue<>(); // bounded by inFlight
+        ExecutorService pool = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "import-parse");
+            t.setDaemon(true);
+            return t;
+        });
+        Thread reader = new Thread(() -> {
+            try {
+                parsed.add(read(in, pool, inFlight, parsed));
+            } catch (InterruptedException | RejectedExecutionException ignored) {
+                // the writer stopped early
+            }
+        }, "import-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        Throwable failure = null;
+        Map<Integer, Chunk> early = new HashMap<>(); // parsed ahead of the chunk the writer needs
+        int next = 0, chunks = -1, done = 0;
+        try {
+            while (chunks < 0 || next < chunks) {
+                Chunk c = early.remove(next);
+                if (c == null) {
+                    c = parsed.take();
+                    if (c.end) {
+                        chunks = c.seq;
+                        failure = c.failure; // still write the chunks read before it
+                        continue;
+                    }
+                    if (c.seq != next) { early.put(c.seq, c); continue; }
+                }
+                if (c.failure != null) { failure = c.failure; break; }
+                handler.appendPrepared(c.rows, done, -1, res, listener);
+                done += c.rows.size();
+                next++;
+                inFlight.release();
+                if (listener != null && listener.isCancelled()) {
+                    res.cancelled = true;
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            res.cancelled = true;
+        } finally {
+            reader.interrupt();
+            pool.shutdownNow();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (failure instanceof IOException) throw (IOException) failure;
+        if (failure != null) throw new IOException("Import failed after " + done + " rows", failure);
+        return res;
+    }
+
+    // Cut the input at record boundaries and queue each chunk for parsing; returns the end marker
+    private static Chunk read(Reader in, ExecutorService pool, Semaphore inFlight, BlockingQueue<Chunk> parsed)
+            throws InterruptedException {
+        char[] buf = new char[CHUNK_CHARS * 2];
+        int len = 0, scanned = 0, cut = 0, seq = 0;
+        int state = FIELD_START;
+        try {
+            while (true) {
+                if (len == buf.length) buf = Arrays.copyOf(buf, len * 2); // a record longer than a chunk
+                int n = in.read(buf, len, buf.length - len);
+                if (n < 0) break;
+                len += n;
+                for (; scanned < len; scanned++) {
+                    char c = buf[scanned];
+                    if (state == QUOTED) {
+                        if (c == '"') state = QUOTE_SEEN;
+                        continue;
+                    }
+                    if (state == QUOTE_SEEN && c == '"') { state = QUOTED; continue; } // doubled quote
+                    if (c == ',') state = FIELD_START;
+                    else if (c == '\n' || c == '\r') { state = FIELD_START; cut = scanned + 1; }
+                    else state = state == FIELD_START && c == '"' ? QUOTED : PLAIN;
+                }
+                if (cut >= CHUNK_CHARS) {
+                    submit(seq++, Arrays.copyOf(buf, cut), pool, inFlight, parsed);
+                    System.arraycopy(buf, cut, buf, 0, len - cut);
+                    len -= cut;
+                    scanned -= cut;
+                    cut = 0;
+                }
+            }
+            if (len > 0) submit(seq++, Arrays.copyOf(buf, len), pool, inFlight, parsed);
+        } catch (IOException e) {
+            Chunk end = new Chunk(seq, true);
+            end.failure = e;
+            return end;
+        }
+        return new Chunk(seq, true);
+    }
+
+    private static void submit(int seq, char[] text, ExecutorService pool, Semaphore inFlight, BlockingQueue<Chunk> parsed)
+            throws InterruptedException {
+        inFlight.acquire();
+        pool.execute(() -> parsed.add(parse(seq, text)));
+    }
+
+    // Tokenize and prepare one chunk; the first chunk starts with the header
+    private static Chunk parse(int seq, char[] text) {
+        Chunk c = new Chunk(seq, false);
+        try (CsvTokenizer csv = new CsvTokenizer(new CharArrayReader(text), text.length)) {
+            List<ParticipantFileHandler.PreparedRow> rows = new ArrayList<>();
+            if (seq == 0) csv.next();
+            String[] record;
+            while ((record = csv.next()) != null) rows.add(ParticipantFileHandler.prepareImportRow(record));
+            c.rows = rows;
+        } catch (IOException | RuntimeException e) {
+            c.failure = e;
+        }
+        return c;
+    }
+}
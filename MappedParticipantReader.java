@@ -0,0 +1,422 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * MappedParticipantReader
+ * Read-only view of participants.csv served straight from a memory-mapped file.
+ *
+ * Opening the file scans it once to record where each row starts (one long per row) and to fill an
+ * open-addressing table from participant ID to row number; no String is created for a row until it
+ * is asked for. Rows are decoded on access (get, findById, search hits) and the most recently
+ * decoded ones are cached, so a table scrolling over the rows does not decode them again per cell.
+ * The reader is safe for concurrent readers: a cache slot holds its row number and row together.
+ *
+ * A file whose Events column holds event IDs is shown with names from the given EventDictionary;
+ * keyword matching then cannot use the raw bytes and decodes every row.
+ *
+ * Files larger than one mapping are covered by several mappings, each starting on a row boundary.
+ * The file must not be rewritten while the reader is open.
+ *
+ * Changes made after the file was written (the writers' journal) can be laid over it with put()
+ * and remove(), and are shown from commit() on: a changed row keeps its place, a deleted one drops
+ * out and new IDs follow the file's rows. The published overlay is immutable, so readers see
+ * either all of a commit or none of it; put, remove and commit themselves are not thread-safe.
+ */
+public class MappedParticipantReader implements Closeable {
+    // at most this many bytes per mapping; a row never spans two mappings
+    private static final long SEGMENT_BYTES = 1L << 30;
+    private static final int CACHE_SIZE = 1024; // decoded rows kept, direct-mapped by row number
+    // the handler writes the CSV through FileWriter, i.e. in the platform charset
+    private static final Charset CSV_CHARSET = Charset.defaultCharset();
+
+    private final FileChannel channel;
+    private final EventDictionary events;
+    private boolean eventIds;                // header says EventIds
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final List<Long> segmentBase = new ArrayList<>();
+    private long[] offsets = new long[1024]; // row i spans offsets[i] .. offsets[i + 1]
+    private int rowCount;
+    private int[] idTable;                   // row number + 1, 0 = empty
+    private final CachedRow[] cache = new CachedRow[CACHE_SIZE];
+    // overlay being built by put/remove; readers use the last committed one
+    private final Map<String, String[]> replacedById = new HashMap<>();
+    private final Set<String> deletedIds = new HashSet<>();
+    private final LinkedHashMap<String, String[]> appended = new LinkedHashMap<>();
+    private volatile Overlay overlay = Overlay.NONE;
+
+    public MappedParticipantReader(String path) throws IOException {
+        this(path, null);
+    }
+
+    // events: resolves an EventIds column to names; may be null for files that store names
+    public MappedParticipantReader(String path, EventDictionary events) throws IOException {
+        this.events = events;
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        try {
+            indexRows(channel.size());
+            indexIds();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int size() {
+        return size(overlay);
+    }
+
+    private int size(Overlay o) {
+        return rowCount - o.deleted.length + o.appended.size();
+    }
+
+    // Row i (file order, header excluded, overlay applied) as a complete 9-column row
+    public String[] get(int i) {
+        return get(overlay, i);
+    }
+
+    private String[] get(Overlay o, int i) {
+        int fileRows = rowCount - o.deleted.length;
+        if (i < 0 || i >= fileRows + o.appended.size()) throw new IndexOutOfBoundsException("row " + i + " of " + size(o));
+        if (i >= fileRows) return o.appended.get(i - fileRows);
+        int row = o.deleted.length == 0 ? i : fileRow(o.deleted, i);
+        String[] r = o.replaced.isEmpty() ? null : o.replaced.get(row);
+        return r != null ? r : decoded(row);
+    }
+
+    // Row number of the i-th row not deleted: the smallest row with i rows not deleted before it
+    private static int fileRow(int[] deleted, int i) {
+        int lo = i, hi = i + deleted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int at = Arrays.binarySearch(deleted, mid);
+            int upTo = at >= 0 ? at + 1 : -at - 1; // deleted rows <= mid
+            if (mid - upTo >= i) hi = mid;
+            else lo = mid + 1;
+        }
+        return lo;
+    }
+
+    private static boolean isDeleted(Overlay o, int row) {
+        return o.deleted.length > 0 && Arrays.binarySearch(o.deleted, row) >= 0;
+    }
+
+    // File row, decoded through the cache
+    private String[] decoded(int i) {
+        int slot = i & (CACHE_SIZE - 1);
+        CachedRow c = cache[slot];
+        if (c != null && c.row == i) return c.r;
+        String[] r = decode(i);
+        cache[slot] = new CachedRow(i, r);
+        return r;
+    }
+
+    // Immutable slot entry, so a racing reader sees either the old or the new pair, never a mix
+    private static final class CachedRow {
+        final int row;
+        final String[] r;
+
+        CachedRow(int row, String[] r) {
+            this.row = row;
+            this.r = r;
+        }
+    }
+
+    /** All rows as a list that decodes each row only when it is read; later commits do not change it. */
+    public List<String[]> rows() {
+        Overlay o = overlay;
+        return new AbstractList<String[]>() {
+            public String[] get(int i) {
+                return MappedParticipantReader.this.get(o, i);
+            }
+
+            public int size() {
+                return MappedParticipantReader.this.size(o);
+            }
+        };
+    }
+
+    // Row for the given participant ID, or null
+    public String[] findById(String id) {
+        Overlay o = overlay;
+        String[] r = o.appendedById.isEmpty() ? null : o.appendedById.get(id);
+        if (r != null) return r;
+        int row = rowOf(id);
+        if (row < 0 || isDeleted(o, row)) return null;
+        r = o.replaced.isEmpty() ? null : o.replaced.get(row);
+        return r != null ? r : decoded(row);
+    }
+
+    /**
+     * Rows whose columns 0..7 contain keyword (case-insensitive), in file order.
+     * ASCII keywords are first matched against the raw bytes so rows that cannot match are never decoded.
+     */
+    public List<String[]> search(String keyword) {
+        List<String[]> res = new ArrayList<>();
+        String kw = keyword.toLowerCase();
+        byte[] pattern = kw.getBytes(CSV_CHARSET);
+        // a quote in the keyword is doubled in the raw bytes, so those keywords skip the byte test
+        boolean ascii = pattern.length == kw.length() && pattern.length > 0 && kw.indexOf('"') < 0 && !eventIds;
+        Overlay o = overlay;
+        for (int i = 0; i < rowCount; i++) {
+            if (isDeleted(o, i)) continue;
+            String[] r = o.replaced.isEmpty() ? null : o.replaced.get(i);
+            if (r == null) {
+                if (ascii && !containsIgnoreCase(i, pattern)) continue;
+                r = decoded(i);
+            }
+            if (matches(r, kw)) res.add(r);
+        }
+        for (String[] r : o.appended) if (matches(r, kw)) res.add(r);
+        return res;
+    }
+
+    // Narrow an earlier search result to the rows that also contain keyword
+    public static List<String[]> filter(List<String[]> within, String keyword) {
+        String kw = keyword.toLowerCase();
+        List<String[]> res = new ArrayList<>();
+        for (String[] r : within) if (matches(r, kw)) res.add(r);
+        return res;
+    }
+
+    private static boolean matches(String[] r, String kw) {
+        for (int c = 0; c < 8; c++) if (r[c].toLowerCase().contains(kw)) return true;
+        return false;
+    }
+
+    public void close() throws IOException {
+        channel.close(); // mappings stay valid until collected
+    }
+
+    // ---------- Overlay ----------
+
+    // Lay a changed or new row over the file (shown from the next commit)
+    public void put(String[] row) {
+        String id = row[0];
+        if (!deletedIds.contains(id) && rowOf(id) >= 0) replacedById.put(id, row);
+        else appended.put(id, row); // a new ID, or one deleted from the file and added again: at the end
+    }
+
+    public void remove(String id) {
+        if (appended.remove(id) != null) return;
+        if (rowOf(id) >= 0 && deletedIds.add(id)) replacedById.remove(id);
+    }
+
+    // Publish the changes made by put and remove so far
+    public void commit() {
+        Map<Integer, String[]> replaced = new HashMap<>();
+        for (Map.Entry<String, String[]> e : replacedById.entrySet()) replaced.put(rowOf(e.getKey()), e.getValue());
+        int[] deleted = new int[deletedIds.size()];
+        int n = 0;
+        for (String id : deletedIds) deleted[n++] = rowOf(id);
+        Arrays.sort(deleted);
+        overlay = new Overlay(replaced, deleted, new ArrayList<>(appended.values()), new HashMap<>(appended));
+    }
+
+    private static final class Overlay {
+        static final Overlay NONE = new Overlay(Collections.emptyMap(), new int[0], Collections.emptyList(), Collections.emptyMap());
+
+        final Map<Integer, String[]> replaced;     // by file row
+        final int[] deleted;                       // file rows, sorted
+        final List<String[]> appended;             // rows not in the file, in order
+        final Map<String, String[]> appendedById;
+
+        Overlay(Map<Integer, String[]> replaced, int[] deleted, List<String[]> appended, Map<String, String[]> appendedById) {
+            this.replaced = replaced;
+            this.deleted = deleted;
+            this.appended = appended;
+            this.appendedById = appendedById;
+        }
+    }
+
+    // ---------- Index construction ----------
+
+    // Map the file segment by segment and record the start of every record after the header
+    private void indexRows(long fileSize) throws IOException {
+        long base = 0;
+        boolean header = true;
+        while (base < fileSize) {
+            long len = Math.min(SEGMENT_BYTES, fileSize - base);
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, base, len);
+            int limit = (int) len;
+            boolean last = base + len == fileSize;
+            int rowStart = 0;
+            int end = 0;  // just past the last complete record in this mapping
+            boolean quoted = false;
+            for (int p = 0; p < limit; p++) {
+                byte b = buf.get(p);
+                if (b == '"') quoted = !quoted;
+                else if (b == '\n' && !quoted) {
+                    addRow(header, base, rowStart, p + 1, buf);
+                    header = false;
+                    rowStart = p + 1;
+                    end = p + 1;
+                }
+            }
+            if (last) {
+                if (rowStart < limit) addRow(header, base, rowStart, limit, buf);
+                end = limit;
+            } else if (end == 0) {
+                throw new IOException("record longer than " + SEGMENT_BYTES + " bytes at offset " + base);
+            }
+            segments.add(buf);
+            segmentBase.add(base);
+            base += end; // the next mapping starts at the first incomplete record
+        }
+        ensureOffsets(rowCount + 1);
+        offsets[rowCount] = fileSize;
+    }
+
+    private void addRow(boolean header, long base, int from, int to, MappedByteBuffer buf) {
+        if (header) {
+            byte[] b = new byte[to - from];
+            buf.get(from, b);
+            String[] h = CsvTokenizer.split(new String(b, CSV_CHARSET).trim());
+            eventIds = h.length > 7 && h[7].equals("EventIds");
+            return;
+        }
+        int content = to;
+        while (content > from && (buf.get(content - 1) == '\n' || buf.get(content - 1) == '\r')) content--;
+        if (content == from) return; // blank line
+        ensureOffsets(rowCount + 2);
+        offsets[rowCount++] = base + from;
+    }
+
+    private void ensureOffsets(int n) {
+        if (n > offsets.length) offsets = Arrays.copyOf(offsets, Math.max(n, offsets.length * 2));
+    }
+
+    // Open addressing over row numbers keyed by the ID field's bytes; a later row wins over an earlier one with the same ID
+    private void indexIds() {
+        int cap = Integer.highestOneBit(Math.max(4, rowCount * 2 - 1)) << 1;
+        idTable = new int[cap];
+        for (int row = 0; row < rowCount; row++) {
+            int slot = idHash(row) & (cap - 1);
+            while (idTable[slot] != 0 && !sameId(idTable[slot] - 1, row)) slot = (slot + 1) & (cap - 1);
+            idTable[slot] = row + 1;
+        }
+    }
+
+    private int rowOf(String id) {
+        if (id == null) return -1;
+        byte[] key = id.getBytes(CSV_CHARSET);
+        int cap = idTable.length;
+        int slot = hash(key) & (cap - 1);
+        while (idTable[slot] != 0) {
+            int row = idTable[slot] - 1;
+            if (idEquals(row, key)) return row;
+            slot = (slot + 1) & (cap - 1);
+        }
+        return -1;
+    }
+
+    // ---------- Byte access ----------
+
+    // IDs are normally unquoted, so they are hashed and compared in place; a quoted ID is decoded first
+    private boolean quotedId(int row) {
+        int p = localOffset(row);
+        return p < localEnd(row) && segmentOf(row).get(p) == '"';
+    }
+
+    // Length of an unquoted ID field
+    private int idLength(int row) {
+        MappedByteBuffer seg = segmentOf(row);
+        int from = localOffset(row), end = localEnd(row), p = from;
+        while (p < end && seg.get(p) != ',') p++;
+        return p - from;
+    }
+
+    private int idHash(int row) {
+        if (quotedId(row)) return hash(decode(row)[0].getBytes(CSV_CHARSET));
+        MappedByteBuffer seg = segmentOf(row);
+        int from = localOffset(row), len = idLength(row);
+        int h = 1;
+        for (int i = 0; i < len; i++) h = 31 * h + seg.get(from + i);
+        return h ^ (h >>> 16);
+    }
+
+    private boolean idEquals(int row, byte[] key) {
+        if (quotedId(row)) return Arrays.equals(decode(row)[0].getBytes(CSV_CHARSET), key);
+        if (idLength(row) != key.length) return false;
+        MappedByteBuffer seg = segmentOf(row);
+        int from = localOffset(row);
+        for (int i = 0; i < key.length; i++) if (seg.get(from + i) != key[i]) return false;
+        return true;
+    }
+
+    private boolean sameId(int a, int b) {
+        if (quotedId(b)) return idEquals(a, decode(b)[0].getBytes(CSV_CHARSET));
+        byte[] key = new byte[idLength(b)];
+        segmentOf(b).get(localOffset(b), key);
+        return idEquals(a, key);
+    }
+
+    private static int hash(byte[] b) {
+        int h = 1;
+        for (byte x : b) h = 31 * h + x;
+        return h ^ (h >>> 16);
+    }
+
+    // Raw-byte, ASCII case-insensitive substring test over one row (pattern is already lowercase)
+    private boolean containsIgnoreCase(int row, byte[] pattern) {
+        MappedByteBuffer seg = segmentOf(row);
+        int from = localOffset(row), end = localEnd(row) - pattern.length;
+        byte first = pattern[0];
+        outer:
+        for (int p = from; p <= end; p++) {
+            if (lower(seg.get(p)) != first) continue;
+            for (int k = 1; k < pattern.length; k++) if (lower(seg.get(p + k)) != pattern[k]) continue outer;
+            return true;
+        }
+        return false;
+    }
+
+    private static byte lower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+
+    private String[] decode(int row) {
+        MappedByteBuffer seg = segmentOf(row);
+        int from = localOffset(row);
+        byte[] bytes = new byte[localEnd(row) - from];
+        seg.get(from, bytes);
+        String[] f = CsvTokenizer.split(new String(bytes, CSV_CHARSET));
+        String[] r = new String[9];
+        for (int i = 0; i < 9; i++) r[i] = i < f.length && f[i] != null ? f[i] : "";
+        if (eventIds && events != null) r[7] = events.format(events.parseIds(r[7]));
+        return r;
+    }
+
+    private MappedByteBuffer segmentOf(int row) {
+        return segments.get(segmentIndex(row));
+    }
+
+    private int segmentIndex(int row) {
+        if (segments.size() == 1) return 0;
+        long off = offsets[row];
+        int lo = 0, hi = segments.size() - 1; // last mapping starting at or before off
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (segmentBase.get(mid) <= off) lo = mid;
+            else hi = mid - 1;
+        }
+        return lo;
+    }
+
+    private int localOffset(int row) {
+        return (int) (offsets[row] - segmentBase.get(segmentIndex(row)));
+    }
+
+    // End of the row within its mapping, excluding the line break
+    private int localEnd(int row) {
+        MappedByteBuffer seg = segmentOf(row);
+        long base = segmentBase.get(segmentIndex(row));
+        int end = (int) (Math.min(offsets[row + 1], base + seg.capacity()) - base);
+        int start = localOffset(row);
+        while (end > start && (seg.get(end - 1) == '\n' || seg.get(end - 1) == '\r')) end--;
+        return end;
+    }
+}
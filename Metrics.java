@@ -0,0 +1,366 @@
+import jdk.jfr.*;
+
+import javax.management.*;
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.file.*;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics
+ * Process-wide latency histograms and counters for handler operations.
+ *
+ * Operations are timed with try-with-resources:
+ *
+ *   try (Metrics.Timer t = Metrics.time("search")) { ...; t.rows(scanned); }
+ *
+ * Each operation name gets a Histogram (log-linear buckets like HdrHistogram: two significant
+ * digits, 1 ns to 2^63 ns, recording is lock-free) and is exposed as the JMX MXBean
+ * "SmartReg:type=Operation,name=<op>". Counters (bytes read and written, backup bytes, rows
+ * scanned, errors per area) are plain sums under "SmartReg:type=Counters". Every timed call is
+ * also a JFR event (smartreg.Operation) and every error a smartreg.Error event, so a recording
+ * of event day shows spikes next to GC and I/O; both cost nothing while no recording is running.
+ * MBeans are registered on a background thread, so the first timed call does not wait for JMX.
+ *
+ * startDump() writes a JSON snapshot of everything to a file every N seconds (the GUI and server
+ * enable it with -Dsmartreg.metrics=<file>, interval -Dsmartreg.metrics.interval=<seconds>).
+ */
+public final class Metrics {
+    public static final String BYTES_READ = "bytesRead";
+    public static final String BYTES_WRITTEN = "bytesWritten";
+    public static final String BACKUP_BYTES = "backupBytes";
+    public static final String ROWS_SCANNED = "rowsScanned";
+
+    private static final ConcurrentHashMap<String, Histogram> OPERATIONS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, LongAdder> COUNTERS = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService dumper;
+    // The platform MBean server takes a few hundred ms to start; callers never wait for it
+    private static final ExecutorService JMX = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "metrics-jmx");
+        t.setDaemon(true);
+        return t;
+    });
+
+    static {
+        register("SmartReg:type=Counters", new Counters());
+    }
+
+    private Metrics() {
+    }
+
+    // ---------- Recording ----------
+
+    public static Timer time(String operation) {
+        return new Timer(histogram(operation));
+    }
+
+    // For sub-microsecond calls: time against a histogram looked up once
+    public static Timer time(Histogram histogram) {
+        return new Timer(histogram);
+    }
+
+    public static void add(String counter, long delta) {
+        COUNTERS.computeIfAbsent(counter, k -> new LongAdder()).add(delta);
+    }
+
+    // Count an error of one area (and in total), record it for JFR and print it as before
+    public static void error(String area, Throwable e) {
+        add("errors", 1);
+        add("errors." + area, 1);
+        if (FlightRecorder.isInitialized()) {
+            ErrorEvent ev = new ErrorEvent();
+            if (ev.shouldCommit()) {
+                ev.area = area;
+                ev.message = String.valueOf(e);
+                ev.commit();
+            }
+        }
+        e.printStackTrace();
+    }
+
+    public static Histogram histogram(String operation) {
+        Histogram h = OPERATIONS.get(operation);
+        if (h != null) return h;
+        return OPERATIONS.computeIfAbsent(operation, name -> {
+            Histogram created = new Histogram(name);
+            register("SmartReg:type=Operation,name=" + name, created);
+            return created;
+        });
+    }
+
+    public static long counter(String name) {
+        LongAdder a = COUNTERS.get(name);
+        return a == null ? 0 : a.sum();
+    }
+
+    // Clear all histograms and counters (benchmarks, or JMX after an incident)
+    public static void reset() {
+        for (Histogram h : OPERATIONS.values()) h.reset();
+        for (LongAdder a : COUNTERS.values()) a.reset();
+    }
+
+    /** One timed call; close() records it. Rows and bytes are optional and also go to the counters. */
+    public static final class Timer implements AutoCloseable {
+        private final Histogram histogram;
+        private final long start = System.nanoTime();
+        private final OperationEvent event;
+        private long rows, bytesRead, bytesWritten;
+
+        private Timer(Histogram histogram) {
+            this.histogram = histogram;
+            this.event = FlightRecorder.isInitialized() && Jfr.OPERATION.isEnabled() ? new OperationEvent() : null;
+            if (event != null) event.begin();
+        }
+
+        // Rows looked at by the call
+        public Timer rows(long rows) {
+            this.rows += rows;
+            return this;
+        }
+
+        public Timer bytesRead(long bytes) {
+            this.bytesRead += bytes;
+            return this;
+        }
+
+        public Timer bytesWritten(long bytes) {
+            this.bytesWritten += bytes;
+            return this;
+        }
+
+        public void close() {
+            histogram.record(System.nanoTime() - start);
+            if (rows > 0) add(ROWS_SCANNED, rows);
+            if (bytesRead > 0) add(BYTES_READ, bytesRead);
+            if (bytesWritten > 0) add(BYTES_WRITTEN, bytesWritten);
+            if (event != null && event.shouldCommit()) {
+                event.operation = histogram.name;
+                event.rows = rows;
+                event.bytesRead = bytesRead;
+                event.bytesWritten = bytesWritten;
+                event.commit();
+            }
+        }
+    }
+
+    // ---------- Histogram ----------
+
+    /** JMX view of one operation; times in microseconds. */
+    public interface OperationMXBean {
+        long getCount();
+        double getMeanMicros();
+        double getP50Micros();
+        double getP90Micros();
+        double getP99Micros();
+        double getP999Micros();
+        double getMaxMicros();
+        void reset();
+    }
+
+    /**
+     * Log-linear latency histogram: values below 128 ns have their own bucket, above that each
+     * power of two is split into 64 buckets, so a reported percentile is within 1/64 of the
+     * recorded value. 3712 buckets cover the whole long range.
+     */
+    public static final class Histogram implements OperationMXBean {
+        private static final int SUB_BITS = 7, SUB = 1 << SUB_BITS, HALF = SUB / 2;
+        private static final int BUCKETS = SUB + (63 - SUB_BITS) * HALF;
+
+        final String name;
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+        Histogram(String name) {
+            this.name = name;
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) nanos = 0;
+            counts.incrementAndGet(index(nanos));
+            count.increment();
+            sum.add(nanos);
+            max.accumulate(nanos);
+        }
+
+        static int index(long v) {
+            if (v < SUB) return (int) v;
+            int shift = 63 - Long.numberOfLeadingZeros(v) - (SUB_BITS - 1);
+            return SUB + (shift - 1) * HALF + (int) (v >>> shift) - HALF;
+        }
+
+        // Middle of a bucket's value range
+        static long valueAt(int index) {
+            if (index < SUB) return index;
+            int k = index - SUB, shift = k / HALF + 1;
+            long low = (long) (k % HALF + HALF) << shift;
+            return low + (1L << shift) / 2;
+        }
+
+        // Value (ns) at or below which the fraction q of the recorded calls fall
+        public long percentile(double q) {
+            long total = 0;
+            long[] snap = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) total += snap[i] = counts.get(i);
+            if (total == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(q * total)), seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snap[i];
+                if (seen >= rank) return Math.min(valueAt(i), max.get());
+            }
+            return max.get();
+        }
+
+        public long getCount() { return count.sum(); }
+        public double getMeanMicros() { long n = count.sum(); return n == 0 ? 0 : sum.sum() / 1e3 / n; }
+        public double getP50Micros() { return percentile(0.50) / 1e3; }
+        public double getP90Micros() { return percentile(0.90) / 1e3; }
+        public double getP99Micros() { return percentile(0.99) / 1e3; }
+        public double getP999Micros() { return percentile(0.999) / 1e3; }
+        public double getMaxMicros() { return max.get() / 1e3; }
+
+        public void reset() {
+            for (int i = 0; i < BUCKETS; i++) counts.set(i, 0);
+            count.reset();
+            sum.reset();
+            max.reset();
+        }
+
+        Map<String, Object> toMap() {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("count", getCount());
+            m.put("meanUs", round(getMeanMicros()));
+            m.put("p50Us", round(getP50Micros()));
+            m.put("p90Us", round(getP90Micros()));
+            m.put("p99Us", round(getP99Micros()));
+            m.put("p999Us", round(getP999Micros()));
+            m.put("maxUs", round(getMaxMicros()));
+            return m;
+        }
+    }
+
+    /** JMX view of the counters. */
+    public interface CountersMXBean {
+        Map<String, Long> getCounters();
+        void reset();
+    }
+
+    private static final class Counters implements CountersMXBean {
+        public Map<String, Long> getCounters() {
+            Map<String, Long> m = new TreeMap<>();
+            for (Map.Entry<String, LongAdder> e : COUNTERS.entrySet()) m.put(e.getKey(), e.getValue().sum());
+            return m;
+        }
+
+        public void reset() {
+            Metrics.reset();
+        }
+    }
+
+    // ---------- Snapshot and dump ----------
+
+    // Everything as one JSON-writable map: time, operations (sorted by name), counters
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("time", Instant.now().toString());
+        Map<String, Object> ops = new TreeMap<>();
+        for (Histogram h : OPERATIONS.values()) ops.put(h.name, h.toMap());
+        m.put("operations", ops);
+        m.put("counters", new Counters().getCounters());
+        return m;
+    }
+
+    // Write snapshot() to file every periodSeconds (and once more at shutdown); replaces an earlier dump schedule
+    public static synchronized void startDump(String file, long periodSeconds) {
+        if (dumper != null) dumper.shutdownNow();
+        dumper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "smartreg-metrics");
+            t.setDaemon(true);
+            return t;
+        });
+        long period = Math.max(1, periodSeconds);
+        dumper.scheduleAtFixedRate(() -> dump(file), period, period, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(file)));
+    }
+
+    // Start the dump when -Dsmartreg.metrics names a file
+    public static void startDumpFromProperties() {
+        String file = System.getProperty("smartreg.metrics");
+        if (file == null || file.trim().isEmpty()) return;
+        startDump(file.trim(), Long.getLong("smartreg.metrics.interval", 60));
+    }
+
+    // Write the snapshot next to the target and move it into place, so readers never see half a file
+    public static boolean dump(String file) {
+        Path dest = Paths.get(file).toAbsolutePath();
+        Path tmp = dest.resolveSibling(dest.getFileName() + ".tmp");
+        try {
+            Files.write(tmp, (Json.write(snapshot()) + System.lineSeparator()).getBytes("UTF-8"));
+            Files.move(tmp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            error("metrics", e);
+            return false;
+        }
+    }
+
+    private static void register(String name, Object bean) {
+        JMX.execute(() -> {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(bean, new ObjectName(name));
+            } catch (JMException | SecurityException e) {
+                // a clash or a malformed name only costs the JMX view; the metrics still work
+            }
+        });
+    }
+
+    private static double round(double v) {
+        return Math.round(v * 100) / 100.0;
+    }
+
+    // ---------- JFR ----------
+
+    // Looked up on first use: touching JFR event types costs a few hundred ms before any recording exists
+    private static final class Jfr {
+        static final EventType OPERATION = EventType.getEventType(OperationEvent.class);
+    }
+
+    @Name("smartreg.Operation")
+    @Label("SmartReg Operation")
+    @Category("SmartReg")
+    @Description("One timed handler or GUI operation")
+    @StackTrace(false)
+    static class OperationEvent extends jdk.jfr.Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Rows")
+        long rows;
+
+        @Label("Bytes Read")
+        @DataAmount
+        long bytesRead;
+
+        @Label("Bytes Written")
+        @DataAmount
+        long bytesWritten;
+    }
+
+    @Name("smartreg.Error")
+    @Label("SmartReg Error")
+    @Category("SmartReg")
+    @Description("An error that was logged and survived")
+    static class ErrorEvent extends jdk.jfr.Event {
+        @Label("Area")
+        String area;
+
+        @Label("Message")
+        String message;
+    }
+}
@@ -0,0 +1,119 @@
+import java.util.*;
+
+/**
+ * ParticipantExport
+ * What ParticipantFileHandler.export writes: which participants (filters), which columns and
+ * whether the output is gzip-compressed.
+ *
+ * Filters combine with AND; null means no filter. Event is exact membership (as inEvent), college
+ * and attendance match ignoring case and surrounding spaces. Columns are named as in the CSV
+ * header (ID, Name, Email, Phone, Department, College, Year, Events, Attendance) and written in
+ * the order given. Setters return this so a spec reads as one expression:
+ *
+ *   new ParticipantExport().event("Coding").columns("ID", "Name", "Email").gzip(true)
+ */
+public class ParticipantExport {
+    public static final List<String> COLUMNS = Collections.unmodifiableList(Arrays.asList(
+            "ID", "Name", "Email", "Phone", "Department", "College", "Year", "Events", "Attendance"));
+
+    private String event, college, attendance;
+    private int[] columns; // indexes into COLUMNS; null = all
+    private boolean gzip;
+
+    public ParticipantExport event(String event) {
+        this.event = blankToNull(event);
+        return this;
+    }
+
+    public ParticipantExport college(String college) {
+        this.college = blankToNull(college);
+        return this;
+    }
+
+    public ParticipantExport attendance(String attendance) {
+        this.attendance = blankToNull(attendance);
+        return this;
+    }
+
+    // Columns to write, by header name (case-insensitive); none = all. Throws on an unknown name.
+    public ParticipantExport columns(String... names) {
+        if (names == null || names.length == 0) {
+            columns = null;
+            return this;
+        }
+        int[] cols = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            cols[i] = columnIndex(names[i]);
+            if (cols[i] < 0) throw new IllegalArgumentException("Unknown column: " + names[i]);
+        }
+        columns = cols;
+        return this;
+    }
+
+    public ParticipantExport gzip(boolean gzip) {
+        this.gzip = gzip;
+        return this;
+    }
+
+    public String event() {
+        return event;
+    }
+
+    public boolean gzip() {
+        return gzip;
+    }
+
+    // True if some rows may be left out
+    public boolean filtered() {
+        return event != null || college != null || attendance != null;
+    }
+
+    // True if every row is written whole, as stored: the output equals the plain CSV file
+    boolean verbatim() {
+        return !filtered() && columns == null && !gzip;
+    }
+
+    // Row filters other than the event (the caller checks membership against the row's event mask)
+    boolean matches(String[] row) {
+        if (college != null && !college.equalsIgnoreCase(column(row, 5))) return false;
+        return attendance == null || attendance.equalsIgnoreCase(column(row, 8));
+    }
+
+    String header() {
+        if (columns == null) return String.join(",", COLUMNS);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(COLUMNS.get(columns[i]));
+        }
+        return sb.toString();
+    }
+
+    // Append the projected, CSV-escaped row and a line separator
+    void appendLine(StringBuilder sb, String[] row, String newline) {
+        int n = columns == null ? COLUMNS.size() : columns.length;
+        for (int i = 0; i < n; i++) {
+            if (i > 0) sb.append(',');
+            int c = columns == null ? i : columns[i];
+            sb.append(ParticipantFileHandler.escape(c < row.length ? row[c] : ""));
+        }
+        sb.append(newline);
+    }
+
+    public static int columnIndex(String name) {
+        for (int i = 0; i < COLUMNS.size(); i++) if (COLUMNS.get(i).equalsIgnoreCase(trim(name))) return i;
+        return -1;
+    }
+
+    private static String column(String[] row, int c) {
+        return c < row.length ? trim(row[c]) : "";
+    }
+
+    private static String trim(String s) {
+        return s == null ? "" : s.trim();
+    }
+
+    private static String blankToNull(String s) {
+        return s == null || s.trim().isEmpty() ? null : s.trim();
+    }
+}
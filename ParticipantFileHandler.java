@@ -1,319 +1,1618 @@
 import java.io.*;
-import java.text.SimpleDateFormat;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Supplier;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * ParticipantFileHandler
  * CSV schema:
  * ID,Name,Email,Phone,Department,College,Year,Events,Attendance
  *
- * Provides: save, load, search, edit, delete, markAttendance, updateParticipantsForEvent, export
+ * Provides: save, bulk import, load, search, edit, delete, markAttendance, updateParticipantsForEvent,
+ * streaming export (filters, column projection, gzip; see ParticipantExport)
+ *
+ * The CSV is parsed once at construction into a resident ParticipantStore (held column by column,
+ * about a seventh of the heap of String[] rows); reads and point updates are served from memory
+ * and changes are written back from memory.
+ *
+ * In journaled mode mutations are appended to a ParticipantJournal instead of rewriting the CSV;
+ * the CSV becomes a snapshot that is compacted in the background once the log grows large.
+ * With binary snapshots enabled a BinarySnapshot image is kept next to the CSV and used for
+ * startup whenever it still matches the CSV on disk.
+ *
+ * With a persistent EventDictionary (the one EventFileHandler loads) the Events column is stored
+ * on disk as stable event IDs (header "EventIds", journal records "I,..."), so renaming an event
+ * only rewrites events.csv. In memory rows always carry event names. A file still holding names
+ * is converted on open; a file holding IDs is refused without the persistent dictionary, since
+ * its events could not be told apart.
+ *
+ * The handler is thread-safe: reads share a read lock, and every mutation runs its
+ * read-modify-write and the write to disk under the write lock. With setShared(true), several
+ * processes may use the same files: each mutation also holds an exclusive FileChannel lock on
+ * "<csv>.lock" and first catches up with what the other processes wrote (journal tail, or a full
+ * reload after they rewrote the CSV), so IDs stay unique and no update is lost.
+ *
+ * openReadOnly() serves lookups straight from a memory-mapped CSV (MappedParticipantReader) for
+ * lookup-only stations: nothing is loaded up front and every mutation fails (returns false/null).
+ * The writers' journal is replayed over the mapping, and reads look for new journal records, or a
+ * rewritten CSV to map again, at most every REFRESH_MS.
  */
 public class ParticipantFileHandler {
+    // Import sheet schema: Name,Email,Phone,Department,College,Year,Events (events separated by ; or |)
+    public static final int IMPORT_COLUMNS = 7;
+    static final String HEADER = "ID,Name,Email,Phone,Department,College,Year,Events,Attendance";
+    static final String HEADER_IDS = "ID,Name,Email,Phone,Department,College,Year,EventIds,Attendance";
+    private static final int IMPORT_BATCH = 5000;
+    private static final int EXPORT_BATCH = 1024;
+    private static final Metrics.Histogram FIND_BY_ID = Metrics.histogram("participants.findById"); // hot path: no name lookup
+
     private final String filePath;
-    private final String backupDir = "backups";
-    private int counter = 1000;
+    private final String backupDir;
+    private final BackupManager backups;
+    private static final int FIRST_ID = 1000;
+    private static final long REFRESH_MS = 100; // read-only mode: how stale a read may be
+    private final AtomicInteger counter = new AtomicInteger(FIRST_ID);
+    private final ParticipantStore store = new ParticipantStore();
+    private volatile SearchIndex searchIndex; // built on first search, so startup does not pay for it
+    private final Object searchIndexLock = new Object();
+    private final File binFile;
+    private final ContactIndex emailIndex = new ContactIndex();
+    private final ContactIndex phoneIndex = new ContactIndex();
+    private final EventDictionary events;  // interns Events column names; shared with EventFileHandler
+    private final boolean eventIds;         // the Events column is stored as event IDs on disk
+    private boolean convertOnOpen;          // the file on disk is still in the other Events format
+    private ParticipantStats stats;
+    private volatile DuplicatePolicy duplicatePolicy = DuplicatePolicy.WARN;
+    private volatile int modCount;
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private FileMutex fileMutex;      // non-null once shared
+    private String diskState;         // CSV/journal state this process last saw or wrote (shared and read-only mode)
+    private long journalPos;          // bytes of the live journal already applied (shared and read-only mode)
+    private final ParticipantJournal journal;
+    private volatile MappedParticipantReader mapped; // read-only mode only
+    private final ParticipantJournal readLog;        // read-only mode: the writers' journal, only ever replayed
+    private volatile long refreshedAt;               // read-only mode: System.nanoTime() of the last look
+    private int statsAt = -1;                        // read-only mode: modCount the analytics were counted at
 
     public ParticipantFileHandler() {
         this("participants.csv");
     }
 
     public ParticipantFileHandler(String filePath) {
+        this(filePath, false);
+    }
+
+    public ParticipantFileHandler(String filePath, boolean journaled) {
+        this(filePath, journaled, false);
+    }
+
+    public ParticipantFileHandler(String filePath, boolean journaled, boolean binarySnapshot) {
+        this(filePath, journaled, binarySnapshot, new EventDictionary());
+    }
+
+    // events: the EventFileHandler's dictionary, so event IDs agree between the two handlers
+    public ParticipantFileHandler(String filePath, boolean journaled, boolean binarySnapshot, EventDictionary events) {
         this.filePath = filePath;
+        this.events = events;
+        this.eventIds = events.isPersistent();
+        this.stats = new ParticipantStats(events);
+        this.journal = journaled ? new ParticipantJournal(filePath) : null;
+        this.binFile = binarySnapshot ? new File(filePath + ".bin") : null;
+        this.mapped = null;
+        this.readLog = null;
+        // backups/ lives next to the CSV (the working directory for the default participants.csv)
+        this.backupDir = new File(new File(filePath).getAbsoluteFile().getParentFile(), "backups").getPath();
+        this.backups = new BackupManager(filePath, backupDir, "participants_backup_");
         ensureFileAndBackup();
-        initCounter();
+        loadStore();
+        if (journal != null) journal.replay(this::applyRecord);
+        if (convertOnOpen) convertFile();
+    }
+
+    private ParticipantFileHandler(String filePath, EventDictionary events) throws IOException {
+        this.filePath = filePath;
+        this.journal = null;
+        this.readLog = new ParticipantJournal(filePath);
+        this.binFile = null;
+        this.backupDir = null;
+        this.backups = null;
+        this.events = events;
+        this.eventIds = false;
+        this.stats = new ParticipantStats(events);
+        remap();
+        refreshedAt = System.nanoTime();
+    }
+
+    /** Read-only handler over a memory-mapped CSV; rows are decoded only when they are looked at. */
+    public static ParticipantFileHandler openReadOnly(String filePath) throws IOException {
+        return openReadOnly(filePath, new EventDictionary());
+    }
+
+    // events resolves an EventIds column to names (EventFileHandler.dictionary())
+    public static ParticipantFileHandler openReadOnly(String filePath, EventDictionary events) throws IOException {
+        return new ParticipantFileHandler(filePath, events);
+    }
+
+    // Read-only mode: apply journal records the writers appended since the last look, or map the
+    // CSV again if they rewrote it or rotated the journal. Checked at most every REFRESH_MS
+    private void refreshMapped() {
+        long now = System.nanoTime();
+        if (now - refreshedAt < REFRESH_MS * 1_000_000L) return;
+        lock.writeLock().lock();
+        try {
+            if (now - refreshedAt < REFRESH_MS * 1_000_000L) return; // another reader just looked
+            if (!diskState().equals(diskState)) {
+                Metrics.add("participants.remaps", 1);
+                remap();
+            } else if (readLog.position() > journalPos) {
+                MappedParticipantReader m = mapped;
+                journalPos = readLog.replayFrom(journalPos, rec -> overlayRecord(m, rec));
+                m.commit();
+                modCount++;
+            }
+            refreshedAt = System.nanoTime();
+        } catch (IOException e) {
+            Metrics.error("participants", e); // keep serving the old mapping; the next look tries again
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Map the CSV and replay both journals over it; if the writers changed the files meanwhile
+    // (e.g. a compaction), start again, a bounded number of times
+    private void remap() throws IOException {
+        for (int attempt = 0; ; attempt++) {
+            journalPos = 0;
+            String before = diskState();
+            MappedParticipantReader fresh = new MappedParticipantReader(filePath, events);
+            readLog.replay(rec -> overlayRecord(fresh, rec));
+            fresh.commit();
+            String after = diskState();
+            if (!after.equals(before) && attempt < 2) {
+                fresh.close();
+                continue;
+            }
+            MappedParticipantReader old = mapped;
+            mapped = fresh;
+            diskState = after;
+            journalPos = readLog.end();
+            modCount++;
+            if (old != null) old.close(); // lists handed out keep working: mappings stay valid until collected
+            return;
+        }
+    }
+
+    // applyRecord for the read-only overlay
+    private void overlayRecord(MappedParticipantReader m, List<String> p) {
+        boolean upsert = "U".equals(p.get(0)) || "I".equals(p.get(0));
+        if (p.size() != (upsert ? 10 : 2)) {
+            Metrics.add("journal.skippedRecords", 1);
+            return;
+        }
+        if (upsert) {
+            String[] row = toRow(p, 1);
+            if ("I".equals(p.get(0))) row[7] = events.format(events.parseIds(row[7]));
+            m.put(row);
+        } else if ("D".equals(p.get(0))) {
+            m.remove(p.get(1));
+        }
+    }
+
+    public boolean isReadOnly() {
+        return mapped != null;
     }
 
     private void ensureFileAndBackup() {
         File f = new File(filePath);
         if (!f.exists()) {
             try (PrintWriter pw = new PrintWriter(new FileWriter(filePath, false))) {
-                pw.println("ID,Name,Email,Phone,Department,College,Year,Events,Attendance");
+                pw.println(eventIds ? HEADER_IDS : HEADER);
             } catch (IOException e) {
-                e.printStackTrace();
+                Metrics.error("participants", e);
             }
         }
-        File bd = new File(backupDir);
-        if (!bd.exists()) bd.mkdirs();
     }
 
-    private void initCounter() {
+    // Parse the CSV once into the store and advance the ID counter past the highest P-number
+    private void loadStore() {
         File f = new File(filePath);
         if (!f.exists()) return;
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String line;
-            int max = counter;
-            br.readLine(); // skip header
-            while ((line = br.readLine()) != null) {
-                String[] p = splitCSV(line);
-                if (p.length > 0 && p[0].startsWith("P")) {
-                    try {
-                        int n = Integer.parseInt(p[0].substring(1));
-                        if (n >= max) max = n + 1;
-                    } catch (NumberFormatException ignored) {}
+        try (Metrics.Timer t = Metrics.time("participants.load")) {
+            if (loadBinary(f)) {
+                t.bytesRead(binFile.length()).rows(store.size());
+                return;
+            }
+            try (CsvTokenizer csv = new CsvTokenizer(new FileReader(f))) {
+                List<String> fields = new ArrayList<>(9);
+                csv.next(fields);
+                boolean ids = fields.size() > 7 && "EventIds".equals(fields.get(7));
+                if (ids && !eventIds) throw noDictionary();
+                convertOnOpen = ids != eventIds;
+                while (csv.next(fields)) {
+                    String[] p = toRow(fields, 0);
+                    putDiskRow(p, ids);
+                    trackId(p[0]);
                 }
+            } catch (IOException e) {
+                Metrics.error("participants", e);
+            }
+            t.bytesRead(f.length()).rows(store.size());
+        }
+    }
+
+    // Fast path: if the binary image was written from this exact CSV, fill the store, the contact
+    // indexes and the analytics counters straight from its columns, without building a row
+    private boolean loadBinary(File csv) {
+        if (binFile == null || !binFile.exists()) return false;
+        try {
+            BinarySnapshot snap = BinarySnapshot.read(binFile);
+            if (!snap.matches(csv)) return false;
+            if (snap.eventIds && !eventIds) return false; // the CSV path refuses the file
+            // each distinct Events value is resolved once, as putDiskRow would for every row holding it
+            String[] evValues = snap.dicts[3];
+            String[] evText = new String[evValues.length];
+            BitSet[] evMask = new BitSet[evValues.length];
+            for (int c = 0; c < evValues.length; c++) {
+                evMask[c] = snap.eventIds ? events.parseIds(evValues[c]) : events.maskOf(evValues[c]);
+                evText[c] = snap.eventIds ? events.format(evMask[c]) : evValues[c];
             }
-            counter = max;
+            store.load(snap, evText, evMask);
+            // contact tables hold owners in the snapshot's ID numbering; only irregular IDs differ from the store's
+            IntUnaryOperator owner = snap.otherIds.length == 0 ? k -> k
+                    : k -> k >= 0 ? k : store.keyOf(snap.otherIds[-k - 1]);
+            emailIndex.load(snap.emails.hashes, snap.emails.owners, snap.emails.count, owner);
+            phoneIndex.load(snap.phones.hashes, snap.phones.owners, snap.phones.count, owner);
+            int present = snap.present.cardinality();
+            for (String att : snap.otherAttendance.values()) if ("Present".equalsIgnoreCase(att)) present++;
+            List<Map<String, Integer>> byValue = new ArrayList<>();
+            for (int k = 0; k < 3; k++) {
+                Map<String, Integer> m = new HashMap<>();
+                for (int c = 0; c < snap.dicts[k].length; c++) {
+                    if (snap.valueCounts[k][c] > 0) m.merge(snap.dicts[k][c], snap.valueCounts[k][c], Integer::sum);
+                }
+                byValue.add(m);
+            }
+            Map<BitSet, Integer> byMask = new HashMap<>();
+            for (int c = 0; c < evMask.length; c++) {
+                if (snap.valueCounts[3][c] > 0) byMask.merge(evMask[c], snap.valueCounts[3][c], Integer::sum);
+            }
+            stats.addCounts(snap.size, present, byValue.get(0), byValue.get(1), byValue.get(2), byMask);
+            modCount++;
+            convertOnOpen = snap.eventIds != eventIds;
+            counter.accumulateAndGet(snap.nextId, Math::max);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            Metrics.error("participants", e); // unreadable image: fall back to the CSV, and rewrite it on close
+            binFile.delete();
+            store.clear();
+            emailIndex.clear();
+            phoneIndex.clear();
+            stats.clear();
+            return false;
+        }
+    }
+
+    // Without events.csv every stored ID would read as a removed event, and the first write (or the
+    // conversion on open) would store the rows without them: refuse the file instead
+    private IllegalStateException noDictionary() {
+        return new IllegalStateException(filePath + " stores event IDs: open it with the events.csv dictionary"
+                + " (EventFileHandler.dictionary())");
+    }
+
+    // Write the binary image of rows (disk form), stamped with the CSV they correspond to
+    private boolean writeBinary(List<String[]> rows, int nextId) {
+        try {
+            BinarySnapshot.write(binFile, rows, nextId, eventIds, new File(filePath));
+            return true;
         } catch (IOException e) {
-            e.printStackTrace();
+            Metrics.error("participants", e);
+            return false;
         }
     }
 
-    public String generateID() {
-        return "P" + (counter++);
-    }
-
-    private void backupFile() {
-        File src = new File(filePath);
-        if (!src.exists()) return;
-        String ts = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-        File dest = new File(backupDir + File.separator + "participants_backup_" + ts + ".csv");
-        try (BufferedReader br = new BufferedReader(new FileReader(src));
-             PrintWriter pw = new PrintWriter(new FileWriter(dest))) {
-            String line;
-            while ((line = br.readLine()) != null) pw.println(line);
+    // Store a row read from disk; ids: its Events column holds event IDs (removed events drop out)
+    private void putDiskRow(String[] row, boolean ids) {
+        if (!ids) {
+            putRow(row);
+            return;
+        }
+        BitSet mask = events.parseIds(row[7]);
+        row[7] = events.format(mask);
+        putRow(row, mask);
+    }
+
+    // Row as stored on disk: in event ID mode the Events column becomes "3 | 7". New rows pass
+    // through here before putRow, so this is where their new events are interned (and saved)
+    private String[] diskRow(String[] row) {
+        if (!eventIds) return row;
+        String[] r = row.clone();
+        r[7] = EventDictionary.formatIds(events.maskOf(row[7]));
+        return r;
+    }
+
+    private List<String[]> diskRows(List<String[]> rows) {
+        if (!eventIds) return new ArrayList<>(rows);
+        List<String[]> out = new ArrayList<>(rows.size());
+        for (String[] r : rows) out.add(diskRow(r));
+        return out;
+    }
+
+    private String diskHeader() {
+        return eventIds ? HEADER_IDS : HEADER;
+    }
+
+    // Rewrite the file in this handler's Events format (e.g. names -> IDs on first open with EventFileHandler)
+    private void convertFile() {
+        try {
+            if (journal != null) compact();
+            else writeAll(store.rows());
         } catch (IOException e) {
-            e.printStackTrace();
+            Metrics.error("participants", e);
         }
     }
 
-    // Save a new participant (appends)
-    public void saveParticipant(String id, String name, String email, String phone,
-                                String dept, String college, String year, String events) {
-        backupFile();
-        try (PrintWriter pw = new PrintWriter(new FileWriter(filePath, true))) {
-            pw.println(escape(id) + "," + escape(name) + "," + escape(email) + "," + escape(phone) + ","
-                    + escape(dept) + "," + escape(college) + "," + escape(year) + "," + escape(events) + ",Absent");
+    // Every store mutation goes through these two so the secondary indexes stay in step
+    private void putRow(String[] row) {
+        putRow(row, events.maskOf(row[7]));
+    }
+
+    // mask must be the interned form of row[7]
+    private void putRow(String[] row, BitSet mask) {
+        BitSet oldMask = store.mask(row[0]);
+        String[] old = store.put(row, mask);
+        if (old != null) {
+            unindexContacts(old, store.keyOf(row[0]));
+            stats.remove(old, oldMask);
+        }
+        indexContacts(row, store.keyOf(row[0]));
+        stats.add(row, mask);
+        if (searchIndex != null) searchIndex.put(store.keyOf(row[0]), row);
+        modCount++;
+    }
+
+    private String[] removeRow(String id) {
+        BitSet oldMask = store.mask(id);
+        int key = store.keyOf(id);
+        String[] old = store.remove(id);
+        if (old != null) {
+            unindexContacts(old, key);
+            stats.remove(old, oldMask);
+            if (searchIndex != null) searchIndex.remove(key);
+            modCount++;
+        }
+        return old;
+    }
+
+    private void indexContacts(String[] row, int key) {
+        emailIndex.add(normalizeEmail(row[2]), key);
+        phoneIndex.add(normalizePhone(row[3]), key);
+    }
+
+    private void unindexContacts(String[] row, int key) {
+        emailIndex.remove(normalizeEmail(row[2]), key);
+        phoneIndex.remove(normalizePhone(row[3]), key);
+    }
+
+    // Bumped by every row change; lets callers tell whether an earlier search result is still current
+    public int modCount() {
+        return modCount;
+    }
+
+    // The search index, built from the store if a reload (or nothing yet) dropped it. Call under
+    // the read or write lock and keep the result in a local: a catch-up may drop the field again
+    private SearchIndex searchIndex() {
+        SearchIndex idx = searchIndex;
+        if (idx != null) return idx;
+        // writers are locked out; of the readers that got here, one builds and the others wait for it
+        synchronized (searchIndexLock) {
+            idx = searchIndex;
+            if (idx == null) {
+                idx = new SearchIndex(store::rowOf, store::matcher);
+                for (int pos = 0; pos < store.size(); pos++) idx.put(store.keyAt(pos), store.rowAt(pos));
+                searchIndex = idx;
+            }
+            return idx;
+        }
+    }
+
+    // Next ID generateID() would hand out, without consuming it
+    public int peekNextId() {
+        return counter.get();
+    }
+
+    // Keep the ID counter past the highest P-number seen
+    private void trackId(String id) {
+        int n = idNumber(id);
+        if (n >= 0) counter.accumulateAndGet(n + 1, Math::max);
+    }
+
+    // n for an ID "P<n>", else -1
+    private static int idNumber(String id) {
+        if (!id.startsWith("P")) return -1;
+        try {
+            return Integer.parseInt(id.substring(1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Add the rows of a participants CSV to rows exactly as stored (the Events column untouched,
+     * names or IDs) and return the ID a handler opening the file would hand out next. Only reads
+     * the file (BinarySnapshot import-csv).
+     */
+    static int readDiskRows(File csv, List<String[]> rows) throws IOException {
+        int next = FIRST_ID;
+        try (CsvTokenizer t = new CsvTokenizer(new FileReader(csv))) {
+            List<String> fields = new ArrayList<>(9);
+            t.next(fields); // header
+            while (t.next(fields)) {
+                String[] row = toRow(fields, 0);
+                rows.add(row);
+                next = Math.max(next, idNumber(row[0]) + 1);
+            }
+        }
+        return next;
+    }
+
+    // ---------- Locking ----------
+
+    /**
+     * Coordinate with other processes using the same files (e.g. several check-in desks on a shared
+     * folder). Call before the handler is used from several threads.
+     */
+    public void setShared(boolean shared) {
+        if (mapped != null || shared == (fileMutex != null)) return;
+        lock.writeLock().lock();
+        try {
+            if (shared) {
+                fileMutex = new FileMutex(filePath + ".lock");
+                events.shareWith(this::writeLocked); // new, renamed and removed events under the same lock
+                // the constructor read the files without the lock, possibly mid-way through another
+                // process's compaction: reload under it
+                diskState = null;
+                journalPos = 0;
+                sync();
+            } else {
+                events.shareWith(null);
+                fileMutex.close();
+                fileMutex = null;
+            }
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
-    // Overload for when events provided as list
-    public void saveParticipant(String name, String email, String phone,
-                                String dept, String college, String year, List<String> eventsList) {
-        String id = generateID();
-        String events = String.join(" | ", eventsList);
-        saveParticipant(id, name, email, phone, dept, college, year, events);
+    public boolean isShared() {
+        return fileMutex != null;
     }
 
-    // Load all participants as list of string arrays (matching table columns)
-    public List<String[]> loadParticipants() {
-        List<String[]> out = new ArrayList<>();
-        File f = new File(filePath);
-        if (!f.exists()) return out;
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String line;
-            boolean first = true;
-            while ((line = br.readLine()) != null) {
-                if (first) { first = false; continue; } // skip header
-                String[] parts = splitCSV(line);
-                // ensure 9 columns
-                if (parts.length < 9) parts = Arrays.copyOf(parts, 9);
-                out.add(parts);
+    // Journal size that triggers compaction (journaled mode only)
+    public void setCompactThreshold(long bytes) {
+        if (journal != null) journal.setCompactThreshold(bytes);
+    }
+
+    private <T> T readLocked(Supplier<T> op) {
+        lock.readLock().lock();
+        try {
+            return op.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Mutations: across processes first (then catch up with them), then within this one
+    private <T> T writeLocked(Supplier<T> op) {
+        FileMutex mutex = fileMutex;
+        if (mutex == null || mutex.isHeldByCurrentThread()) {
+            lock.writeLock().lock();
+            try {
+                T result = op.get();
+                compactIfDue();
+                return result;
+            } finally {
+                lock.writeLock().unlock();
             }
+        }
+        mutex.lock();
+        try {
+            lock.writeLock().lock();
+            try {
+                catchUp();
+                T result = op.get();
+                compactIfDue();
+                diskState = diskState();
+                if (journal != null) journalPos = journal.end();
+                return result;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        } finally {
+            mutex.unlock();
+        }
+    }
+
+    /** Apply what other processes have written since this one last looked (shared mode; no-op otherwise). */
+    public void sync() {
+        if (fileMutex != null) writeLocked(() -> null);
+    }
+
+    // Shared mode, under both locks: apply the journal tail other processes appended, or reload
+    // everything when the CSV was rewritten or the journal rotated by someone else
+    private void catchUp() {
+        // events first, so rows refer to IDs this process knows; new events leave existing rows as they are
+        boolean eventsChanged = events.reload();
+        String now = diskState();
+        if (now.equals(diskState) && !eventsChanged) {
+            if (journal != null && journal.position() > journalPos) journal.replayFrom(journalPos, this::applyRecord);
+            return;
+        }
+        Metrics.add("participants.reloads", 1); // another process rewrote the files
+        if (journal != null) journal.reopen();
+        store.clear();
+        emailIndex.clear();
+        phoneIndex.clear();
+        stats.clear();
+        searchIndex = null;
+        modCount++;
+        loadStore();
+        if (journal != null) journal.replay(this::applyRecord);
+    }
+
+    // CSV identity/size/mtime plus live journal identity and rotated-log presence; the journal
+    // length is tracked separately since appends do not invalidate what was already applied
+    private String diskState() {
+        StringBuilder sb = new StringBuilder();
+        try {
+            BasicFileAttributes a = Files.readAttributes(Paths.get(filePath), BasicFileAttributes.class);
+            sb.append(a.fileKey()).append('/').append(a.size()).append('/').append(a.lastModifiedTime().toMillis());
         } catch (IOException e) {
-            e.printStackTrace();
+            sb.append("missing");
         }
-        return out;
+        ParticipantJournal log = journal != null ? journal : readLog;
+        if (log != null) {
+            sb.append('|').append(log.fileKey()).append('|').append(log.hasRotatedLog());
+            if (log.position() < journalPos) sb.append("|truncated");
+        }
+        return sb.toString();
     }
 
-    // Search by keyword in ID, name, email, phone, dept, college, year, events
-    public List<String[]> search(String keyword) {
-        List<String[]> res = new ArrayList<>();
-        if (keyword == null) return res;
-        String kw = keyword.toLowerCase();
-        for (String[] row : loadParticipants()) {
-            for (String field : row) {
-                if (field != null && field.toLowerCase().contains(kw)) {
-                    res.add(row);
-                    break;
+    // Journal records: "U,<9 row fields>" / "I,<9 row fields, Events as IDs>" upsert a row, "D,<id>" deletes one.
+    // A record with any other field count is damaged and skipped rather than applied with blanks.
+    private void applyRecord(List<String> p) {
+        boolean upsert = "U".equals(p.get(0)) || "I".equals(p.get(0));
+        if (p.size() != (upsert ? 10 : 2)) {
+            Metrics.add("journal.skippedRecords", 1);
+            return;
+        }
+        if (upsert) {
+            String[] row = toRow(p, 1);
+            putDiskRow(row, "I".equals(p.get(0)));
+            trackId(row[0]);
+        } else if ("D".equals(p.get(0))) {
+            removeRow(p.get(1));
+        }
+    }
+
+    // Complete 9-column row from parsed fields starting at offset
+    static String[] toRow(List<String> fields, int offset) {
+        String[] row = new String[9];
+        for (int i = 0; i < 9; i++) row[i] = offset + i < fields.size() ? fields.get(offset + i) : "";
+        return row;
+    }
+
+    private String upsertRecord(String[] row) {
+        return (eventIds ? "I," : "U,") + toLine(diskRow(row));
+    }
+
+    private static String deleteRecord(String id) {
+        return "D," + escape(id);
+    }
+
+    // Atomic; in shared mode only unique across processes when called from inside a mutation
+    public String generateID() {
+        return "P" + counter.getAndIncrement();
+    }
+
+    // Backup policy (coalescing window, retention) is configured on the manager; null when read-only
+    public BackupManager getBackupManager() {
+        return backups;
+    }
+
+    // replacing: the CSV is about to be swapped out by an atomic move, so a hard link is a safe snapshot
+    private void backupFile(boolean replacing) {
+        backups.backup(replacing);
+    }
+
+    // Save a new participant (appends). Returns false if the write failed.
+    public boolean saveParticipant(String id, String name, String email, String phone,
+                                String dept, String college, String year, String events) {
+        if (mapped != null) return false;
+        String[] row = normalize(new String[]{id, name, email, phone, dept, college, year, events, "Absent"});
+        try (Metrics.Timer t = Metrics.time("participants.save")) {
+            return writeLocked(() -> {
+                if (journal != null) {
+                    if (!persist(Collections.singletonList(upsertRecord(row)))) return false;
+                } else {
+                    backupFile(false);
+                    String line = toLine(diskRow(row));
+                    try (PrintWriter pw = new PrintWriter(new FileWriter(filePath, true))) {
+                        pw.println(line);
+                    } catch (IOException e) {
+                        Metrics.error("participants", e);
+                        return false;
+                    }
+                    t.bytesWritten(line.length() + 1);
+                }
+                putRow(row);
+                return true;
+            });
+        }
+    }
+
+    // Overload for when events provided as list. Returns the stored row, or null if the write failed.
+    public String[] saveParticipant(String name, String email, String phone,
+                                    String dept, String college, String year, List<String> eventsList) {
+        String events = String.join(" | ", eventsList);
+        // allocate the ID inside the mutation so it is unique across processes too
+        return writeLocked(() -> {
+            String id = generateID();
+            return saveParticipant(id, name, email, phone, dept, college, year, events) ? store.get(id) : null;
+        });
+    }
+
+    /** Progress callback for bulk imports; total is -1 when streaming from a reader. */
+    public interface ImportListener {
+        void progress(int done, int total);
+
+        // Polled between batches; rows written before cancellation are kept
+        default boolean isCancelled() { return false; }
+    }
+
+    /** Outcome of a bulk import: rows added or merged, one message per rejected row, duplicate warnings. */
+    public static class ImportResult {
+        public int added;
+        public int merged;
+        public boolean cancelled;
+        public final List<String> errors = new ArrayList<>();
+        public final List<String> warnings = new ArrayList<>();
+    }
+
+    /**
+     * Bulk save rows in import sheet order (see IMPORT_COLUMNS). Rows are validated, checked for
+     * duplicates under the current DuplicatePolicy, given IDs and written with a single buffered
+     * write preceded by a single backup.
+     */
+    public ImportResult saveParticipants(List<String[]> rows, ImportListener listener) {
+        ImportResult res = new ImportResult();
+        if (readOnlyImport(res)) return res;
+        return writeLocked(() -> {
+            if (journal == null) backupFile(false);
+            appendBatch(rows, 0, rows.size(), res, listener);
+            return res;
+        });
+    }
+
+    // Streaming variant: reads an import sheet (with header) and writes it in batches of IMPORT_BATCH rows
+    public ImportResult importCSV(Reader in, ImportListener listener) throws IOException {
+        ImportResult res = new ImportResult();
+        if (readOnlyImport(res)) return res;
+        CsvTokenizer csv = new CsvTokenizer(in);
+        if (csv.next() == null) return res; // skip header
+        beginImport(res);
+        List<String[]> batch = new ArrayList<>();
+        int done = 0;
+        String[] record;
+        while ((record = csv.next()) != null) {
+            batch.add(record);
+            if (batch.size() == IMPORT_BATCH) {
+                appendBatch(batch, done, -1, res, listener);
+                done += batch.size();
+                batch.clear();
+                if (listener != null && listener.isCancelled()) {
+                    res.cancelled = true;
+                    return res;
                 }
             }
         }
+        appendBatch(batch, done, -1, res, listener);
         return res;
     }
 
-    // Edit participant by ID (replace fields). attendanceParam may be null to keep existing
-    public boolean edit(String id, String name, String email, String phone,
-                        String dept, String college, String year, String events, String attendanceParam) {
-        File f = new File(filePath);
-        if (!f.exists()) return false;
-        List<String[]> rows = new ArrayList<>();
-        boolean found = false;
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String line; br.readLine(); // skip header
-            while ((line = br.readLine()) != null) {
-                String[] p = splitCSV(line);
-                if (p.length > 0 && p[0].equals(id)) {
-                    String att = attendanceParam != null ? attendanceParam : (p.length >= 9 ? p[8] : "Absent");
-                    String[] newRow = new String[]{id, name, email, phone, dept, college, year, events, att};
-                    rows.add(newRow);
-                    found = true;
-                } else {
-                    rows.add(p);
+    // Read-only check and the one backup ahead of a bulk import; false if nothing may be written.
+    // The backup is taken under the write lock so it cannot copy a half-rewritten CSV
+    boolean beginImport(ImportResult res) {
+        if (readOnlyImport(res)) return false;
+        if (journal == null) writeLocked(() -> {
+            backupFile(false);
+            return null;
+        });
+        return true;
+    }
+
+    private boolean readOnlyImport(ImportResult res) {
+        if (mapped == null) return false;
+        res.errors.add("Participants are open read-only");
+        return true;
+    }
+
+    /** An import sheet row validated and normalized ahead of the write lock; row is null when rejected. */
+    static final class PreparedRow {
+        final String[] row;          // table column order, ID not yet assigned
+        final String error;
+        final String email, phone;   // normalized contacts for the duplicate checks
+
+        private PreparedRow(String[] row, String error) {
+            this.row = row;
+            this.error = error;
+            this.email = row == null ? null : normalizeEmail(row[2]);
+            this.phone = row == null ? null : normalizePhone(row[3]);
+        }
+    }
+
+    // Trim, join the events and validate one sheet row; touches no handler state, so any thread may call it
+    static PreparedRow prepareImportRow(String[] p) {
+        String error = validateImportRow(p);
+        if (error != null) return new PreparedRow(null, error);
+        return new PreparedRow(new String[]{null, p[0].trim(), p[1].trim(), p[2].trim(), p[3].trim(),
+                p[4].trim(), p[5].trim(), joinImportEvents(p[6]), "Absent"}, null);
+    }
+
+    // Validate, apply the duplicate policy, assign IDs and persist one batch; offset is the number of sheet rows before it
+    private void appendBatch(List<String[]> batch, int offset, int total, ImportResult res, ImportListener listener) {
+        List<PreparedRow> prepared = new ArrayList<>(batch.size());
+        for (String[] p : batch) prepared.add(prepareImportRow(p));
+        appendPrepared(prepared, offset, total, res, listener);
+    }
+
+    // appendBatch for rows already prepared (ImportPipeline prepares them on worker threads)
+    void appendPrepared(List<PreparedRow> batch, int offset, int total, ImportResult res, ImportListener listener) {
+        if (batch.isEmpty()) return;
+        try (Metrics.Timer t = Metrics.time("participants.importBatch")) {
+            writeLocked(() -> {
+                appendBatchLocked(batch, offset, res);
+                return null;
+            });
+            t.rows(batch.size());
+        }
+        if (listener != null) listener.progress(offset + batch.size(), total);
+    }
+
+    private void appendBatchLocked(List<PreparedRow> batch, int offset, ImportResult res) {
+        List<String[]> accepted = new ArrayList<>(batch.size());
+        Map<String, String[]> merged = new LinkedHashMap<>();  // stored participants that absorbed rows of this batch
+        Map<String, Integer> batchKeys = new HashMap<>();       // "e:"/"p:" + normalized contact -> index in accepted
+        int mergedRows = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            PreparedRow p = batch.get(i);
+            String label = "Row " + (offset + i + 1);
+            if (p.error != null) {
+                res.errors.add(label + ": " + p.error);
+                continue;
+            }
+            String[] row = p.row;
+            String emailKey = "e:" + p.email, phoneKey = "p:" + p.phone;
+            Duplicate dup = duplicateOf(p.email, p.phone);
+            Integer inBatch = batchKeys.get(emailKey);
+            if (inBatch == null) inBatch = batchKeys.get(phoneKey);
+            if (dup != null || inBatch != null) {
+                String other = dup != null ? dup.id : accepted.get(inBatch)[0];
+                String field = dup != null ? dup.field : batchKeys.get(emailKey) != null ? "email" : "phone";
+                if (duplicatePolicy == DuplicatePolicy.REJECT) {
+                    res.errors.add(label + ": duplicate " + field + " of " + other);
+                    continue;
+                }
+                if (duplicatePolicy == DuplicatePolicy.MERGE) {
+                    if (dup != null) {
+                        String[] base = merged.containsKey(dup.id) ? merged.get(dup.id) : store.get(dup.id).clone();
+                        base[7] = unionEvents(base[7], row[7]);
+                        merged.put(dup.id, base);
+                    } else {
+                        String[] base = accepted.get(inBatch);
+                        base[7] = unionEvents(base[7], row[7]);
+                    }
+                    mergedRows++;
+                    continue;
                 }
+                res.warnings.add(label + ": same " + field + " as " + other);
             }
+            row[0] = generateID();
+            if (!emailKey.equals("e:")) batchKeys.putIfAbsent(emailKey, accepted.size());
+            if (!phoneKey.equals("p:")) batchKeys.putIfAbsent(phoneKey, accepted.size());
+            accepted.add(row);
+        }
+        List<String> lines = new ArrayList<>(accepted.size() + merged.size());
+        for (String[] row : accepted) lines.add(journal != null ? upsertRecord(row) : toLine(diskRow(row)));
+        if (journal != null) for (String[] row : merged.values()) lines.add(upsertRecord(row));
+        if (!lines.isEmpty() && !appendLines(lines)) {
+            res.errors.add("Rows " + (offset + 1) + "-" + (offset + batch.size()) + ": write failed");
+        } else {
+            for (String[] row : accepted) putRow(row);
+            for (String[] row : merged.values()) putRow(row);
+            res.added += accepted.size();
+            // merges change existing CSV rows, which an append cannot express
+            if (journal == null && !merged.isEmpty() && !writeAll(store.rows())) {
+                res.errors.add("Rows " + (offset + 1) + "-" + (offset + batch.size()) + ": merge write failed");
+            } else {
+                res.merged += mergedRows;
+            }
+        }
+    }
+
+    private static String validateImportRow(String[] p) {
+        if (p.length < IMPORT_COLUMNS) return "expected " + IMPORT_COLUMNS + " columns, found " + p.length;
+        if (p[0].trim().isEmpty()) return "missing name";
+        if (p[1].trim().isEmpty()) return "missing email";
+        if (p[2].trim().isEmpty()) return "missing phone";
+        return null;
+    }
+
+    private static String joinImportEvents(String events) {
+        List<String> evs = new ArrayList<>();
+        for (String s : events.split("[;|]")) {
+            String t = s.trim();
+            if (!t.isEmpty()) evs.add(t);
+        }
+        return String.join(" | ", evs);
+    }
+
+    // One buffered write of pre-formatted lines: journal records in journaled mode, CSV rows otherwise
+    private boolean appendLines(List<String> lines) {
+        if (journal != null) return persist(lines);
+        try (Metrics.Timer t = Metrics.time("participants.appendLines");
+             BufferedWriter bw = new BufferedWriter(new FileWriter(filePath, true), 1 << 16)) {
+            for (String l : lines) { bw.write(l); bw.newLine(); }
+            t.bytesWritten(charCount(lines));
+            return true;
         } catch (IOException e) {
-            e.printStackTrace();
+            Metrics.error("participants", e);
             return false;
         }
-        if (found) writeAll(rows);
-        return found;
+    }
+
+    /** What registration and import do with a participant whose email or phone is already registered. */
+    public enum DuplicatePolicy { REJECT, WARN, MERGE }
+
+    /** An existing participant sharing the email or phone of a new registration. */
+    public static class Duplicate {
+        public final String id;
+        public final String field; // "email" or "phone"
+
+        Duplicate(String id, String field) {
+            this.id = id;
+            this.field = field;
+        }
+    }
+
+    public DuplicatePolicy getDuplicatePolicy() {
+        return duplicatePolicy;
+    }
+
+    public void setDuplicatePolicy(DuplicatePolicy duplicatePolicy) {
+        this.duplicatePolicy = duplicatePolicy;
+    }
+
+    // Constant-time lookup of a registered participant with the same email (checked first) or phone
+    public Duplicate findDuplicate(String email, String phone) {
+        return duplicateOf(normalizeEmail(email), normalizePhone(phone));
+    }
+
+    // findDuplicate for contacts already normalized
+    private Duplicate duplicateOf(String email, String phone) {
+        return readLocked(() -> {
+            String id = contactOwner(emailIndex, email, true);
+            if (id != null) return new Duplicate(id, "email");
+            id = contactOwner(phoneIndex, phone, false);
+            return id == null ? null : new Duplicate(id, "phone");
+        });
+    }
+
+    // A participant holding the normalized contact; the index only has hashes, so the row confirms it
+    private String contactOwner(ContactIndex idx, String contact, boolean email) {
+        for (int key : idx.owners(contact)) {
+            String id = store.idOf(key);
+            String[] r = store.get(id);
+            if (r != null && contact.equals(email ? normalizeEmail(r[2]) : normalizePhone(r[3]))) return id;
+        }
+        return null;
+    }
+
+    // MERGE policy for a single registration: add the events to the existing participant
+    public String[] mergeEvents(String id, List<String> eventsList) {
+        return writeLocked(() -> {
+            String[] p = store.get(id);
+            if (p == null) return null;
+            String[] row = p.clone();
+            row[7] = unionEvents(p[7], String.join(" | ", eventsList));
+            if (!persist(Collections.singletonList(upsertRecord(row)), replaced(row))) return null;
+            putRow(row);
+            return row;
+        });
+    }
+
+    /** Outcome of register(): the stored row (null if rejected or the write failed) and the duplicate found, if any. */
+    public static class Registration {
+        public final String[] row;
+        public final Duplicate duplicate;
+        public final boolean merged;   // the events went to the duplicate instead of a new participant
+
+        Registration(String[] row, Duplicate duplicate, boolean merged) {
+            this.row = row;
+            this.duplicate = duplicate;
+            this.merged = merged;
+        }
+    }
+
+    /**
+     * Register a participant under the duplicate policy, checking and saving as one step so that
+     * two desks registering the same person at once cannot both get a new ID.
+     */
+    public Registration register(String name, String email, String phone, String dept, String college,
+                                 String year, List<String> eventsList) {
+        return writeLocked(() -> {
+            Duplicate dup = findDuplicate(email, phone);
+            if (dup != null && duplicatePolicy == DuplicatePolicy.REJECT) return new Registration(null, dup, false);
+            if (dup != null && duplicatePolicy == DuplicatePolicy.MERGE) {
+                return new Registration(mergeEvents(dup.id, eventsList), dup, true);
+            }
+            return new Registration(saveParticipant(name, email, phone, dept, college, year, eventsList), dup, false);
+        });
+    }
+
+    /** Run several handler calls as one step: no other thread (or, when shared, process) sees them half done. */
+    public <T> T atomically(Supplier<T> calls) {
+        return writeLocked(calls);
+    }
+
+    public static String normalizeEmail(String email) {
+        return email == null ? "" : email.trim().toLowerCase();
+    }
+
+    public static String normalizePhone(String phone) {
+        if (phone == null) return "";
+        StringBuilder sb = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    // " | "-joined union of two event lists, keeping the order of first appearance
+    private static String unionEvents(String a, String b) {
+        Set<String> evs = new LinkedHashSet<>();
+        for (String s : (a + "|" + b).split("\\|")) {
+            String t = s.trim();
+            if (!t.isEmpty()) evs.add(t);
+        }
+        return String.join(" | ", evs);
+    }
+
+    // Load all participants as list of string arrays (matching table columns), served from memory
+    // (read-only: an unmodifiable list over the mapped file that decodes rows as they are read)
+    public List<String[]> loadParticipants() {
+        if (mapped != null) {
+            refreshMapped();
+            return mapped.rows();
+        }
+        try (Metrics.Timer t = Metrics.time("participants.loadParticipants")) {
+            List<String[]> rows = readLocked(() -> new ArrayList<>(store.rows()));
+            t.rows(rows.size());
+            return rows;
+        }
+    }
+
+    // Number of participants
+    public int participantCount() {
+        if (mapped != null) refreshMapped();
+        return readLocked(() -> mapped != null ? mapped.size() : store.size());
+    }
+
+    // Up to limit participants from position from on, in file order; only these rows are decoded
+    public List<String[]> participantsPage(int from, int limit) {
+        if (mapped != null) refreshMapped();
+        return readLocked(() -> {
+            int n = mapped != null ? mapped.size() : store.size();
+            List<String[]> page = new ArrayList<>();
+            for (int pos = Math.max(0, from); pos < n && page.size() < limit; pos++) {
+                page.add(mapped != null ? mapped.get(pos) : store.rowAt(pos));
+            }
+            return page;
+        });
+    }
+
+    /**
+     * The participants at one moment, for views that read rows long after asking for them
+     * (ParticipantTableModel on the EDT): reading it takes no lock, so it never waits for a writer.
+     * Rows are decoded as they are read; read-only, the keys are row numbers in the mapped file.
+     */
+    public static class Snapshot {
+        private final ParticipantStore.Snapshot stored; // null when read-only
+        private final List<String[]> mappedRows;
+
+        Snapshot(ParticipantStore.Snapshot stored, List<String[]> mappedRows) {
+            this.stored = stored;
+            this.mappedRows = mappedRows;
+        }
+
+        public int size() {
+            return stored != null ? stored.size() : mappedRows.size();
+        }
+
+        public String[] row(int pos) {
+            return stored != null ? stored.get(pos) : mappedRows.get(pos);
+        }
+
+        public String valueAt(int pos, int col) {
+            return stored != null ? stored.valueAt(pos, col) : mappedRows.get(pos)[col];
+        }
+
+        public int keyAt(int pos) {
+            return stored != null ? stored.keyAt(pos) : pos;
+        }
+
+        // As keyOf when the snapshot was taken; NO_KEY for IDs added since (other than P<number>)
+        public int keyOf(String id) {
+            return stored != null ? stored.keyOf(id) : ParticipantStore.NO_KEY;
+        }
+    }
+
+    public Snapshot participantSnapshot() {
+        if (mapped != null) {
+            refreshMapped();
+            return readLocked(() -> new Snapshot(null, mapped.rows()));
+        }
+        try (Metrics.Timer t = Metrics.time("participants.snapshot")) {
+            Snapshot snap = readLocked(() -> new Snapshot(store.snapshot(), null));
+            t.rows(snap.size());
+            return snap;
+        }
+    }
+
+    // Stable key of a participant ID (P1234 -> 1234), or ParticipantStore.NO_KEY; NO_KEY in read-only mode
+    public int keyOf(String id) {
+        return mapped != null ? ParticipantStore.NO_KEY : readLocked(() -> store.keyOf(id));
+    }
+
+    // Point lookup by participant ID, or null
+    public String[] findById(String id) {
+        long start = System.nanoTime(); // hot path: no Timer object
+        try {
+            if (mapped != null) refreshMapped();
+            return readLocked(() -> mapped != null ? mapped.findById(id) : store.get(id));
+        } finally {
+            FIND_BY_ID.record(System.nanoTime() - start);
+        }
+    }
+
+    // Search by keyword in ID, name, email, phone, dept, college, year, events (trigram index), in file order
+    public List<String[]> search(String keyword) {
+        if (keyword == null) return new ArrayList<>();
+        try (Metrics.Timer t = Metrics.time("participants.search")) {
+            if (mapped != null) {
+                refreshMapped();
+                return readLocked(() -> mapped.search(keyword));
+            }
+            return readLocked(() -> {
+                int[] at = searchIndex().search(keyword);
+                for (int i = 0; i < at.length; i++) at[i] = store.indexOfKey(at[i]);
+                Arrays.sort(at);
+                List<String[]> res = new ArrayList<>(at.length);
+                for (int pos : at) res.add(store.rowAt(pos));
+                t.rows(res.size()); // candidates the index confirmed
+                return res;
+            });
+        }
+    }
+
+    // Narrow a previous result of search(q) to keyword, where keyword contains q and modCount() is unchanged
+    public List<String[]> search(String keyword, List<String[]> within) {
+        if (keyword == null) return new ArrayList<>();
+        try (Metrics.Timer t = Metrics.time("participants.searchWithin")) {
+            t.rows(within.size());
+            if (mapped != null) return MappedParticipantReader.filter(within, keyword);
+            return readLocked(() -> {
+                List<String[]> res = new ArrayList<>();
+                for (String id : SearchIndex.filter(within, keyword)) res.add(store.get(id));
+                return res;
+            });
+        }
+    }
+
+    // Edit participant by ID (replace fields). attendanceParam may be null to keep existing
+    public boolean edit(String id, String name, String email, String phone,
+                        String dept, String college, String year, String events, String attendanceParam) {
+        try (Metrics.Timer t = Metrics.time("participants.edit")) {
+            return writeLocked(() -> {
+                String[] p = store.get(id);
+                if (p == null) return false;
+                t.rows(1);
+                String att = attendanceParam != null ? attendanceParam : p[8];
+                String[] row = normalize(new String[]{id, name, email, phone, dept, college, year, events, att});
+                if (!persist(Collections.singletonList(upsertRecord(row)), replaced(row))) return false;
+                putRow(row);
+                return true;
+            });
+        }
     }
 
     public boolean delete(String id) {
-        File f = new File(filePath);
-        if (!f.exists()) return false;
-        List<String[]> rows = new ArrayList<>();
-        boolean removed = false;
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String line; br.readLine(); // skip header
-            while ((line = br.readLine()) != null) {
-                String[] p = splitCSV(line);
-                if (p.length > 0 && p[0].equals(id)) {
-                    removed = true;
-                } else {
-                    rows.add(p);
+        try (Metrics.Timer t = Metrics.time("participants.delete")) {
+            return writeLocked(() -> {
+                int pos = store.indexOf(id);
+                if (pos < 0) return false;
+                t.rows(1);
+                if (!persist(Collections.singletonList(deleteRecord(id)), rowsAfter(Collections.emptyMap(), pos))) return false;
+                removeRow(id);
+                return true;
+            });
+        }
+    }
+
+    public boolean markAttendance(String id, String status) {
+        try (Metrics.Timer t = Metrics.time("participants.markAttendance")) {
+            return writeLocked(() -> {
+                String[] p = store.get(id);
+                if (p == null) return false;
+                t.rows(1);
+                String[] updated = p.clone();
+                updated[8] = status;
+                if (!persist(Collections.singletonList(upsertRecord(updated)), replaced(updated))) return false;
+                putRow(updated, store.mask(id));
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Set the Attendance column of many participants with one write (one journal append, or one
+     * CSV rewrite). Unknown IDs are skipped and unchanged rows are not rewritten. Returns the number
+     * of participants found, or -1 if the write failed.
+     */
+    public int markAttendance(Map<String, String> statusById) {
+        try (Metrics.Timer t = Metrics.time("participants.markAttendanceBatch")) {
+            t.rows(statusById.size());
+            return writeLocked(() -> {
+                int found = 0;
+                List<String> records = new ArrayList<>();
+                Map<Integer, String[]> changed = new LinkedHashMap<>();
+                for (Map.Entry<String, String> e : statusById.entrySet()) {
+                    String[] p = store.get(e.getKey());
+                    if (p == null) continue;
+                    found++;
+                    if (p[8].equals(e.getValue())) continue;
+                    String[] updated = p.clone();
+                    updated[8] = e.getValue();
+                    changed.put(store.keyOf(updated[0]), updated);
+                    records.add(upsertRecord(updated));
                 }
+                if (records.isEmpty()) return found;
+                if (!persist(records, rowsAfter(changed, -1))) return -1;
+                for (String[] updated : changed.values()) putRow(updated, store.mask(updated[0]));
+                return found;
+            });
+        }
+    }
+
+    /**
+     * Move every participant registered for oldEvent to newEvent, or drop the event when newEvent
+     * is empty. Only the participants registered for oldEvent are rewritten, with names in event
+     * ID order. (In event ID mode a plain rename or removal needs only refreshEvent.) Returns
+     * false if the write failed; the participants are then left as they were.
+     */
+    public boolean updateParticipantsForEvent(String oldEvent, String newEvent) {
+        if (mapped != null) return false;
+        return writeLocked(() -> moveEventMembers(oldEvent, newEvent));
+    }
+
+    private boolean moveEventMembers(String oldEvent, String newEvent) {
+        int from = events.idOf(oldEvent);
+        if (from < 0) return true;
+        int to = newEvent == null ? -1 : events.intern(newEvent);
+        if (to == from) return true;
+        List<String[]> changed = new ArrayList<>();
+        List<BitSet> changedMasks = new ArrayList<>();
+        for (String id : store.members(from)) {
+            BitSet m = (BitSet) store.mask(id).clone();
+            m.clear(from);
+            if (to >= 0) m.set(to);
+            String[] copy = store.get(id).clone();
+            copy[7] = events.format(m);
+            changed.add(copy);
+            changedMasks.add(m);
+        }
+        if (changed.isEmpty()) return true;
+        List<String> records = new ArrayList<>(changed.size());
+        Map<Integer, String[]> byKey = new HashMap<>();
+        for (String[] row : changed) {
+            records.add(upsertRecord(row));
+            byKey.put(store.keyOf(row[0]), row);
+        }
+        if (!persist(records, rowsAfter(byKey, -1))) return false;
+        for (int i = 0; i < changed.size(); i++) putRow(changed.get(i), changedMasks.get(i));
+        return true;
+    }
+
+    /**
+     * Bring the in-memory rows of an event's participants in line with the dictionary after
+     * EventFileHandler renamed or removed it. Nothing is written: on disk the participants refer
+     * to the event by ID, and a removed ID is dropped when the file is next loaded or rewritten.
+     */
+    public void refreshEvent(int eventId) {
+        if (mapped != null) return;
+        writeLocked(() -> {
+            boolean live = events.isLive(eventId);
+            for (String id : store.members(eventId)) {
+                BitSet m = store.mask(id);
+                if (!live) {
+                    m = (BitSet) m.clone();
+                    m.clear(eventId);
+                }
+                String[] copy = store.get(id).clone();
+                copy[7] = events.format(m);
+                putRow(copy, m);
             }
+            return null;
+        });
+    }
+
+    // True if the participant is registered for exactly this event (not merely a name containing it)
+    public boolean inEvent(String id, String event) {
+        int ev = events.idOf(event);
+        if (ev < 0) return false;
+        if (mapped != null) {
+            refreshMapped();
+            String[] r = mapped.findById(id);
+            return r != null && events.maskOfKnown(r[7]).get(ev);
+        }
+        return readLocked(() -> {
+            BitSet mask = store.mask(id);
+            return mask != null && mask.get(ev);
+        });
+    }
+
+    // Participants registered for the event, in file order
+    public List<String[]> participantsInEvent(String event) {
+        List<String[]> res = new ArrayList<>();
+        int ev = events.idOf(event);
+        if (ev < 0) return res;
+        if (mapped != null) {
+            refreshMapped();
+            for (String[] r : mapped.rows()) if (events.maskOfKnown(r[7]).get(ev)) res.add(r);
+            return res;
+        }
+        return readLocked(() -> {
+            for (int pos = 0; pos < store.size(); pos++) if (store.maskAt(pos).get(ev)) res.add(store.rowAt(pos));
+            return res;
+        });
+    }
+
+    // persist() for rows already in the store (or, in journaled mode, not yet there)
+    private boolean persist(List<String> records) {
+        return persist(records, store.rows());
+    }
+
+    /**
+     * Make a change durable before it is applied to the store, so a failed write leaves memory as
+     * it was: append the records in journaled mode, otherwise rewrite the CSV from rowsAfter, the
+     * rows as they will be once the change is applied.
+     */
+    private boolean persist(List<String> records, List<String[]> rowsAfter) {
+        if (journal == null) return writeAll(rowsAfter);
+        try (Metrics.Timer t = Metrics.time("participants.journalAppend")) {
+            journal.append(records);
+            t.bytesWritten(charCount(records));
+            return true;
         } catch (IOException e) {
-            e.printStackTrace();
+            Metrics.error("participants", e);
             return false;
         }
-        if (removed) writeAll(rows);
-        return removed;
     }
 
-    public boolean markAttendance(String id, String status) {
-        File f = new File(filePath);
-        if (!f.exists()) return false;
-        List<String[]> rows = new ArrayList<>();
-        boolean updated = false;
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String line; br.readLine();
-            while ((line = br.readLine()) != null) {
-                String[] p = splitCSV(line);
-                if (p.length > 0 && p[0].equals(id)) {
-                    if (p.length < 9) p = Arrays.copyOf(p, 9);
-                    p[8] = status;
-                    updated = true;
-                }
-                rows.add(p);
+    // The store's rows with this one replacing the stored row of the same ID
+    private List<String[]> replaced(String[] row) {
+        return rowsAfter(Collections.singletonMap(store.keyOf(row[0]), row), -1);
+    }
+
+    // The store's rows in file order with changed (by key) replacing theirs and the row at removedPos
+    // (or -1) removed as ParticipantStore.remove does it: the last row takes its place
+    private List<String[]> rowsAfter(Map<Integer, String[]> changed, int removedPos) {
+        if (journal != null) return Collections.emptyList(); // only a CSV rewrite reads them
+        return new AbstractList<String[]>() {
+            public String[] get(int i) {
+                int pos = i == removedPos ? store.size() - 1 : i;
+                String[] r = changed.get(store.keyAt(pos));
+                return r != null ? r : store.rowAt(pos);
+            }
+
+            public int size() {
+                return store.size() - (removedPos >= 0 ? 1 : 0);
             }
+        };
+    }
+
+    // Size of lines about to be written (chars plus line breaks; bytes for ASCII data)
+    private static long charCount(List<String> lines) {
+        long n = 0;
+        for (String l : lines) n += l.length() + 1;
+        return n;
+    }
+
+    // Compact once the journal has grown past the threshold. Runs after a mutation has updated the
+    // store, never between its journal append and putRow: the snapshot must include every logged record.
+    private void compactIfDue() {
+        if (journal == null || !journal.needsCompaction()) return;
+        try {
+            compact();
         } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+            Metrics.error("participants", e);
         }
-        if (updated) writeAll(rows);
-        return updated;
     }
 
-    // Update all participant event strings when an event is renamed or removed (replace occurrences)
-    public void updateParticipantsForEvent(String oldEvent, String newEvent) {
-        List<String[]> rows = loadParticipants();
-        for (int i = 0; i < rows.size(); i++) {
-            String[] r = rows.get(i);
-            String events = r.length > 7 ? r[7] : "";
-            if (events != null && !events.isEmpty()) {
-                String updated = events.replace(oldEvent, newEvent);
-                r[7] = updated;
+    // Rotate the journal and write a fresh CSV (and binary) snapshot from the current rows in the background;
+    // in shared mode synchronously, so the whole compaction happens under the file lock
+    private void compact() throws IOException {
+        Metrics.add("participants.compactions", 1);
+        List<String[]> snapshot = diskRows(store.rows());
+        int nextId = counter.get();
+        Callable<Boolean> writer = () -> writeDisk(snapshot) && (binFile == null || writeBinary(snapshot, nextId));
+        if (fileMutex != null) journal.compactNow(writer);
+        else journal.compact(writer);
+    }
+
+    // Flush pending journal state into the CSV, refresh a stale binary image and stop the compactor
+    public void close() {
+        if (mapped != null) {
+            try {
+                mapped.close();
+            } catch (IOException e) {
+                Metrics.error("participants", e);
+            }
+            readLog.close();
+            return;
+        }
+        writeLocked(() -> {
+            if (journal != null) {
+                try {
+                    journal.awaitCompaction();
+                    if (!journal.isEmpty()) compact();
+                } catch (IOException e) {
+                    Metrics.error("participants", e);
+                }
+                journal.close();
+            }
+            if (binFile != null && !binaryCurrent()) writeBinary(diskRows(store.rows()), counter.get());
+            return null;
+        });
+        if (fileMutex != null) {
+            try {
+                fileMutex.close();
+            } catch (IOException e) {
+                Metrics.error("participants", e);
             }
         }
-        writeAll(rows);
+    }
+
+    // True if the binary image still describes the CSV on disk
+    private boolean binaryCurrent() {
+        return BinarySnapshot.matches(binFile, new File(filePath));
     }
 
     // Export current participants CSV to provided destination path
     public boolean exportTo(String destPath) {
-        File src = new File(filePath);
-        if (!src.exists()) return false;
-        try (BufferedReader br = new BufferedReader(new FileReader(src));
-             PrintWriter pw = new PrintWriter(new FileWriter(destPath, false))) {
-            String line;
-            while ((line = br.readLine()) != null) pw.println(line);
+        return exportTo(destPath, new ParticipantExport());
+    }
+
+    // Export the selected participants and columns to a file (written to a temp file, then moved into place)
+    public boolean exportTo(String destPath, ParticipantExport spec) {
+        File dest = new File(destPath);
+        File tmp = new File(dest.getAbsolutePath() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            export(spec, out);
+        } catch (IOException e) {
+            Metrics.error("participants", e);
+            tmp.delete();
+            return false;
+        }
+        try {
+            Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
             return true;
         } catch (IOException e) {
-            e.printStackTrace();
+            Metrics.error("participants", e);
             return false;
         }
     }
 
-    // Analytics: total, attendance rate, count per event
-    public Map<String, Object> analytics() {
-        Map<String, Object> stats = new LinkedHashMap<>();
-        List<String[]> rows = loadParticipants();
-        int total = rows.size();
-        int present = 0;
-        Map<String, Integer> byEvent = new HashMap<>();
-        for (String[] r : rows) {
-            if (r.length >= 9 && "Present".equalsIgnoreCase(r[8])) present++;
-            if (r.length >= 8) {
-                String evs = r[7];
-                if (evs != null && !evs.isEmpty()) {
-                    String[] split = evs.split("\\|");
-                    for (String s : split) {
-                        String key = s.trim();
-                        if (key.isEmpty()) continue;
-                        byEvent.put(key, byEvent.getOrDefault(key, 0) + 1);
-                    }
+    /**
+     * Stream the participants selected by spec to out as CSV (header first, event names in the
+     * Events column) and return the number of rows written. out is left open.
+     *
+     * Rows are read EXPORT_BATCH at a time under the read lock, then encoded and written outside
+     * it, so memory use does not grow with the registry and a slow destination does not hold up
+     * registrations. Each row is written as some version that existed during the export; rows
+     * added meanwhile may be left out. A full, uncompressed export of a plain CSV (which is always
+     * current) is copied straight from the file with FileChannel.transferTo.
+     */
+    public long export(ParticipantExport spec, WritableByteChannel out) throws IOException {
+        try (Metrics.Timer t = Metrics.time("participants.export")) {
+            return export(spec, out, t);
+        }
+    }
+
+    private long export(ParticipantExport spec, WritableByteChannel out, Metrics.Timer t) throws IOException {
+        if (mapped != null) refreshMapped();
+        if (spec.verbatim() && mapped == null && journal == null && !eventIds) {
+            long[] rows = new long[1];
+            FileChannel src = readLocked(() -> {
+                // appends happen under the write lock, so the size taken here ends on a row boundary;
+                // rewrites replace the file, leaving the open channel on the old one
+                try {
+                    FileChannel ch = FileChannel.open(Paths.get(filePath), StandardOpenOption.READ);
+                    rows[0] = store.size();
+                    return ch;
+                } catch (IOException e) {
+                    return null;
                 }
+            });
+            if (src != null) {
+                try (FileChannel in = src) {
+                    long size = in.size();
+                    for (long pos = 0; pos < size; ) pos += in.transferTo(pos, size - pos, out);
+                    t.bytesRead(size).bytesWritten(size);
+                }
+                return rows[0];
             }
         }
-        stats.put("totalParticipants", total);
-        stats.put("attendanceRate", total == 0 ? 0.0 : (100.0 * present / total));
-        stats.put("byEvent", byEvent);
-        return stats;
+
+        GZIPOutputStream gz = spec.gzip() ? new GZIPOutputStream(Channels.newOutputStream(out), 1 << 16) : null;
+        WritableByteChannel sink = gz != null ? Channels.newChannel(gz) : out;
+        Charset charset = Charset.defaultCharset(); // what FileWriter uses for the CSV itself
+        String newline = System.lineSeparator();
+        StringBuilder sb = new StringBuilder(1 << 16);
+        sb.append(spec.header()).append(newline);
+        int eventId = spec.event() == null ? -1 : events.idOf(spec.event());
+        boolean noMatch = spec.event() != null && eventId < 0;
+        String[][] batch = new String[EXPORT_BATCH][];
+        String[] scanned = new String[EXPORT_BATCH];  // IDs of the rows looked at in the last batch
+        int[] cursor = {0, 0};                          // next position, rows scanned in the last batch
+        long written = 0;
+        while (true) {
+            int n = noMatch ? 0 : readLocked(() -> exportBatch(spec, eventId, batch, scanned, cursor));
+            for (int i = 0; i < n; i++) spec.appendLine(sb, batch[i], newline);
+            written += n;
+            byte[] bytes = sb.toString().getBytes(charset);
+            t.rows(cursor[1]).bytesWritten(bytes.length); // before compression
+            writeFully(sink, ByteBuffer.wrap(bytes));
+            sb.setLength(0);
+            if (noMatch || cursor[1] == 0) break;
+        }
+        if (gz != null) gz.finish();
+        return written;
+    }
+
+    // Collect the next batch of matching rows from cursor[0] on; returns how many went into batch
+    private int exportBatch(ParticipantExport spec, int eventId, String[][] batch, String[] scanned, int[] cursor) {
+        List<String[]> rows = mapped != null ? mapped.rows() : store.rows();
+        int pos = Math.min(cursor[0], rows.size());
+        if (mapped == null && cursor[1] > 0 && (pos == 0 || !rows.get(pos - 1)[0].equals(scanned[cursor[1] - 1]))) {
+            // rows before the cursor were deleted (or replaced the file): resume after the last row still present
+            pos = Math.min(cursor[0] - cursor[1], rows.size());
+            for (int k = cursor[1] - 1; k >= 0; k--) {
+                int at = store.indexOf(scanned[k]);
+                if (at >= 0) { pos = at + 1; break; }
+            }
+        }
+        int n = 0, seen = 0;
+        for (; pos < rows.size() && seen < EXPORT_BATCH; pos++) {
+            String[] r = rows.get(pos);
+            scanned[seen++] = r[0];
+            if (eventId >= 0 && !(mapped != null ? events.maskOfKnown(r[7]) : store.maskAt(pos)).get(eventId)) continue;
+            if (spec.matches(r)) batch[n++] = r;
+        }
+        cursor[0] = pos;
+        cursor[1] = seen;
+        return n;
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) out.write(buf);
+    }
+
+    // Analytics: total, attendance rate, present count, count per event/college/department/year.
+    // Served from incrementally maintained counters, so the cost does not depend on the participant count.
+    public Map<String, Object> analytics() {
+        try (Metrics.Timer t = Metrics.time("participants.analytics")) {
+            if (mapped != null) {
+                refreshMapped();
+                writeLocked(() -> {
+                    if (statsAt == modCount) return null;
+                    List<String[]> rows = mapped.rows();
+                    t.rows(rows.size());
+                    stats = ParticipantStats.of(rows, events); // first call, or the files changed since
+                    statsAt = modCount;
+                    return null;
+                });
+            }
+            return readLocked(() -> stats.snapshot());
+        }
+    }
+
+    // Consistency check: recount from the store; on mismatch adopt the recount. Returns true if the counters were right.
+    public boolean verifyAnalytics() {
+        if (mapped != null) return true; // recomputed from the file, never updated
+        return writeLocked(() -> {
+            ParticipantStats fresh = ParticipantStats.of(store.rows(), events);
+            if (fresh.equals(stats)) return true;
+            stats = fresh;
+            return false;
+        });
     }
 
     // ---------- Private utilities ----------
 
-    private void writeAll(List<String[]> rows) {
-        backupFile();
-        try (PrintWriter pw = new PrintWriter(new FileWriter(filePath, false))) {
-            // header
-            pw.println("ID,Name,Email,Phone,Department,College,Year,Events,Attendance");
-            for (String[] r : rows) {
-                String[] rr = Arrays.copyOf(r, 9);
-                for (int i = 0; i < rr.length; i++) if (rr[i] == null) rr[i] = "";
-                pw.println(escape(rr[0]) + "," + escape(rr[1]) + "," + escape(rr[2]) + "," +
-                        escape(rr[3]) + "," + escape(rr[4]) + "," + escape(rr[5]) + "," +
-                        escape(rr[6]) + "," + escape(rr[7]) + "," + escape(rr[8]));
+    private boolean writeAll(List<String[]> rows) {
+        return writeDisk(diskRows(rows));
+    }
+
+    // rows already in disk form
+    private boolean writeDisk(List<String[]> rows) {
+        backupFile(true);
+        return writeSnapshot(rows, filePath, diskHeader());
+    }
+
+    // Write header + rows to a temp file and move it over the destination so readers never see a partial file
+    private boolean writeSnapshot(List<String[]> rows, String destPath, String header) {
+        File dest = new File(destPath);
+        File tmp = new File(dest.getAbsolutePath() + ".tmp");
+        try (Metrics.Timer t = Metrics.time("participants.writeAll")) {
+            try (PrintWriter pw = new PrintWriter(new BufferedWriter(new FileWriter(tmp, false)))) {
+                pw.println(header);
+                for (String[] r : rows) pw.println(toLine(normalize(r)));
+                if (pw.checkError()) throw new IOException("write failed: " + tmp);
             }
+            t.rows(rows.size()).bytesWritten(tmp.length());
+            Files.move(tmp.toPath(), dest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
         } catch (IOException e) {
-            e.printStackTrace();
+            Metrics.error("participants", e);
+            return false;
         }
     }
 
+    // Pad to 9 columns and replace nulls so stored rows are always complete
+    private static String[] normalize(String[] r) {
+        String[] rr = r.length == 9 ? r : Arrays.copyOf(r, 9);
+        for (int i = 0; i < rr.length; i++) if (rr[i] == null) rr[i] = "";
+        return rr;
+    }
+
+    static String toLine(String[] r) {
+        return escape(r[0]) + "," + escape(r[1]) + "," + escape(r[2]) + "," +
+                escape(r[3]) + "," + escape(r[4]) + "," + escape(r[5]) + "," +
+                escape(r[6]) + "," + escape(r[7]) + "," + escape(r[8]);
+    }
+
     // Basic CSV escaping (quotes if needed)
-    private String escape(String s) {
+    static String escape(String s) {
         if (s == null) return "";
-        if (s.contains(",") || s.contains("\"") || s.contains("\n")) {
+        if (s.contains(",") || s.contains("\"") || s.contains("\n") || s.contains("\r")) {
             s = s.replace("\"", "\"\"");
             return "\"" + s + "\"";
         }
         return s;
     }
-
-    // Rudimentary CSV splitter that respects quoted commas
-    private String[] splitCSV(String line) {
-        if (line == null) return new String[0];
-        List<String> parts = new ArrayList<>();
-        StringBuilder cur = new StringBuilder();
-        boolean inQuotes = false;
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (c == '"') {
-                if (inQuotes && i + 1 < line.length() && line.charAt(i + 1) == '"') {
-                    cur.append('"'); i++;
-                } else {
-                    inQuotes = !inQuotes;
-                }
-            } else if (c == ',' && !inQuotes) {
-                parts.add(cur.toString());
-                cur.setLength(0);
-            } else cur.append(c);
-        }
-        parts.add(cur.toString());
-        return parts.toArray(new String[0]);
-    }
 }
@@ -0,0 +1,254 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * ParticipantJournal
+ * Append-only write-ahead log kept next to the participants CSV ("participants.csv.journal").
+ *
+ * Each mutation is one CSV record (quoted fields may span lines); the handler decides the record format. Once the log grows
+ * past the compaction threshold it is rotated to ".journal.old" and a fresh CSV snapshot is written
+ * on a background thread, after which the old log is deleted. On startup both logs are replayed
+ * (old first) on top of the CSV, so a compaction interrupted half-way loses nothing.
+ *
+ * Every append is flushed and synced to the device before it returns, so a logged mutation
+ * survives a process crash or a power loss. A record cut short by a crash (no line break after
+ * it, outside quotes) is never replayed, and is cut off before the next append.
+ *
+ * When several processes share the files, the handler serializes them with a FileMutex: it reads
+ * the records others appended with replayFrom(), and compacts with compactNow() while holding it.
+ */
+public class ParticipantJournal {
+    public static final long DEFAULT_COMPACT_THRESHOLD = 4L * 1024 * 1024;
+
+    private final File logFile;
+    private final File oldLogFile;
+    private long compactThreshold = DEFAULT_COMPACT_THRESHOLD;
+    private BufferedWriter out;
+    private FileOutputStream outStream;
+    private long logSize;
+    private long end; // bytes of the live log up to the end of its last complete record
+    private Future<?> compaction;
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "participants-compactor");
+        t.setDaemon(true);
+        return t;
+    });
+
+    public ParticipantJournal(String csvPath) {
+        this.logFile = new File(csvPath + ".journal");
+        this.oldLogFile = new File(csvPath + ".journal.old");
+    }
+
+    public void setCompactThreshold(long bytes) {
+        this.compactThreshold = bytes;
+    }
+
+    // Feed every complete logged record (old log first) to the consumer; the field list is reused between calls
+    public void replay(Consumer<List<String>> apply) {
+        replayFile(oldLogFile, 0, apply);
+        end = replayFile(logFile, 0, apply);
+        logSize = logFile.length();
+    }
+
+    /**
+     * Feed the complete records of the live log from byte offset pos on (a record boundary);
+     * returns the offset just past the last complete record.
+     */
+    public long replayFrom(long pos, Consumer<List<String>> apply) {
+        end = replayFile(logFile, pos, apply);
+        logSize = logFile.length();
+        return end;
+    }
+
+    private static long replayFile(File f, long pos, Consumer<List<String>> apply) {
+        if (!f.exists()) return 0;
+        try {
+            byte[] bytes = Files.readAllBytes(f.toPath()); // bounded by the compaction threshold
+            int start = (int) Math.min(pos, bytes.length);
+            int stop = completeEnd(bytes, start);
+            try (CsvTokenizer csv = new CsvTokenizer(new InputStreamReader(new ByteArrayInputStream(bytes, start, stop - start)))) {
+                List<String> fields = new ArrayList<>(10);
+                while (csv.next(fields)) apply.accept(fields);
+            }
+            return stop;
+        } catch (IOException e) {
+            Metrics.error("journal", e);
+            return pos;
+        }
+    }
+
+    // Offset just past the last line break outside quotes at or after from, or from if there is none
+    private static int completeEnd(byte[] bytes, int from) {
+        int stop = from;
+        boolean quoted = false;
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == '"') quoted = !quoted; // a doubled quote toggles twice
+            else if (bytes[i] == '\n' && !quoted) stop = i + 1;
+        }
+        return stop;
+    }
+
+    // Bytes in the live log on disk, including records appended by other processes
+    public long position() {
+        return logFile.length();
+    }
+
+    // Offset just past the last complete record this process has read or written
+    public long end() {
+        return end;
+    }
+
+    public boolean hasRotatedLog() {
+        return oldLogFile.exists();
+    }
+
+    // Identity of the live log file (changes when another process rotates it), or null if absent
+    public Object fileKey() {
+        try {
+            return Files.readAttributes(logFile.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // Drop the open writer so the next append opens the log by name again (after another process rotated it)
+    public void reopen() {
+        closeWriter();
+    }
+
+    public void append(String record) throws IOException {
+        append(Collections.singletonList(record));
+    }
+
+    // Write the records and sync them to the device
+    public void append(List<String> records) throws IOException {
+        if (records.isEmpty()) return;
+        if (out == null) openWriter();
+        for (String r : records) {
+            out.write(r);
+            out.newLine();
+        }
+        out.flush();
+        FileChannel ch = outStream.getChannel();
+        ch.force(false);
+        end = logSize = ch.position();
+    }
+
+    // Cut off a record a crashed writer left unfinished, then open the log for appending
+    private void openWriter() throws IOException {
+        cutTornRecord(logFile);
+        outStream = new FileOutputStream(logFile, true);
+        out = new BufferedWriter(new OutputStreamWriter(outStream));
+    }
+
+    private static void cutTornRecord(File f) throws IOException {
+        if (!f.exists()) return;
+        byte[] bytes = Files.readAllBytes(f.toPath());
+        int stop = completeEnd(bytes, 0);
+        if (stop == bytes.length) return;
+        try (FileChannel ch = FileChannel.open(f.toPath(), StandardOpenOption.WRITE)) {
+            ch.truncate(stop);
+        }
+    }
+
+    // True when nothing has been logged since the last completed compaction
+    public boolean isEmpty() {
+        return logSize == 0 && !oldLogFile.exists() && !compactionRunning();
+    }
+
+    public boolean needsCompaction() {
+        return logSize >= compactThreshold && !compactionRunning();
+    }
+
+    public boolean compactionRunning() {
+        return compaction != null && !compaction.isDone();
+    }
+
+    /**
+     * Rotate the live log and run the snapshot writer in the background. The writer must persist
+     * a state that includes every record logged so far; the rotated log is deleted once it succeeds.
+     */
+    public void compact(Callable<Boolean> snapshotWriter) throws IOException {
+        if (compactionRunning()) return;
+        rotate();
+        compaction = compactor.submit(() -> {
+            try {
+                if (snapshotWriter.call()) oldLogFile.delete();
+            } catch (Exception e) {
+                Metrics.error("journal", e);
+            }
+        });
+    }
+
+    /**
+     * Rotate, write the snapshot and drop the rotated log on the calling thread. Used when other
+     * processes share the files, so that the whole compaction happens under their common lock.
+     */
+    public boolean compactNow(Callable<Boolean> snapshotWriter) throws IOException {
+        awaitCompaction();
+        rotate();
+        try {
+            if (!snapshotWriter.call()) return false;
+            Files.deleteIfExists(oldLogFile.toPath());
+            return true;
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            Metrics.error("journal", e);
+            return false;
+        }
+    }
+
+    // Wait for a running compaction, then close the log
+    public void close() {
+        awaitCompaction();
+        compactor.shutdown();
+        closeWriter();
+    }
+
+    public void awaitCompaction() {
+        if (compaction == null) return;
+        try {
+            compaction.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            Metrics.error("journal", e);
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeWriter();
+        cutTornRecord(logFile);
+        if (oldLogFile.exists()) {
+            // a previous compaction failed: keep its records by folding the live log into it
+            if (!logFile.exists()) { logSize = 0; return; }
+            try (InputStream src = Files.newInputStream(logFile.toPath());
+                 OutputStream dst = new FileOutputStream(oldLogFile, true)) {
+                src.transferTo(dst);
+            }
+            Files.delete(logFile.toPath());
+        } else if (logFile.exists()) {
+            Files.move(logFile.toPath(), oldLogFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        logSize = end = 0;
+    }
+
+    private void closeWriter() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            Metrics.error("journal", e);
+        }
+        out = null;
+        outStream = null;
+    }
+}
@@ -0,0 +1,138 @@
+import java.util.*;
+
+/**
+ * ParticipantStats
+ * Materialized analytics aggregates, kept current by applying each row change as it happens:
+ * total, present count, and participant counts per event, college, department and year.
+ *
+ * Reading the aggregates costs O(number of distinct keys), independent of the participant count.
+ * Empty values are not counted in the breakdowns; a key whose count drops to zero disappears.
+ * Event counts are kept per EventDictionary ID and take the participant's event mask, so no
+ * Events column is ever split here.
+ */
+public class ParticipantStats {
+    private int total;
+    private int present;
+    private final EventDictionary events;
+    private int[] byEvent = new int[16];
+    private final Map<String, Integer> byCollege = new HashMap<>();
+    private final Map<String, Integer> byDepartment = new HashMap<>();
+    private final Map<String, Integer> byYear = new HashMap<>();
+
+    public ParticipantStats(EventDictionary events) {
+        this.events = events;
+    }
+
+    public void add(String[] row, BitSet eventMask) {
+        apply(row, eventMask, 1);
+    }
+
+    public void remove(String[] row, BitSet eventMask) {
+        apply(row, eventMask, -1);
+    }
+
+    /**
+     * Add participants counted per distinct value instead of row by row (a snapshot load): each
+     * map gives how many participants hold a value, eventMasks how many hold each event mask.
+     */
+    void addCounts(int participants, int presentCount, Map<String, Integer> departments, Map<String, Integer> colleges,
+                   Map<String, Integer> years, Map<BitSet, Integer> eventMasks) {
+        total += participants;
+        present += presentCount;
+        for (Map.Entry<String, Integer> e : departments.entrySet()) count(byDepartment, e.getKey(), e.getValue());
+        for (Map.Entry<String, Integer> e : colleges.entrySet()) count(byCollege, e.getKey(), e.getValue());
+        for (Map.Entry<String, Integer> e : years.entrySet()) count(byYear, e.getKey(), e.getValue());
+        for (Map.Entry<BitSet, Integer> e : eventMasks.entrySet()) {
+            BitSet mask = e.getKey();
+            if (mask.length() > byEvent.length) byEvent = Arrays.copyOf(byEvent, Math.max(mask.length(), byEvent.length * 2));
+            for (int id = mask.nextSetBit(0); id >= 0; id = mask.nextSetBit(id + 1)) byEvent[id] += e.getValue();
+        }
+    }
+
+    public void clear() {
+        total = 0;
+        present = 0;
+        Arrays.fill(byEvent, 0);
+        byCollege.clear();
+        byDepartment.clear();
+        byYear.clear();
+    }
+
+    public int total() {
+        return total;
+    }
+
+    public int present() {
+        return present;
+    }
+
+    // Participants registered for the event with this ID
+    public int eventCount(int eventId) {
+        return eventId >= 0 && eventId < byEvent.length ? byEvent[eventId] : 0;
+    }
+
+    /** Same keys as ParticipantFileHandler.analytics(); the maps are copies. */
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("totalParticipants", total);
+        stats.put("attendanceRate", total == 0 ? 0.0 : (100.0 * present / total));
+        stats.put("presentCount", present);
+        Map<String, Integer> perEvent = new HashMap<>();
+        for (int id = 0; id < byEvent.length; id++) {
+            String name = events.nameOf(id); // null once the event was removed
+            if (byEvent[id] != 0 && name != null) perEvent.put(name, byEvent[id]);
+        }
+        stats.put("byEvent", perEvent);
+        stats.put("byCollege", new HashMap<>(byCollege));
+        stats.put("byDepartment", new HashMap<>(byDepartment));
+        stats.put("byYear", new HashMap<>(byYear));
+        return stats;
+    }
+
+    // Aggregates rebuilt from scratch over the given rows
+    public static ParticipantStats of(Collection<String[]> rows, EventDictionary events) {
+        ParticipantStats s = new ParticipantStats(events);
+        for (String[] r : rows) s.add(r, events.maskOfKnown(r[7]));
+        return s;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof ParticipantStats)) return false;
+        ParticipantStats s = (ParticipantStats) o;
+        return total == s.total && present == s.present && sameCounts(byEvent, s.byEvent)
+                && byCollege.equals(s.byCollege) && byDepartment.equals(s.byDepartment) && byYear.equals(s.byYear);
+    }
+
+    public int hashCode() {
+        int n = byEvent.length;
+        while (n > 0 && byEvent[n - 1] == 0) n--;
+        return Objects.hash(total, present, Arrays.hashCode(Arrays.copyOf(byEvent, n)), byCollege, byDepartment, byYear);
+    }
+
+    // Equal counts, treating missing trailing entries as zero
+    private static boolean sameCounts(int[] a, int[] b) {
+        for (int i = 0; i < Math.max(a.length, b.length); i++) {
+            if ((i < a.length ? a[i] : 0) != (i < b.length ? b[i] : 0)) return false;
+        }
+        return true;
+    }
+
+    private void apply(String[] r, BitSet eventMask, int delta) {
+        total += delta;
+        if ("Present".equalsIgnoreCase(r[8])) present += delta;
+        count(byCollege, r[5], delta);
+        count(byDepartment, r[4], delta);
+        count(byYear, r[6], delta);
+        int last = eventMask.length() - 1;
+        if (last >= byEvent.length) byEvent = Arrays.copyOf(byEvent, Math.max(last + 1, byEvent.length * 2));
+        for (int id = eventMask.nextSetBit(0); id >= 0; id = eventMask.nextSetBit(id + 1)) byEvent[id] += delta;
+    }
+
+    private static void count(Map<String, Integer> m, String key, int delta) {
+        if (key == null) return;
+        key = key.trim();
+        if (key.isEmpty()) return;
+        Integer n = m.merge(key, delta, Integer::sum);
+        if (n == 0) m.remove(key);
+    }
+}
@@ -0,0 +1,679 @@
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.IntPredicate;
+
+/**
+ * ParticipantStore
+ * Resident copy of the participant rows in file order, indexed by participant key (KeyIndex: a
+ * direct array for the dense P<number> keys, a hash map for the rest).
+ *
+ * Rows are held by column instead of as String[9] arrays (which cost over 500 bytes per
+ * participant, mostly in String objects repeating the same few values):
+ *  - IDs of the form P<number> are kept as the number in an int[]; any other ID gets a negative
+ *    key from a side table. The key (see keyOf) is stable while the participant exists;
+ *  - Department, College, Year and Events are codes into per-column dictionaries (two bytes per
+ *    row until a column has more than 65536 distinct values). The Events dictionary also holds
+ *    the event mask (BitSet of EventDictionary IDs) of each distinct value, shared by every
+ *    participant with that value; masks are never modified once stored;
+ *  - Attendance is two bitsets, Present and Absent, with any other value in a side table;
+ *  - Name, Email and Phone are packed as UTF-8 into one byte array.
+ * get() and rowAt() build a new String[9] on every call, so callers may keep or modify the rows
+ * they are handed. Dictionaries only grow (their values are few); packed text left behind by
+ * updates and deletes is reclaimed once it outweighs the live text.
+ *
+ * A delete moves the last row into the freed position, so it costs the same anywhere in the
+ * store; file order is the order of the rows as they are written out, not of registration.
+ * members() reads per-event posting lists (bitsets of participant keys, about an eighth of a byte
+ * per participant and event), built on first use and kept up to date after that.
+ *
+ * snapshot() copies the columns (about 16 bytes per row) for readers that must not wait for the
+ * owner's lock. The packed text is shared rather than copied: records are only ever appended to
+ * it, and reclaiming space or clearing the store moves to a new array.
+ */
+public class ParticipantStore {
+    public static final int NO_KEY = Integer.MIN_VALUE;
+    private static final String PRESENT = "Present", ABSENT = "Absent";
+
+    private int size;
+    private int[] keys = new int[16];
+    private int[] textAt = new int[16]; // offset of the row's packed Name, Email, Phone
+    private final DictionaryColumn departments = new DictionaryColumn();
+    private final DictionaryColumn colleges = new DictionaryColumn();
+    private final DictionaryColumn years = new DictionaryColumn();
+    private final DictionaryColumn events = new DictionaryColumn();
+    private final List<BitSet> eventMasks = new ArrayList<>(); // per Events code
+    private final BitSet present = new BitSet();
+    private final BitSet absent = new BitSet();
+    private final Map<Integer, String> otherAttendance = new HashMap<>(); // by key
+    private byte[] text = new byte[1024];
+    private int textLength, textGarbage;
+    private final KeyIndex index = new KeyIndex();
+    private final Map<String, Integer> otherIdKeys = new HashMap<>();
+    private final List<String> otherIds = new ArrayList<>();
+    private List<Posting> postings; // per event ID, null until members() is first called
+
+    public int size() {
+        return size;
+    }
+
+    public boolean contains(String id) {
+        return indexOf(id) >= 0;
+    }
+
+    // Row for the given ID, or null
+    public String[] get(String id) {
+        int pos = indexOf(id);
+        return pos < 0 ? null : rowAt(pos);
+    }
+
+    public String[] rowAt(int pos) {
+        Objects.checkIndex(pos, size);
+        String[] row = new String[9];
+        row[0] = idOf(keys[pos]);
+        int off = textAt[pos];
+        for (int c = 1; c <= 3; c++) {
+            int len = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = text[off++];
+                len |= (b & 0x7f) << shift;
+                if (b >= 0) break;
+            }
+            row[c] = new String(text, off, len, StandardCharsets.UTF_8);
+            off += len;
+        }
+        row[4] = departments.valueAt(pos);
+        row[5] = colleges.valueAt(pos);
+        row[6] = years.valueAt(pos);
+        row[7] = events.valueAt(pos);
+        row[8] = present.get(pos) ? PRESENT : absent.get(pos) ? ABSENT : otherAttendance.getOrDefault(keys[pos], "");
+        return row;
+    }
+
+    // Event mask of the row at pos (do not modify)
+    public BitSet maskAt(int pos) {
+        Objects.checkIndex(pos, size);
+        return eventMasks.get(events.codeAt(pos));
+    }
+
+    // Event mask for the given ID, or null
+    public BitSet mask(String id) {
+        int pos = indexOf(id);
+        return pos < 0 ? null : eventMasks.get(events.codeAt(pos));
+    }
+
+    // IDs of the participants registered for the event, in key order (a copy)
+    public List<String> members(int eventId) {
+        List<String> ids = new ArrayList<>();
+        if (eventId < 0) return ids;
+        if (postings == null) buildPostings();
+        Posting p = eventId < postings.size() ? postings.get(eventId) : null;
+        if (p == null) return ids;
+        for (int k = p.numeric.nextSetBit(0); k >= 0; k = p.numeric.nextSetBit(k + 1)) ids.add("P" + k);
+        for (int i = p.other.nextSetBit(0); i >= 0; i = p.other.nextSetBit(i + 1)) ids.add(otherIds.get(i));
+        return ids;
+    }
+
+    // Position of the given ID in file order, or -1
+    public int indexOf(String id) {
+        int key = keyOf(id);
+        return key == NO_KEY ? -1 : index.get(key);
+    }
+
+    // Numeric key of a stored or once-stored ID (P1234 -> 1234), or NO_KEY
+    public int keyOf(String id) {
+        int n = numericKey(id);
+        if (n >= 0) return n;
+        Integer k = otherIdKeys.get(id);
+        return k == null ? NO_KEY : k;
+    }
+
+    // ID for a key from keyOf
+    public String idOf(int key) {
+        return key >= 0 ? "P" + key : otherIds.get(-key - 1);
+    }
+
+    // Insert or replace a row by its ID. Returns the previous row, or null if it was appended.
+    public String[] put(String[] row, BitSet mask) {
+        int key = keyFor(row[0]);
+        int pos = index.get(key);
+        String[] old = null;
+        int oldCode = -1;
+        if (pos < 0) {
+            if (size == keys.length) grow();
+            pos = size++;
+            keys[pos] = key;
+            index.put(key, pos);
+        } else {
+            old = rowAt(pos);
+            oldCode = events.codeAt(pos);
+            textGarbage += recordLength(textAt[pos]);
+        }
+        textAt[pos] = pack(value(row, 1), value(row, 2), value(row, 3));
+        departments.set(pos, value(row, 4));
+        colleges.set(pos, value(row, 5));
+        years.set(pos, value(row, 6));
+        int code = eventCode(value(row, 7), mask);
+        events.set(pos, code);
+        if (postings != null && code != oldCode) repost(key, oldCode < 0 ? new BitSet() : eventMasks.get(oldCode), eventMasks.get(code));
+        String att = value(row, 8);
+        present.set(pos, att.equals(PRESENT));
+        absent.set(pos, att.equals(ABSENT));
+        if (att.equals(PRESENT) || att.equals(ABSENT)) otherAttendance.remove(key);
+        else otherAttendance.put(key, att);
+        compactTextIfDue();
+        return old;
+    }
+
+    // Remove a row by ID; the last row takes its position. Returns the removed row, or null.
+    public String[] remove(String id) {
+        int key = keyOf(id);
+        int pos = key == NO_KEY ? -1 : index.get(key);
+        if (pos < 0) return null;
+        String[] old = rowAt(pos);
+        textGarbage += recordLength(textAt[pos]);
+        if (postings != null) repost(key, eventMasks.get(events.codeAt(pos)), new BitSet());
+        index.remove(key);
+        otherAttendance.remove(key);
+        int last = size - 1;
+        if (pos != last) {
+            keys[pos] = keys[last];
+            textAt[pos] = textAt[last];
+            departments.set(pos, departments.codeAt(last));
+            colleges.set(pos, colleges.codeAt(last));
+            years.set(pos, years.codeAt(last));
+            events.set(pos, events.codeAt(last));
+            present.set(pos, present.get(last));
+            absent.set(pos, absent.get(last));
+            index.put(keys[pos], pos);
+        }
+        present.clear(last);
+        absent.clear(last);
+        size--;
+        compactTextIfDue();
+        return old;
+    }
+
+    /**
+     * Fill an empty store straight from a snapshot's columns: the packed text is adopted as it is,
+     * the dictionary columns are recoded in bulk and no row is built. eventText and eventMask give
+     * the in-memory Events value and mask of each snapshot Events code.
+     */
+    void load(BinarySnapshot snap, String[] eventText, BitSet[] eventMask) {
+        if (size != 0) throw new IllegalStateException("store is not empty");
+        postings = null;
+        int n = snap.size;
+        DictionaryColumn[] columns = {departments, colleges, years, events};
+        for (int k = 0; k < 4; k++) {
+            String[] dict = snap.dicts[k];
+            int[] recode = new int[dict.length];
+            for (int c = 0; c < dict.length; c++) {
+                if (k == 3) {
+                    recode[c] = eventCode(eventText[c], eventMask[c]);
+                } else {
+                    int code = columns[k].codeOf(dict[c]);
+                    recode[c] = code >= 0 ? code : columns[k].add(dict[c]);
+                }
+            }
+            columns[k].fill(snap.codes[k], recode, n);
+        }
+        keys = Arrays.copyOf(snap.keys, Math.max(16, n));
+        textAt = Arrays.copyOf(snap.textAt, keys.length);
+        text = snap.text;
+        textLength = snap.text.length;
+        textGarbage = 0;
+        int maxKey = -1;
+        for (int pos = 0; pos < n; pos++) maxKey = Math.max(maxKey, keys[pos]);
+        index.reserve(maxKey, n);
+        for (int pos = 0; pos < n; pos++) {
+            int key = keys[pos] >= 0 ? keys[pos] : keyFor(snap.otherIds[-keys[pos] - 1]);
+            if (index.get(key) >= 0) {
+                clear();
+                throw new IllegalArgumentException("duplicate ID in snapshot: " + idOf(key));
+            }
+            keys[pos] = key;
+            index.put(key, pos);
+        }
+        present.or(snap.present);
+        absent.or(snap.absent);
+        for (Map.Entry<Integer, String> e : snap.otherAttendance.entrySet()) otherAttendance.put(keys[e.getKey()], e.getValue());
+        size = n;
+    }
+
+    // Key of the row at pos (see keyOf)
+    public int keyAt(int pos) {
+        Objects.checkIndex(pos, size);
+        return keys[pos];
+    }
+
+    public void clear() {
+        size = 0;
+        postings = null;
+        index.clear();
+        present.clear();
+        absent.clear();
+        otherAttendance.clear();
+        text = new byte[1024]; // snapshots may still read the old one
+        textLength = textGarbage = 0;
+    }
+
+    // Read-only view in file order; each row is built when it is read
+    public List<String[]> rows() {
+        return new Rows();
+    }
+
+    private final class Rows extends AbstractList<String[]> implements RandomAccess {
+        public String[] get(int pos) {
+            return rowAt(pos);
+        }
+
+        public int size() {
+            return size;
+        }
+    }
+
+    // Keys of the rows in file order (a copy, 4 bytes per row)
+    public int[] keys() {
+        return Arrays.copyOf(keys, size);
+    }
+
+    // Position of the row with a key from keyOf, or -1
+    public int indexOfKey(int key) {
+        return key == NO_KEY ? -1 : index.get(key);
+    }
+
+    // Row for a key from keyOf, or null once that participant is gone
+    public String[] rowOf(int key) {
+        int pos = key == NO_KEY ? -1 : index.get(key);
+        return pos < 0 ? null : rowAt(pos);
+    }
+
+    /**
+     * Test for keys whose row contains kw (lowercase) in ID, Name, Email, Phone, Department,
+     * College, Year or Events, as String.toLowerCase().contains would tell. Only the packed text is
+     * decoded per row; each dictionary value is lowercased once per matcher. Use it while the
+     * store is not being changed.
+     */
+    public IntPredicate matcher(String kw) {
+        DictionaryColumn[] columns = {departments, colleges, years, events};
+        byte[][] known = new byte[columns.length][]; // per code: 0 not looked at yet, 1 no match, 2 match
+        for (int c = 0; c < columns.length; c++) known[c] = new byte[columns[c].values.size()];
+        return key -> {
+            int pos = indexOfKey(key);
+            if (pos < 0) return false;
+            if (idOf(key).toLowerCase().contains(kw)) return true;
+            for (int c = 0; c < columns.length; c++) {
+                int code = columns[c].codeAt(pos);
+                if (known[c][code] == 0) known[c][code] = (byte) (columns[c].values.get(code).toLowerCase().contains(kw) ? 2 : 1);
+                if (known[c][code] == 2) return true;
+            }
+            int off = textAt[pos];
+            for (int f = 0; f < 3; f++) {
+                int len = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = text[off++];
+                    len |= (b & 0x7f) << shift;
+                    if (b >= 0) break;
+                }
+                if (new String(text, off, len, StandardCharsets.UTF_8).toLowerCase().contains(kw)) return true;
+                off += len;
+            }
+            return false;
+        };
+    }
+
+    // The rows as they are now, readable from any thread without a lock (see Snapshot)
+    public Snapshot snapshot() {
+        return new Snapshot(this);
+    }
+
+    /** Read-only copy of the rows in file order; any thread may read it while the store changes. */
+    public static final class Snapshot extends AbstractList<String[]> implements RandomAccess {
+        private final int size;
+        private final int[] keys, textAt;
+        private final byte[] text; // shared with the store, never written below its length
+        private final DictionaryColumn[] columns; // Department, College, Year, Events
+        private final BitSet present, absent;
+        private final Map<Integer, String> otherAttendance;
+        private final List<String> otherIds;
+        private final Map<String, Integer> otherIdKeys;
+
+        private Snapshot(ParticipantStore s) {
+            size = s.size;
+            keys = Arrays.copyOf(s.keys, size);
+            textAt = Arrays.copyOf(s.textAt, size);
+            text = s.text;
+            columns = new DictionaryColumn[]{s.departments.copy(size), s.colleges.copy(size), s.years.copy(size), s.events.copy(size)};
+            present = (BitSet) s.present.clone();
+            absent = (BitSet) s.absent.clone();
+            otherAttendance = new HashMap<>(s.otherAttendance);
+            otherIds = new ArrayList<>(s.otherIds);
+            otherIdKeys = new HashMap<>(s.otherIdKeys);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public String[] get(int pos) {
+            String[] row = new String[9];
+            for (int c = 0; c < row.length; c++) row[c] = valueAt(pos, c);
+            return row;
+        }
+
+        // One column of the row at pos, decoding nothing else
+        public String valueAt(int pos, int col) {
+            Objects.checkIndex(pos, size);
+            int key = keys[pos];
+            if (col == 0) return key >= 0 ? "P" + key : otherIds.get(-key - 1);
+            if (col <= 3) return textField(text, textAt[pos], col - 1);
+            if (col <= 7) return columns[col - 4].valueAt(pos);
+            return present.get(pos) ? PRESENT : absent.get(pos) ? ABSENT : otherAttendance.getOrDefault(key, "");
+        }
+
+        public int keyAt(int pos) {
+            Objects.checkIndex(pos, size);
+            return keys[pos];
+        }
+
+        // As ParticipantStore.keyOf at the time of the snapshot
+        public int keyOf(String id) {
+            int n = numericKey(id);
+            if (n >= 0) return n;
+            Integer k = otherIdKeys.get(id);
+            return k == null ? NO_KEY : k;
+        }
+    }
+
+    // ---------- Keys ----------
+
+    // n for a canonical "P<n>" (no sign, no leading zeros, fits an int), else -1
+    static int numericKey(String id) {
+        int len = id.length();
+        if (len < 2 || len > 11 || id.charAt(0) != 'P' || (id.charAt(1) == '0' && len > 2)) return -1;
+        long n = 0;
+        for (int i = 1; i < len; i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') return -1;
+            n = n * 10 + (c - '0');
+        }
+        return n > Integer.MAX_VALUE ? -1 : (int) n;
+    }
+
+    // keyOf, assigning a key to an ID not seen before
+    private int keyFor(String id) {
+        int key = keyOf(id);
+        if (key != NO_KEY) return key;
+        otherIds.add(id);
+        key = -otherIds.size();
+        otherIdKeys.put(id, key);
+        return key;
+    }
+
+    // ---------- Columns ----------
+
+    private void grow() {
+        int cap = keys.length + (keys.length >> 1);
+        keys = Arrays.copyOf(keys, cap);
+        textAt = Arrays.copyOf(textAt, cap);
+    }
+
+    private int eventCode(String value, BitSet mask) {
+        int code = events.codeOf(value);
+        if (code >= 0 && eventMasks.get(code).equals(mask)) return code;
+        // new value, or the same text meaning other events (after a rename): a new code
+        eventMasks.add(mask);
+        return events.add(value);
+    }
+
+    private static String value(String[] row, int c) {
+        return c < row.length && row[c] != null ? row[c] : "";
+    }
+
+    // ---------- Event postings ----------
+
+    /** Keys of one event's participants: P<number> keys as they are, other keys k at bit -k-1. */
+    private static final class Posting {
+        final BitSet numeric = new BitSet();
+        final BitSet other = new BitSet();
+
+        void set(int key, boolean member) {
+            if (key >= 0) numeric.set(key, member);
+            else other.set(-key - 1, member);
+        }
+    }
+
+    private void buildPostings() {
+        postings = new ArrayList<>();
+        BitSet none = new BitSet();
+        for (int pos = 0; pos < size; pos++) repost(keys[pos], none, eventMasks.get(events.codeAt(pos)));
+    }
+
+    // Move a participant's key from the postings of its old events to those of its new ones
+    private void repost(int key, BitSet from, BitSet to) {
+        for (int ev = from.nextSetBit(0); ev >= 0; ev = from.nextSetBit(ev + 1)) {
+            if (!to.get(ev) && ev < postings.size() && postings.get(ev) != null) postings.get(ev).set(key, false);
+        }
+        for (int ev = to.nextSetBit(0); ev >= 0; ev = to.nextSetBit(ev + 1)) {
+            if (from.get(ev)) continue;
+            while (postings.size() <= ev) postings.add(null);
+            if (postings.get(ev) == null) postings.set(ev, new Posting());
+            postings.get(ev).set(key, true);
+        }
+    }
+
+    /** Dictionary-coded column: code per row, each distinct value stored once. */
+    private static final class DictionaryColumn {
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> codes = new HashMap<>();
+        private char[] narrow = new char[16];
+        private int[] wide; // replaces narrow once there are more than 65536 values
+
+        int codeOf(String value) {
+            Integer c = codes.get(value);
+            return c == null ? -1 : c;
+        }
+
+        int add(String value) {
+            codes.put(value, values.size());
+            values.add(value);
+            return values.size() - 1;
+        }
+
+        int codeAt(int pos) {
+            return wide != null ? wide[pos] : narrow[pos];
+        }
+
+        String valueAt(int pos) {
+            return values.get(codeAt(pos));
+        }
+
+        void set(int pos, String value) {
+            int c = codeOf(value);
+            set(pos, c >= 0 ? c : add(value));
+        }
+
+        void set(int pos, int code) {
+            if (wide == null && code > Character.MAX_VALUE) {
+                wide = new int[narrow.length];
+                for (int i = 0; i < narrow.length; i++) wide[i] = narrow[i];
+                narrow = null;
+            }
+            int cap = wide != null ? wide.length : narrow.length;
+            if (pos >= cap) {
+                cap = Math.max(pos + 1, cap + (cap >> 1));
+                if (wide != null) wide = Arrays.copyOf(wide, cap);
+                else narrow = Arrays.copyOf(narrow, cap);
+            }
+            if (wide != null) wide[pos] = code;
+            else narrow[pos] = (char) code;
+        }
+
+        // Values and the codes of rows 0..n-1 as they are now, for a Snapshot (which never calls codeOf)
+        DictionaryColumn copy(int n) {
+            DictionaryColumn c = new DictionaryColumn();
+            c.values.addAll(values);
+            if (wide != null) {
+                c.wide = Arrays.copyOf(wide, n);
+                c.narrow = null;
+            } else {
+                c.narrow = Arrays.copyOf(narrow, n);
+            }
+            return c;
+        }
+
+        // Codes of rows 0..n-1 from a snapshot column, through recode (snapshot code -> own code)
+        void fill(BinarySnapshot.Column snapCodes, int[] recode, int n) {
+            boolean identity = true, fitsNarrow = true;
+            for (int c = 0; c < recode.length; c++) {
+                identity &= recode[c] == c;
+                fitsNarrow &= recode[c] <= Character.MAX_VALUE;
+            }
+            if (identity && snapCodes.narrow != null) {
+                // a fresh dictionary numbers values as the snapshot did: take the column as it is
+                narrow = Arrays.copyOf(snapCodes.narrow, Math.max(16, n));
+                wide = null;
+            } else if (fitsNarrow) {
+                narrow = new char[Math.max(16, n)];
+                wide = null;
+                for (int pos = 0; pos < n; pos++) narrow[pos] = (char) recode[snapCodes.get(pos)];
+            } else {
+                wide = new int[Math.max(16, n)];
+                narrow = null;
+                for (int pos = 0; pos < n; pos++) wide[pos] = recode[snapCodes.get(pos)];
+            }
+        }
+
+    }
+
+    // ---------- Packed text ----------
+
+    // Append Name, Email, Phone as (varint length, UTF-8 bytes) x 3; returns the offset
+    private int pack(String name, String email, String phone) {
+        byte[][] parts = {name.getBytes(StandardCharsets.UTF_8), email.getBytes(StandardCharsets.UTF_8),
+                phone.getBytes(StandardCharsets.UTF_8)};
+        int need = 0;
+        for (byte[] p : parts) need += p.length + 5;
+        if (textLength + need > text.length) {
+            text = Arrays.copyOf(text, Math.max(textLength + need, text.length + (text.length >> 2)));
+        }
+        int off = textLength;
+        for (byte[] p : parts) {
+            for (int v = p.length; ; v >>>= 7) {
+                if (v < 0x80) {
+                    text[textLength++] = (byte) v;
+                    break;
+                }
+                text[textLength++] = (byte) (v & 0x7f | 0x80);
+            }
+            System.arraycopy(p, 0, text, textLength, p.length);
+            textLength += p.length;
+        }
+        return off;
+    }
+
+    // Field 0, 1 or 2 (Name, Email, Phone) of the record at off
+    private static String textField(byte[] text, int off, int field) {
+        for (int c = 0; ; c++) {
+            int len = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = text[off++];
+                len |= (b & 0x7f) << shift;
+                if (b >= 0) break;
+            }
+            if (c == field) return new String(text, off, len, StandardCharsets.UTF_8);
+            off += len;
+        }
+    }
+
+    private int recordLength(int off) {
+        int p = off;
+        for (int c = 0; c < 3; c++) {
+            int len = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = text[p++];
+                len |= (b & 0x7f) << shift;
+                if (b >= 0) break;
+            }
+            p += len;
+        }
+        return p - off;
+    }
+
+    // Copy the live records into a new array once dead ones take up more than half
+    private void compactTextIfDue() {
+        if (textGarbage < 64 * 1024 || textGarbage < textLength / 2) return;
+        int live = textLength - textGarbage;
+        byte[] packed = new byte[Math.max(1024, live + (live >> 2))];
+        int len = 0;
+        for (int pos = 0; pos < size; pos++) {
+            int n = recordLength(textAt[pos]);
+            System.arraycopy(text, textAt[pos], packed, len, n);
+            textAt[pos] = len;
+            len += n;
+        }
+        text = packed;
+        textLength = len;
+        textGarbage = 0;
+    }
+
+    // ---------- ID index ----------
+
+    /**
+     * Map from key to position (to a doc number in SearchIndex). IDs are handed out in sequence,
+     * so numeric keys are dense: those index an int[] directly (4 bytes per ID). Keys far past the
+     * others (an imported P999999999) and negative keys go to a hash map.
+     */
+    static final class KeyIndex {
+        private int[] direct = new int[1024]; // position + 1, 0 = absent
+        private int count;
+        private final Map<Integer, Integer> sparse = new HashMap<>();
+
+        int get(int key) {
+            if (key >= 0 && key < direct.length) return direct[key] - 1;
+            Integer p = sparse.get(key);
+            return p == null ? -1 : p;
+        }
+
+        void put(int key, int p) {
+            if (key >= direct.length && key < 2L * count + 4096) grow(key);
+            if (key >= 0 && key < direct.length) {
+                if (direct[key] == 0) count++;
+                direct[key] = p + 1;
+            } else if (sparse.put(key, p) == null) {
+                count++;
+            }
+        }
+
+        // Grow the direct array once for a bulk load of entries keys up to maxKey
+        void reserve(int maxKey, int entries) {
+            if (maxKey >= direct.length && maxKey < 2L * (count + entries) + 4096) grow(maxKey);
+        }
+
+        private void grow(int key) {
+            direct = Arrays.copyOf(direct, (int) Math.max(key + 1L, Math.min(Integer.MAX_VALUE, direct.length + (direct.length >> 1))));
+            // entries the larger array now covers move out of the map
+            for (Iterator<Map.Entry<Integer, Integer>> it = sparse.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Integer, Integer> e = it.next();
+                if (e.getKey() >= 0 && e.getKey() < direct.length) {
+                    direct[e.getKey()] = e.getValue() + 1;
+                    it.remove();
+                }
+            }
+        }
+
+        void remove(int key) {
+            if (key >= 0 && key < direct.length) {
+                if (direct[key] != 0) count--;
+                direct[key] = 0;
+            } else if (sparse.remove(key) != null) {
+                count--;
+            }
+        }
+
+        void clear() {
+            direct = new int[1024];
+            sparse.clear();
+            count = 0;
+        }
+    }
+}
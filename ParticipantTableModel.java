@@ -0,0 +1,186 @@
+import javax.swing.table.AbstractTableModel;
+import javax.swing.table.TableRowSorter;
+import java.util.*;
+
+/**
+ * ParticipantTableModel
+ * Table model over the participants of a ParticipantFileHandler.
+ *
+ * The model shows a ParticipantFileHandler.Snapshot, taken off the EDT, and decodes a cell from
+ * it only when the JTable pulls that cell. Reading the snapshot takes no lock, so painting and
+ * sorting never wait for a writer; a table over a million participants costs about 24 MB (the
+ * snapshot's columns and two ints per row) rather than a String[] per participant. Rows saved
+ * since the snapshot are passed in through rowInserted, rowUpdated and rowDeleted, which fire
+ * row-level events instead of rebuilding the whole table; anything else changed since (another
+ * desk, an event rename) shows from the next setSnapshot. All methods must be called on the EDT.
+ */
+public class ParticipantTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    public static final String[] COLUMNS = {"ID","Name","Email","Phone","Department","College","Year","Events","Attendance"};
+
+    // P999 before P1000
+    private static final Comparator<String> ID_ORDER = Comparator.comparingInt(String::length).thenComparing(Comparator.naturalOrder());
+    // the decoded sort column holds one instance per distinct value, so most equal values are the same object
+    private static final Comparator<String> TEXT_ORDER = (a, b) -> a == b ? 0 : String.CASE_INSENSITIVE_ORDER.compare(a, b);
+
+    private final transient ParticipantFileHandler handler;
+    private transient ParticipantFileHandler.Snapshot snapshot;
+    private int[] keys = new int[0]; // participant key of each row (see ParticipantFileHandler.keyOf)
+    private int[] at = new int[0];   // position of each row in the snapshot, -1 for rows added since
+    private int size;
+    private final Map<Integer, String[]> changed = new HashMap<>(); // rows saved since the snapshot, by key
+    private String[] sortValues; // the sorted column, decoded once per sort
+    private int sortColumn = -1;
+
+    public ParticipantTableModel(ParticipantFileHandler handler) {
+        this.handler = handler;
+    }
+
+    public int getRowCount() {
+        return size;
+    }
+
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    public String getColumnName(int col) {
+        return COLUMNS[col];
+    }
+
+    public Object getValueAt(int row, int col) {
+        Objects.checkIndex(row, size);
+        if (col == sortColumn) return sortValues[row];
+        String[] r = changed.isEmpty() ? null : changed.get(keys[row]);
+        if (r != null) return col < r.length ? r[col] : null;
+        return snapshot.valueAt(at[row], col);
+    }
+
+    public String[] getRow(int row) {
+        Objects.checkIndex(row, size);
+        String[] r = changed.isEmpty() ? null : changed.get(keys[row]);
+        return r != null ? r : snapshot.row(at[row]);
+    }
+
+    // Key of the participant shown in the given row, without decoding it
+    public int keyAt(int row) {
+        Objects.checkIndex(row, size);
+        return keys[row];
+    }
+
+    /**
+     * Sorter for a table over this model. The default one compares through a Collator, which takes
+     * over half a second per sort at 100k rows; plain case-insensitive comparison keeps a sort well
+     * under the EDT budget, and the sorted column is decoded once per sort rather than on every
+     * comparison. Sorting on updates keeps an edited row in place by itself, where the default
+     * marks the view unsorted and the next insert or delete re-sorts every row.
+     */
+    public TableRowSorter<ParticipantTableModel> createSorter() {
+        TableRowSorter<ParticipantTableModel> sorter = new TableRowSorter<ParticipantTableModel>(this) {
+            // a new sort order sorts without going through sort()
+            @Override
+            public void setSortKeys(List<? extends SortKey> sortKeys) {
+                decodeSortColumn(sortKeys == null || sortKeys.isEmpty() ? -1 : sortKeys.get(0).getColumn());
+                try {
+                    super.setSortKeys(sortKeys);
+                } finally {
+                    decodeSortColumn(-1);
+                }
+            }
+
+            @Override
+            public void sort() {
+                List<? extends SortKey> sortKeys = getSortKeys();
+                decodeSortColumn(sortKeys.isEmpty() ? -1 : sortKeys.get(0).getColumn());
+                try {
+                    super.sort();
+                } finally {
+                    decodeSortColumn(-1);
+                }
+            }
+        };
+        sorter.setComparator(0, ID_ORDER);
+        for (int c = 1; c < COLUMNS.length; c++) sorter.setComparator(c, TEXT_ORDER);
+        sorter.setSortsOnUpdates(true);
+        return sorter;
+    }
+
+    // Replace the whole content (full reload), from ParticipantFileHandler.participantSnapshot()
+    public void setSnapshot(ParticipantFileHandler.Snapshot snap) {
+        snapshot = snap;
+        size = snap.size();
+        keys = new int[size];
+        at = new int[size];
+        for (int pos = 0; pos < size; pos++) {
+            keys[pos] = snap.keyAt(pos);
+            at[pos] = pos;
+        }
+        changed.clear();
+        fireTableDataChanged();
+    }
+
+    public void rowInserted(String[] row) {
+        int key = keyOf(row[0]);
+        if (key == ParticipantStore.NO_KEY) return;
+        if (indexOfKey(key) >= 0) { rowUpdated(row); return; }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(16, size + (size >> 1)));
+            at = Arrays.copyOf(at, keys.length);
+        }
+        int pos = size++;
+        keys[pos] = key;
+        at[pos] = -1;
+        changed.put(key, row);
+        fireTableRowsInserted(pos, pos);
+    }
+
+    // Swap in the new version of a row (matched by ID); rows not in view are ignored
+    public void rowUpdated(String[] row) {
+        int key = keyOf(row[0]);
+        int pos = indexOfKey(key);
+        if (pos < 0) return;
+        changed.put(key, row);
+        fireTableRowsUpdated(pos, pos);
+    }
+
+    public void rowDeleted(String id) {
+        int key = keyOf(id);
+        int pos = indexOfKey(key);
+        if (pos < 0) return;
+        System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+        System.arraycopy(at, pos + 1, at, pos, size - pos - 1);
+        size--;
+        changed.remove(key);
+        fireTableRowsDeleted(pos, pos);
+    }
+
+    // Values of one column for the sort in progress, or none (col -1)
+    private void decodeSortColumn(int col) {
+        sortColumn = -1; // getValueAt below decodes
+        sortValues = null;
+        if (col < 0 || size == 0) return;
+        String[] values = new String[size];
+        Map<String, String> distinct = new HashMap<>();
+        for (int row = 0; row < size; row++) {
+            String v = (String) getValueAt(row, col);
+            values[row] = v == null ? null : distinct.computeIfAbsent(v, x -> x);
+        }
+        sortValues = values;
+        sortColumn = col;
+    }
+
+    // From the snapshot, which knows every P<number> ID; any other ID registered since asks the
+    // handler (rare: such IDs only come from imports, which reload the table)
+    private int keyOf(String id) {
+        int key = snapshot == null ? ParticipantStore.NO_KEY : snapshot.keyOf(id);
+        return key != ParticipantStore.NO_KEY ? key : handler.keyOf(id);
+    }
+
+    // Row showing the key, or -1; a scan over the int keys (about a millisecond per million rows)
+    private int indexOfKey(int key) {
+        if (key == ParticipantStore.NO_KEY) return -1;
+        for (int i = 0; i < size; i++) if (keys[i] == key) return i;
+        return -1;
+    }
+}
@@ -0,0 +1,174 @@
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * SearchIndex
+ * Trigram inverted index over the searchable participant columns
+ * (ID, Name, Email, Phone, Department, College, Year, Events).
+ *
+ * Every indexed row version gets an internal doc number; posting lists are int arrays that only
+ * ever grow by appending, so they stay sorted. Updates add a new doc and retire the old one,
+ * deletes just retire; retired docs are skipped at query time and purged by a rebuild once they
+ * outnumber the live ones. A query intersects the postings of its trigrams, starting from the
+ * shortest list, and confirms candidates against the current row in the owner's store
+ * (ParticipantStore.matcher, which reads the packed text); queries shorter than three characters
+ * check every row that way. The index keeps no text or IDs of its own: per row, a key and a doc
+ * number (8 bytes) besides the postings. Results are participant keys.
+ *
+ * The postings are most of its size: about 300 bytes per participant for the synthetic rows of
+ * SmartRegBenchmark memory, over twice the rest of an open handler. The handler builds the index
+ * on the first search, so a desk that never searches does not pay for it.
+ */
+public class SearchIndex {
+    // columns 0..7; attendance is not searchable
+    private static final int INDEXED_COLUMNS = 8;
+
+    private final IntFunction<String[]> rowOf; // current row for a participant key, or null
+    private final Function<String, IntPredicate> matcher; // lowercased keyword -> keys whose row contains it
+    private final Map<Long, Postings> postings = new HashMap<>();
+    private int[] keys = new int[1024]; // participant key of each doc, NO_KEY once retired
+    private int docs;
+    private final ParticipantStore.KeyIndex docOf = new ParticipantStore.KeyIndex();
+    private int live, dead;
+
+    // Growable sorted int list
+    private static final class Postings {
+        int[] docs = new int[4];
+        int size;
+
+        void add(int doc) {
+            if (size == docs.length) docs = Arrays.copyOf(docs, size * 2);
+            docs[size++] = doc;
+        }
+    }
+
+    // The owner's rows as they are now: rowOf (ParticipantStore.rowOf) for rebuilds, matcher
+    // (ParticipantStore.matcher) to confirm search candidates
+    public SearchIndex(IntFunction<String[]> rowOf, Function<String, IntPredicate> matcher) {
+        this.rowOf = rowOf;
+        this.matcher = matcher;
+    }
+
+    public int size() {
+        return live;
+    }
+
+    // Index a new or changed row under its participant key
+    public void put(int key, String[] row) {
+        remove(key);
+        add(key, row);
+    }
+
+    private void add(int key, String[] row) {
+        if (docs == keys.length) keys = Arrays.copyOf(keys, docs * 2);
+        int doc = docs++;
+        keys[doc] = key;
+        docOf.put(key, doc);
+        live++;
+        Set<Long> seen = new HashSet<>();
+        for (int c = 0; c < INDEXED_COLUMNS && c < row.length; c++) {
+            if (row[c] == null) continue;
+            String text = row[c].toLowerCase();
+            for (int i = 0; i + 3 <= text.length(); i++) {
+                long g = gram(text, i);
+                if (seen.add(g)) postings.computeIfAbsent(g, k -> new Postings()).add(doc);
+            }
+        }
+    }
+
+    public void remove(int key) {
+        int doc = docOf.get(key);
+        if (doc < 0) return;
+        docOf.remove(key);
+        keys[doc] = ParticipantStore.NO_KEY;
+        live--;
+        dead++;
+        if (dead > 1024 && dead > live) rebuild();
+    }
+
+    public void clear() {
+        postings.clear();
+        keys = new int[1024];
+        docs = live = dead = 0;
+        docOf.clear();
+    }
+
+    /** Keys of the rows whose indexed columns contain keyword (case-insensitive), in no particular order. */
+    public int[] search(String keyword) {
+        String kw = keyword.toLowerCase();
+        IntPredicate contains = matcher.apply(kw);
+        if (kw.length() < 3) {
+            int[] res = new int[live];
+            int n = 0;
+            for (int d = 0; d < docs; d++) {
+                if (keys[d] != ParticipantStore.NO_KEY && contains.test(keys[d])) res[n++] = keys[d];
+            }
+            return Arrays.copyOf(res, n);
+        }
+        List<Postings> lists = new ArrayList<>();
+        for (int i = 0; i + 3 <= kw.length(); i++) {
+            Postings p = postings.get(gram(kw, i));
+            if (p == null) return new int[0];
+            lists.add(p);
+        }
+        lists.sort(Comparator.comparingInt(p -> p.size));
+        int[] cand = Arrays.copyOf(lists.get(0).docs, lists.get(0).size);
+        int n = cand.length;
+        for (int l = 1; l < lists.size() && n > 0; l++) n = intersect(cand, n, lists.get(l));
+        // a three-character keyword is its only trigram, so every live candidate contains it
+        int found = 0;
+        for (int i = 0; i < n; i++) {
+            int key = keys[cand[i]];
+            if (key != ParticipantStore.NO_KEY && (kw.length() == 3 || contains.test(key))) cand[found++] = key;
+        }
+        return Arrays.copyOf(cand, found);
+    }
+
+    /**
+     * Narrow an earlier result: IDs of the given rows that still match keyword, in their order.
+     * Only valid when keyword contains the query that produced the rows and nothing changed since.
+     */
+    public static List<String> filter(List<String[]> within, String keyword) {
+        List<String> res = new ArrayList<>();
+        String kw = keyword.toLowerCase();
+        for (String[] r : within) if (matches(r, kw)) res.add(r[0]);
+        return res;
+    }
+
+    // Drop retired docs by re-indexing the live rows
+    private void rebuild() {
+        int[] liveKeys = new int[live];
+        int n = 0;
+        for (int d = 0; d < docs; d++) if (keys[d] != ParticipantStore.NO_KEY) liveKeys[n++] = keys[d];
+        clear();
+        for (int key : liveKeys) {
+            String[] row = rowOf.apply(key);
+            if (row != null) add(key, row);
+        }
+    }
+
+    // kw is lowercased; a match never spans two columns
+    private static boolean matches(String[] row, String kw) {
+        for (int c = 0; c < INDEXED_COLUMNS && c < row.length; c++) {
+            if (row[c] != null && row[c].toLowerCase().contains(kw)) return true;
+        }
+        return false;
+    }
+
+    // Keep the first n entries of cand that also appear in p; both are sorted. Returns the new count.
+    private static int intersect(int[] cand, int n, Postings p) {
+        int out = 0, j = 0;
+        for (int i = 0; i < n && j < p.size; i++) {
+            int d = cand[i];
+            while (j < p.size && p.docs[j] < d) j++;
+            if (j < p.size && p.docs[j] == d) cand[out++] = d;
+        }
+        return out;
+    }
+
+    private static long gram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+}
@@ -0,0 +1,1073 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * SmartRegBenchmark
+ * Command-line benchmarks for the persistence and search code paths.
+ *
+ * Each benchmark is warmed up, then timed call by call for a fixed time budget, reporting
+ * throughput, latency percentiles and bytes allocated per call (HotSpot thread allocation
+ * counters). Participant data is synthetic and generated per size into a scratch directory.
+ * Results are appended to a JSON file (one object per line) so runs can be diffed between releases.
+ *
+ * Usage:
+ *   java SmartRegBenchmark csv [megabytes]
+ *   java SmartRegBenchmark handlers [--sizes 1000,10000,100000] [--journaled] [--out bench-results.json]
+ *   java SmartRegBenchmark stress [--rows 2000] [--threads 8] [--ops 500] [--processes 1] [--journaled]
+ *   java SmartRegBenchmark server [--rows 10000] [--clients 16] [--seconds 3] [--out bench-results.json]
+ *   java SmartRegBenchmark checkin [--rows 100000] [--producers 16] [--seconds 3] [--commit-ms 10] [--out bench-results.json]
+ *   java SmartRegBenchmark attendance [--records 2000000] [--events 20] [--out bench-results.json]
+ *   java SmartRegBenchmark import [--rows 500000] [--workers 1,2,4] [--journaled] [--out bench-results.json]
+ *   java SmartRegBenchmark edt [--rows 100000] [--budget-ms 100] [--out bench-results.json]
+ *   java SmartRegBenchmark memory [--rows 1000000] [--out bench-results.json]
+ * The csv mode exits with status 1 when the tokenizer misses its throughput target.
+ * The stress mode hammers one handler from many threads (and, with --processes, from several JVMs
+ * sharing the files), then reloads and checks that no registration or event update was lost;
+ * it exits with status 1 on any mismatch.
+ * The server mode load-tests SmartRegServer on localhost with concurrent HTTP clients and reports
+ * requests/s and latency percentiles per endpoint. The checkin mode drives CheckInPipeline directly
+ * from producer threads that keep many check-ins in flight (like a crowd at several doors) and
+ * reports sustained check-ins/s and the submit-to-durable latency. The attendance mode fills an
+ * AttendanceStore with millions of synthetic check-ins over three days and times the time-series queries.
+ * The import mode imports one synthetic sheet with ParticipantFileHandler.importCSV and with
+ * ImportPipeline at each worker count (default: 1, 2, 4 and all cores) and reports rows/s; it exits
+ * with status 1 if the pipeline stores different rows or reports different errors than importCSV.
+ * The edt mode replays the common GUI actions against a table of --rows participants with the
+ * EdtWatchdog installed: the handler part runs on the calling thread (as in BackgroundRunner), the
+ * table update and a repaint of one screen run on the EDT and are timed. It exits with status 1
+ * if the 99th percentile of any action's EDT time is over the budget; stalls the watchdog caught
+ * (a single GC pause can cause one) are printed with the EDT stack.
+ * The memory mode measures the heap (live bytes after a full GC) of --rows participants held as
+ * List<String[]> straight from the CSV parser, in a ParticipantStore, and in a whole open
+ * ParticipantFileHandler, and what the search index built by the first search adds to that; it
+ * exits with status 1 if the store is not at least 5x smaller than the list. Give it heap for the
+ * list (about 550 bytes per row).
+ */
+public class SmartRegBenchmark {
+    // CsvTokenizer must sustain at least this much on participant-shaped data
+    public static final double CSV_TARGET_MB_PER_S = 100.0;
+
+    private static final long WARMUP_NANOS = 500_000_000L;
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+    private static final int MIN_CALLS = 3;
+    private static final int MAX_CALLS = 200_000;
+
+    // Swallows export output, so export benchmarks time the engine rather than the disk
+    static final java.nio.channels.WritableByteChannel DISCARD = new java.nio.channels.WritableByteChannel() {
+        public int write(java.nio.ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            return n;
+        }
+
+        public boolean isOpen() {
+            return true;
+        }
+
+        public void close() {
+        }
+    };
+
+    /** One benchmarked call; i counts calls from 0 so operations can vary their target. */
+    interface Op {
+        void run(int i) throws Exception;
+    }
+
+    /** Measurements of one benchmark at one data size. */
+    static class Result {
+        String benchmark;
+        int rows;
+        String mode;
+        int calls;
+        double opsPerSec, meanUs, p50Us, p99Us, maxUs, allocBytesPerOp;
+
+        String toJson() {
+            return String.format(Locale.ROOT,
+                    "{\"benchmark\":\"%s\",\"rows\":%d,\"mode\":\"%s\",\"calls\":%d,\"opsPerSec\":%.2f,"
+                            + "\"meanUs\":%.2f,\"p50Us\":%.2f,\"p99Us\":%.2f,\"maxUs\":%.2f,\"allocBytesPerOp\":%.0f}",
+                    benchmark, rows, mode, calls, opsPerSec, meanUs, p50Us, p99Us, maxUs, allocBytesPerOp);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String mode = args.length > 0 ? args[0] : "csv";
+        if (mode.equals("csv")) {
+            int mb = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+            System.exit(csvThroughput(mb) ? 0 : 1);
+        }
+        if (mode.equals("handlers")) {
+            int[] sizes = {1000, 10000, 100000};
+            boolean journaled = false;
+            String out = "bench-results.json";
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--sizes")) sizes = parseSizes(args[++i]);
+                else if (args[i].equals("--journaled")) journaled = true;
+                else if (args[i].equals("--out")) out = args[++i];
+            }
+            handlers(sizes, journaled, out);
+            return;
+        }
+        if (mode.equals("stress")) {
+            int rows = 2000, threads = 8, ops = 500, processes = 1;
+            boolean journaled = false;
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--rows")) rows = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--threads")) threads = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--ops")) ops = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--processes")) processes = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--journaled")) journaled = true;
+            }
+            System.exit(stress(rows, threads, ops, processes, journaled) ? 0 : 1);
+        }
+        if (mode.equals("server")) {
+            int rows = 10000, clients = 16, seconds = 3;
+            String out = "bench-results.json";
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--rows")) rows = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--clients")) clients = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--seconds")) seconds = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--out")) out = args[++i];
+            }
+            server(rows, clients, seconds, out);
+            return;
+        }
+        if (mode.equals("checkin")) {
+            int rows = 100000, producers = 16, seconds = 3;
+            long commitMs = CheckInPipeline.DEFAULT_COMMIT_MILLIS;
+            String out = "bench-results.json";
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--rows")) rows = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--producers")) producers = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--seconds")) seconds = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--commit-ms")) commitMs = Long.parseLong(args[++i]);
+                else if (args[i].equals("--out")) out = args[++i];
+            }
+            checkIn(rows, producers, seconds, commitMs, out);
+            return;
+        }
+        if (mode.equals("attendance")) {
+            int records = 2_000_000, eventCount = 20;
+            String out = "bench-results.json";
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--records")) records = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--events")) eventCount = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--out")) out = args[++i];
+            }
+            attendance(records, eventCount, out);
+            return;
+        }
+        if (mode.equals("import")) {
+            int rows = 500_000;
+            int cores = Runtime.getRuntime().availableProcessors();
+            int[] workers = cores > 4 ? new int[]{1, 2, 4, cores} : new int[]{1, 2, 4};
+            boolean journaled = false;
+            String out = "bench-results.json";
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--rows")) rows = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--workers")) workers = parseSizes(args[++i]);
+                else if (args[i].equals("--journaled")) journaled = true;
+                else if (args[i].equals("--out")) out = args[++i];
+            }
+            System.exit(importThroughput(rows, workers, journaled, out) ? 0 : 1);
+        }
+        if (mode.equals("edt")) {
+            int rows = 100_000;
+            long budgetMs = EdtWatchdog.DEFAULT_THRESHOLD_MILLIS;
+            String out = "bench-results.json";
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--rows")) rows = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--budget-ms")) budgetMs = Long.parseLong(args[++i]);
+                else if (args[i].equals("--out")) out = args[++i];
+            }
+            System.exit(edtResponsiveness(rows, budgetMs, out) ? 0 : 1);
+        }
+        if (mode.equals("memory")) {
+            int rows = 1_000_000;
+            String out = "bench-results.json";
+            for (int i = 1; i < args.length; i++) {
+                if (args[i].equals("--rows")) rows = Integer.parseInt(args[++i]);
+                else if (args[i].equals("--out")) out = args[++i];
+            }
+            System.exit(memory(rows, out) ? 0 : 1);
+        }
+        if (mode.equals("stress-worker")) { // child process of a multi-process stress run
+            stressWorker(args[1], Boolean.parseBoolean(args[2]), true, Integer.parseInt(args[3]),
+                    Integer.parseInt(args[4]), Integer.parseInt(args[5]), Integer.parseInt(args[6]), Paths.get(args[7]));
+            return;
+        }
+        System.err.println("Usage: java SmartRegBenchmark csv [megabytes]");
+        System.err.println("       java SmartRegBenchmark handlers [--sizes 1000,10000] [--journaled] [--out file.json]");
+        System.err.println("       java SmartRegBenchmark stress [--rows N] [--threads T] [--ops N] [--processes P] [--journaled]");
+        System.err.println("       java SmartRegBenchmark server [--rows N] [--clients C] [--seconds S] [--out file.json]");
+        System.err.println("       java SmartRegBenchmark checkin [--rows N] [--producers P] [--seconds S] [--commit-ms MS] [--out file.json]");
+        System.err.println("       java SmartRegBenchmark attendance [--records N] [--events E] [--out file.json]");
+        System.err.println("       java SmartRegBenchmark import [--rows N] [--workers 1,2,4] [--journaled] [--out file.json]");
+        System.err.println("       java SmartRegBenchmark edt [--rows N] [--budget-ms MS] [--out file.json]");
+        System.err.println("       java SmartRegBenchmark memory [--rows N] [--out file.json]");
+        System.exit(2);
+    }
+
+    // ---------- Handler benchmarks ----------
+
+    static void handlers(int[] sizes, boolean journaled, String outPath) throws Exception {
+        String mode = journaled ? "journaled" : "plain";
+        Path dir = Files.createTempDirectory("smartreg-bench");
+        try (PrintWriter out = new PrintWriter(new FileWriter(outPath, true))) {
+            for (int size : sizes) {
+                Path csv = dir.resolve("participants-" + size + ".csv");
+                writeSyntheticCsv(csv, size);
+                String path = csv.toString();
+                Random rnd = new Random(7);
+
+                report(out, measure("load", size, mode, i -> new ParticipantFileHandler(path, journaled).close()));
+                ParticipantFileHandler h = new ParticipantFileHandler(path, journaled);
+                h.getBackupManager().setRetain(2);
+                String[] terms = {"kumar", "user42", "college 7", "9123", "dance battle", "p1500"};
+                report(out, measure("loadParticipants", size, mode, i -> h.loadParticipants()));
+                report(out, measure("search", size, mode, i -> h.search(terms[i % terms.length])));
+                report(out, measure("findById", size, mode, i -> h.findById("P" + (1000 + rnd.nextInt(size)))));
+                report(out, measure("edit", size, mode, i -> {
+                    String id = "P" + (1000 + rnd.nextInt(size));
+                    String[] r = h.findById(id);
+                    h.edit(id, r[1], r[2], r[3], r[4], r[5], r[6], r[7], null);
+                }));
+                report(out, measure("markAttendance", size, mode,
+                        i -> h.markAttendance("P" + (1000 + rnd.nextInt(size)), (i & 1) == 0 ? "Present" : "Absent")));
+                report(out, measure("analytics", size, mode, i -> h.analytics()));
+                report(out, measure("updateParticipantsForEvent", size, mode,
+                        i -> h.updateParticipantsForEvent((i & 1) == 0 ? "Quiz" : "Trivia", (i & 1) == 0 ? "Trivia" : "Quiz")));
+                report(out, measure("exportTo", size, mode, i -> h.exportTo(dir.resolve("export.csv").toString())));
+                report(out, measure("export.event", size, mode, i -> h.export(new ParticipantExport().event("Robotics"), DISCARD)));
+                report(out, measure("export.projectedGzip", size, mode,
+                        i -> h.export(new ParticipantExport().columns("ID", "Name", "Email").gzip(true), DISCARD)));
+                h.close();
+
+                // lookup-only stations: the same reads against the memory-mapped file
+                report(out, measure("mapped.open", size, "mapped", i -> ParticipantFileHandler.openReadOnly(path).close()));
+                ParticipantFileHandler ro = ParticipantFileHandler.openReadOnly(path);
+                report(out, measure("mapped.findById", size, "mapped", i -> ro.findById("P" + (1000 + rnd.nextInt(size)))));
+                report(out, measure("mapped.search", size, "mapped", i -> ro.search(terms[i % terms.length])));
+                ro.close();
+            }
+
+            String events = dir.resolve("events.csv").toString();
+            EventFileHandler ev = new EventFileHandler(events);
+            for (int i = 0; i < 50; i++) ev.addEvent("Event " + i);
+            report(out, measure("events.loadEvents", 50, mode, i -> ev.loadEvents()));
+            report(out, measure("events.addRemove", 50, mode, i -> { ev.addEvent("Tmp"); ev.removeEvent("Tmp"); }));
+            report(out, measure("events.rename", 50, mode,
+                    i -> ev.renameEvent((i & 1) == 0 ? "Event 7" : "Event 7b", (i & 1) == 0 ? "Event 7b" : "Event 7")));
+        } finally {
+            deleteTree(dir);
+        }
+        System.out.println("Results appended to " + outPath);
+    }
+
+    static Result measure(String name, int rows, String mode, Op op) throws Exception {
+        long end = System.nanoTime() + WARMUP_NANOS;
+        for (int i = 0; i < MIN_CALLS || (System.nanoTime() < end && i < MAX_CALLS); i++) op.run(i);
+
+        long[] lat = new long[1024];
+        int n = 0;
+        long alloc0 = allocatedBytes();
+        long start = System.nanoTime();
+        end = start + MEASURE_NANOS;
+        while (n < MIN_CALLS || (System.nanoTime() < end && n < MAX_CALLS)) {
+            long t0 = System.nanoTime();
+            op.run(n);
+            if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+            lat[n++] = System.nanoTime() - t0;
+        }
+        long elapsed = System.nanoTime() - start;
+        long alloc = allocatedBytes() - alloc0;
+        return summarize(name, rows, mode, lat, n, elapsed, alloc < 0 ? -1 : (double) alloc / n);
+    }
+
+    // Throughput and percentiles of n latencies collected over elapsed nanoseconds (sorts lat)
+    private static Result summarize(String name, int rows, String mode, long[] lat, int n, long elapsed, double allocPerOp) {
+        Arrays.sort(lat, 0, n);
+        Result r = new Result();
+        r.benchmark = name;
+        r.rows = rows;
+        r.mode = mode;
+        r.calls = n;
+        r.opsPerSec = n / (elapsed / 1e9);
+        long sum = 0;
+        for (int i = 0; i < n; i++) sum += lat[i];
+        r.meanUs = sum / 1e3 / n;
+        r.p50Us = lat[(int) ((n - 1) * 0.50)] / 1e3;
+        r.p99Us = lat[(int) ((n - 1) * 0.99)] / 1e3;
+        r.maxUs = lat[n - 1] / 1e3;
+        r.allocBytesPerOp = allocPerOp;
+        return r;
+    }
+
+    private static void report(PrintWriter out, Result r) {
+        System.out.printf(Locale.ROOT, "%-28s rows=%-8d %10.1f ops/s  p50=%10.1fus  p99=%10.1fus  alloc=%12.0fB/op%n",
+                r.benchmark, r.rows, r.opsPerSec, r.p50Us, r.p99Us, r.allocBytesPerOp);
+        out.println(r.toJson());
+        out.flush();
+    }
+
+    // Bytes allocated by this thread so far, or -1 when the JVM does not expose it
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (mx instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) mx).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    // ---------- HTTP server load test ----------
+
+    /**
+     * Start SmartRegServer on an ephemeral localhost port over synthetic data and drive each
+     * endpoint from concurrent clients. One call is one HTTP request; the batch benchmark sends
+     * 20 attendance updates per request.
+     */
+    static void server(int rows, int clients, int seconds, String outPath) throws Exception {
+        Path dir = Files.createTempDirectory("smartreg-server");
+        SmartRegServer server = null;
+        try (PrintWriter out = new PrintWriter(new FileWriter(outPath, true))) {
+            writeSyntheticCsv(dir.resolve("participants.csv"), rows);
+            EventFileHandler ev = new EventFileHandler(dir.resolve("events.csv").toString());
+            ParticipantFileHandler h = new ParticipantFileHandler(dir.resolve("participants.csv").toString(), true, false, ev.dictionary());
+            h.getBackupManager().setRetain(2);
+            CheckInPipeline checkIns = new CheckInPipeline(h, ev.dictionary(), dir.resolve("attendance.dat").toString());
+            server = new SmartRegServer(h, ev, checkIns, new InetSocketAddress("127.0.0.1", 0), clients * 2);
+            server.start();
+            String base = "http://127.0.0.1:" + server.port();
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            String mode = "http-" + clients + "c";
+            long nanos = seconds * 1_000_000_000L;
+            String[] terms = {"kumar", "user42", "college 7", "9123", "dance battle"};
+
+            report(out, loadTest("server.get", rows, mode, clients, nanos, (rnd, i) ->
+                    send(client, HttpRequest.newBuilder(URI.create(base + "/participants/P" + (1000 + rnd.nextInt(rows)))).build())));
+            report(out, loadTest("server.search", rows, mode, clients, nanos, (rnd, i) ->
+                    send(client, HttpRequest.newBuilder(URI.create(base + "/participants?limit=20&q="
+                            + terms[i % terms.length].replace(" ", "+"))).build())));
+            report(out, loadTest("server.attendance", rows, mode, clients, nanos, (rnd, i) ->
+                    send(client, post(base + "/attendance", "{\"id\":\"P" + (1000 + rnd.nextInt(rows)) + "\",\"status\":\""
+                            + ((i & 1) == 0 ? "Present" : "Absent") + "\"}"))));
+            report(out, loadTest("server.checkin", rows, mode, clients, nanos, (rnd, i) -> {
+                String id = "P" + (1000 + rnd.nextInt(rows));
+                String event = h.findById(id)[7].split(" \\| ")[0];
+                send(client, post(base + "/checkin", "{\"id\":\"" + id + "\",\"event\":\"" + event + "\"}"));
+            }));
+            report(out, loadTest("server.register", rows, mode, clients, nanos, (rnd, i) -> {
+                long n = rnd.nextLong() & Long.MAX_VALUE;
+                send(client, post(base + "/participants", "{\"name\":\"Load " + n + "\",\"email\":\"load" + n
+                        + "@mail.com\",\"phone\":\"" + n + "\",\"department\":\"CSE\",\"college\":\"College 1\",\"year\":\"2\","
+                        + "\"events\":[\"Coding\"]}"));
+            }));
+            report(out, loadTest("server.batch20", rows, mode, clients, nanos, (rnd, i) -> {
+                StringBuilder sb = new StringBuilder("[");
+                for (int k = 0; k < 20; k++) {
+                    if (k > 0) sb.append(',');
+                    sb.append("{\"op\":\"attendance\",\"id\":\"P").append(1000 + rnd.nextInt(rows)).append("\",\"status\":\"Present\"}");
+                }
+                send(client, post(base + "/batch", sb.append(']').toString()));
+            }));
+            report(out, loadTest("server.analytics", rows, mode, clients, nanos, (rnd, i) ->
+                    send(client, HttpRequest.newBuilder(URI.create(base + "/analytics")).build())));
+        } finally {
+            if (server != null) server.stop();
+            deleteTree(dir);
+        }
+        System.out.println("Results appended to " + outPath);
+    }
+
+    // ---------- Check-in pipeline ----------
+
+    static void checkIn(int rows, int producers, int seconds, long commitMs, String outPath) throws Exception {
+        final int inFlight = 256; // outstanding check-ins per producer
+        Path dir = Files.createTempDirectory("smartreg-checkin");
+        try (PrintWriter out = new PrintWriter(new FileWriter(outPath, true))) {
+            writeSyntheticCsv(dir.resolve("participants.csv"), rows);
+            EventFileHandler ev = new EventFileHandler(dir.resolve("events.csv").toString());
+            ParticipantFileHandler h = new ParticipantFileHandler(dir.resolve("participants.csv").toString(), true, false, ev.dictionary());
+            h.getBackupManager().setRetain(2);
+            CheckInPipeline pipeline = new CheckInPipeline(h, ev.dictionary(), dir.resolve("attendance.dat").toString(), commitMs);
+            String[] ids = new String[rows], firstEvent = new String[rows];
+            for (int i = 0; i < rows; i++) {
+                ids[i] = "P" + (1000 + i);
+                firstEvent[i] = h.findById(ids[i])[7].split(" \\| ")[0];
+            }
+
+            long nanos = seconds * 1_000_000_000L;
+            long start = System.nanoTime() + WARMUP_NANOS, end = start + nanos;
+            long[][] lats = new long[producers][];
+            int[] counts = new int[producers];
+            List<Thread> threads = new ArrayList<>();
+            List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+            for (int t = 0; t < producers; t++) {
+                int producer = t;
+                Thread th = new Thread(() -> {
+                    Random rnd = new Random(producer);
+                    java.util.concurrent.Semaphore slots = new java.util.concurrent.Semaphore(inFlight);
+                    long[][] lat = {new long[4096]};
+                    int[] n = {0};
+                    try {
+                        while (true) {
+                            slots.acquire();
+                            long t0 = System.nanoTime();
+                            if (t0 >= end) break;
+                            int p = rnd.nextInt(rows);
+                            pipeline.submit(ids[p], firstEvent[p], (p & 7) == 0 ? "Absent" : "Present").whenComplete((o, e) -> {
+                                long t1 = System.nanoTime();
+                                if (o != CheckInPipeline.Outcome.CHECKED_IN) errors.add(new IllegalStateException("check-in " + o, e));
+                                else if (t0 >= start) {
+                                    synchronized (lat) {
+                                        if (n[0] == lat[0].length) lat[0] = Arrays.copyOf(lat[0], n[0] * 2);
+                                        lat[0][n[0]++] = t1 - t0;
+                                    }
+                                }
+                                slots.release();
+                            });
+                        }
+                        slots.acquire(inFlight - 1); // wait for this producer's stragglers
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    synchronized (lat) {
+                        lats[producer] = lat[0];
+                        counts[producer] = n[0];
+                    }
+                }, "check-in-producer-" + t);
+                threads.add(th);
+                th.start();
+            }
+            for (Thread th : threads) th.join();
+            long[] groupsBefore = pipeline.commitCounts();
+            pipeline.close();
+            h.close();
+            if (!errors.isEmpty()) throw new IllegalStateException("check-in failed", errors.get(0));
+
+            int total = 0;
+            for (int c : counts) total += c;
+            long[] all = new long[total];
+            int k = 0;
+            for (int p = 0; p < producers; p++) {
+                System.arraycopy(lats[p], 0, all, k, counts[p]);
+                k += counts[p];
+            }
+            Result r = summarize("checkin.pipeline", rows, "commit-" + commitMs + "ms", all, total, nanos, -1);
+            report(out, r);
+            System.out.printf(Locale.ROOT, "  group commits=%d  average group=%.0f check-ins%n",
+                    groupsBefore[0], groupsBefore[1] / (double) Math.max(1, groupsBefore[0]));
+        } finally {
+            deleteTree(dir);
+        }
+        System.out.println("Results appended to " + outPath);
+    }
+
+    // ---------- Bulk import ----------
+
+    /** One way of importing a sheet into a handler. */
+    interface Importer {
+        ParticipantFileHandler.ImportResult run(ParticipantFileHandler h, Reader in) throws IOException;
+    }
+
+    // Time importCSV and ImportPipeline on the same sheet; false if the pipeline's result differs
+    static boolean importThroughput(int rows, int[] workerCounts, boolean journaled, String outPath) throws Exception {
+        String mode = journaled ? "journaled" : "plain";
+        Path dir = Files.createTempDirectory("smartreg-import");
+        boolean same = true;
+        try (PrintWriter out = new PrintWriter(new FileWriter(outPath, true))) {
+            Path sheet = dir.resolve("sheet.csv");
+            writeSyntheticSheet(sheet, rows);
+            System.out.printf(Locale.ROOT, "import sheet rows=%d size=%.1fMB cores=%d%n", rows,
+                    Files.size(sheet) / (1024.0 * 1024.0), Runtime.getRuntime().availableProcessors());
+
+            List<String[]> expected = new ArrayList<>();
+            List<String> expectedErrors = new ArrayList<>();
+            same &= timeImport(out, "import.importCSV", rows, mode, dir, sheet, journaled,
+                    (h, in) -> h.importCSV(in, null), expected, expectedErrors);
+            for (int w : workerCounts) {
+                List<String[]> got = new ArrayList<>();
+                List<String> gotErrors = new ArrayList<>();
+                same &= timeImport(out, "import.pipeline", rows, mode + "-" + w + "w", dir, sheet, journaled,
+                        (h, in) -> new ImportPipeline(h, w).run(in, null), got, gotErrors);
+                boolean match = gotErrors.equals(expectedErrors) && got.size() == expected.size();
+                for (int i = 0; match && i < got.size(); i++) match = Arrays.equals(got.get(i), expected.get(i));
+                if (!match) System.out.println("  MISMATCH: " + w + " workers stored different rows or errors than importCSV");
+                same &= match;
+            }
+        } finally {
+            deleteTree(dir);
+        }
+        System.out.println("Results appended to " + outPath);
+        return same;
+    }
+
+    // Import the sheet into empty handlers (first round is warm-up), report rows/s and keep the last result
+    private static boolean timeImport(PrintWriter out, String name, int rows, String mode, Path dir, Path sheet,
+                                      boolean journaled, Importer importer, List<String[]> stored, List<String> errors)
+            throws Exception {
+        final int rounds = 4;
+        long[] lat = new long[rounds - 1];
+        long elapsed = 0;
+        boolean ok = true;
+        for (int round = 0; round < rounds; round++) {
+            Path target = Files.createDirectories(dir.resolve("round")).resolve("participants.csv");
+            ParticipantFileHandler h = new ParticipantFileHandler(target.toString(), journaled);
+            h.getBackupManager().setRetain(1);
+            long t0 = System.nanoTime();
+            ParticipantFileHandler.ImportResult res;
+            try (Reader in = Files.newBufferedReader(sheet)) {
+                res = importer.run(h, in);
+            }
+            long t = System.nanoTime() - t0;
+            if (round > 0) {
+                lat[round - 1] = t;
+                elapsed += t;
+            }
+            ok &= res.added + res.errors.size() == rows;
+            if (round == rounds - 1) {
+                stored.addAll(h.loadParticipants());
+                errors.addAll(res.errors);
+            }
+            h.close();
+            deleteTree(target.getParent());
+        }
+        Result r = summarize(name, rows, mode, lat, lat.length, elapsed, -1);
+        report(out, r);
+        System.out.printf(Locale.ROOT, "  %.0f rows/s%n", r.opsPerSec * rows);
+        return ok;
+    }
+
+    // Import sheet (Name,Email,Phone,Department,College,Year,Events) with events separated by ';' or '|'
+    // and one row in 100 missing its phone
+    static void writeSyntheticSheet(Path path, int rows) throws IOException {
+        Random rnd = new Random(11);
+        try (Writer w = Files.newBufferedWriter(path)) {
+            w.write("Name,Email,Phone,Department,College,Year,Events\n");
+            StringBuilder sb = new StringBuilder(256);
+            for (int i = 0; i < rows; i++) {
+                String[] r = syntheticRow(rnd, 1000 + i);
+                if (i % 100 == 99) r[3] = "";
+                if ((i & 1) == 0) r[7] = r[7].replace(" | ", ";");
+                sb.setLength(0);
+                appendCsvRow(sb, Arrays.copyOfRange(r, 1, 8));
+                w.append(sb);
+            }
+        }
+    }
+
+    // ---------- Attendance time series ----------
+
+    static void attendance(int records, int eventCount, String outPath) throws Exception {
+        Path dir = Files.createTempDirectory("smartreg-attendance");
+        try (PrintWriter out = new PrintWriter(new FileWriter(outPath, true))) {
+            String path = dir.resolve("attendance.dat").toString();
+            long t0 = 1_700_000_000_000L, span = 3 * 24 * AttendanceStore.HOUR_MILLIS; // three days of check-ins
+            Random rnd = new Random(3);
+            long fill = System.nanoTime();
+            try (AttendanceStore store = new AttendanceStore(path)) {
+                List<CheckInPipeline.CheckIn> group = new ArrayList<>(10000);
+                for (int i = 0; i < records; i++) {
+                    group.add(new CheckInPipeline.CheckIn("P" + (1000 + rnd.nextInt(100000)), rnd.nextInt(eventCount),
+                            t0 + span * i / records, rnd.nextInt(10) == 0 ? "Absent" : "Present"));
+                    if (group.size() == 10000) {
+                        store.append(group);
+                        group.clear();
+                    }
+                }
+                if (!group.isEmpty()) store.append(group);
+            }
+            System.out.printf(Locale.ROOT, "attendance.fill records=%d in %.1fs (%.1f MB)%n", records,
+                    (System.nanoTime() - fill) / 1e9, Files.size(Paths.get(path)) / (1024.0 * 1024.0));
+
+            report(out, measure("attendance.open", records, "binary", i -> new AttendanceStore(path).close()));
+            AttendanceStore store = new AttendanceStore(path);
+            report(out, measure("attendance.hourly", records, "binary",
+                    i -> store.hourly(i % eventCount, Long.MIN_VALUE, Long.MAX_VALUE)));
+            report(out, measure("attendance.records1h", records, "binary", i -> {
+                long from = t0 + (long) (rnd.nextDouble() * (span - AttendanceStore.HOUR_MILLIS));
+                store.records(i % eventCount, from, from + AttendanceStore.HOUR_MILLIS);
+            }));
+            report(out, measure("attendance.presentCount", records, "binary", i -> store.presentCount(i % eventCount)));
+            report(out, measure("attendance.last", records, "binary",
+                    i -> store.last("P" + (1000 + rnd.nextInt(100000)), i % eventCount)));
+            List<CheckInPipeline.CheckIn> batch = new ArrayList<>();
+            for (int k = 0; k < 1000; k++) batch.add(new CheckInPipeline.CheckIn("P" + (1000 + k), k % eventCount, t0 + span, "Present"));
+            report(out, measure("attendance.append1000", records, "binary", i -> store.append(batch)));
+            store.close();
+        } finally {
+            deleteTree(dir);
+        }
+        System.out.println("Results appended to " + outPath);
+    }
+
+    // ---------- EDT responsiveness ----------
+
+    private static final int EDT_WARMUP = 3;
+    private static final int EDT_CALLS = 20;
+
+    /** Background part of a GUI action; its result is handed to the EDT part. */
+    interface Work<T> {
+        T run(int i) throws Exception;
+    }
+
+    // The GUI's table setup (model, sorter, scroll pane) driven without a window; false if an action's p99 is over budget
+    static boolean edtResponsiveness(int rows, long budgetMs, String outPath) throws Exception {
+        Path dir = Files.createTempDirectory("smartreg-edt");
+        EdtWatchdog watchdog = EdtWatchdog.install(budgetMs);
+        boolean ok = true;
+        try (PrintWriter out = new PrintWriter(new FileWriter(outPath, true))) {
+            writeSyntheticCsv(dir.resolve("participants.csv"), rows);
+            ParticipantFileHandler h = new ParticipantFileHandler(dir.resolve("participants.csv").toString());
+            h.getBackupManager().setRetain(2);
+            ParticipantTableModel model = new ParticipantTableModel(h);
+            javax.swing.JTable[] table = new javax.swing.JTable[1];
+            javax.swing.JScrollPane[] scroll = new javax.swing.JScrollPane[1];
+            javax.swing.table.TableRowSorter<ParticipantTableModel> sorter = model.createSorter();
+            javax.swing.SwingUtilities.invokeAndWait(() -> {
+                table[0] = new javax.swing.JTable(model);
+                table[0].setRowSorter(sorter);
+                scroll[0] = new javax.swing.JScrollPane(table[0]);
+                scroll[0].setSize(900, 600);
+            });
+            java.awt.image.BufferedImage screen = new java.awt.image.BufferedImage(900, 600, java.awt.image.BufferedImage.TYPE_INT_RGB);
+            Runnable paint = () -> { // what the repaint after the change costs: layout and one screen of rows
+                scroll[0].invalidate();
+                scroll[0].validate();
+                java.awt.Graphics2D g = screen.createGraphics();
+                scroll[0].paint(g);
+                g.dispose();
+            };
+            String[] terms = {"kumar", "user42", "college 7", "dance battle"};
+            Random rnd = new Random(11);
+            watchdog.clear();
+
+            List<Result> results = new ArrayList<>();
+            results.add(edtAction("edt.showRows", rows, i -> h.participantSnapshot(), snap -> {
+                model.setSnapshot(snap);
+                paint.run();
+            }));
+            results.add(edtAction("edt.searchFilter", rows, i -> {
+                Set<Integer> keys = new HashSet<>();
+                for (String[] hit : h.search(terms[i & 3])) keys.add(h.keyOf(hit[0]));
+                return keys;
+            }, keys -> {
+                sorter.setRowFilter(new javax.swing.RowFilter<ParticipantTableModel, Integer>() {
+                    public boolean include(Entry<? extends ParticipantTableModel, ? extends Integer> entry) {
+                        return keys.contains(entry.getModel().keyAt(entry.getIdentifier()));
+                    }
+                });
+                paint.run();
+            }));
+            results.add(edtAction("edt.clearFilter", rows, i -> null, none -> {
+                sorter.setRowFilter(null);
+                paint.run();
+            }));
+            results.add(edtAction("edt.sortByName", rows, i -> null, none -> {
+                sorter.toggleSortOrder(1);
+                paint.run();
+            }));
+            results.add(edtAction("edt.markAttendance", rows, i -> {
+                String id = "P" + (1000 + rnd.nextInt(rows));
+                return h.markAttendance(id, (i & 1) == 0 ? "Present" : "Absent") ? h.findById(id) : null;
+            }, updated -> {
+                if (updated != null) model.rowUpdated(updated);
+                paint.run();
+            }));
+            results.add(edtAction("edt.register", rows, i -> h.register("Edt User" + i, "edt" + i + "@mail.com",
+                    String.valueOf(8000000000L + i), "CSE", "College 1", "2", Arrays.asList("Coding")).row, saved -> {
+                if (saved != null) model.rowInserted(saved);
+                paint.run();
+            }));
+            results.add(edtAction("edt.delete", rows, i -> {
+                String id = "P" + (1000 + rows - 1 - i);
+                return h.delete(id) ? id : null;
+            }, id -> {
+                if (id != null) model.rowDeleted(id);
+                paint.run();
+            }));
+            h.close();
+
+            for (Result r : results) {
+                report(out, r);
+                if (r.p99Us > budgetMs * 1000.0) {
+                    System.out.printf(Locale.ROOT, "  %s: EDT busy %.1f ms (p99), over the %d ms budget%n", r.benchmark, r.p99Us / 1e3, budgetMs);
+                    ok = false;
+                }
+            }
+            Metrics.Histogram queueWait = Metrics.histogram("edt.latency");
+            System.out.printf(Locale.ROOT, "  EDT queue wait p99=%.1fms max=%.1fms (%d probes)%n",
+                    queueWait.getP99Micros() / 1e3, queueWait.getMaxMicros() / 1e3, queueWait.getCount());
+            for (EdtWatchdog.Stall s : watchdog.stalls()) {
+                System.out.printf(Locale.ROOT, "  stall %d ms on %s%n", s.millis(), s.event);
+                for (int k = 0; k < Math.min(12, s.stack.length); k++) System.out.println("      at " + s.stack[k]);
+            }
+        } finally {
+            deleteTree(dir);
+        }
+        System.out.println("Results appended to " + outPath);
+        return ok;
+    }
+
+    // Run an action EDT_CALLS times after EDT_WARMUP; only the EDT part is timed
+    private static <T> Result edtAction(String name, int rows, Work<T> work, java.util.function.Consumer<T> onEdt) throws Exception {
+        long[] lat = new long[EDT_CALLS];
+        long total = 0;
+        for (int i = -EDT_WARMUP; i < EDT_CALLS; i++) {
+            T result = work.run(i + EDT_WARMUP);
+            long[] busy = new long[1];
+            javax.swing.SwingUtilities.invokeAndWait(() -> {
+                long t0 = System.nanoTime();
+                onEdt.accept(result);
+                busy[0] = System.nanoTime() - t0;
+            });
+            if (i < 0) continue;
+            lat[i] = busy[0];
+            total += busy[0];
+        }
+        return summarize(name, rows, "edt", lat, EDT_CALLS, total, -1);
+    }
+
+    // ---------- Resident memory ----------
+
+    public static final double STORE_TARGET_RATIO = 5.0;
+
+    // Heap of the same participants as parsed rows, in the store and in a handler; false if the store misses the target
+    static boolean memory(int rows, String outPath) throws Exception {
+        Path dir = Files.createTempDirectory("smartreg-memory");
+        double ratio;
+        try (PrintWriter out = new PrintWriter(new FileWriter(outPath, true))) {
+            Path csv = dir.resolve("participants.csv");
+            writeSyntheticCsv(csv, rows);
+
+            // what the store held before: one String per field, as the tokenizer produced them
+            long base = liveHeap();
+            List<String[]> list = new ArrayList<>();
+            try (CsvTokenizer tok = new CsvTokenizer(new FileReader(csv.toFile()))) {
+                List<String> fields = new ArrayList<>(9);
+                tok.next(fields);
+                while (tok.next(fields)) list.add(fields.toArray(new String[9]));
+            }
+            long listBytes = liveHeap() - base;
+            ParticipantStore store = new ParticipantStore();
+            EventDictionary events = new EventDictionary();
+            for (int i = 0; i < list.size(); i++) store.put(list.get(i), events.maskOf(list.get(i)[7])); // no iterator left holding the list
+            list = null;
+            long storeBytes = liveHeap() - base;
+            java.lang.ref.Reference.reachabilityFence(store);
+            store = null;
+            base = liveHeap();
+            ParticipantFileHandler h = new ParticipantFileHandler(csv.toString());
+            long handlerBytes = liveHeap() - base;
+            h.search("kumar"); // builds the search index
+            long indexBytes = liveHeap() - base - handlerBytes;
+            h.close();
+
+            ratio = (double) listBytes / storeBytes;
+            reportMemory(out, "memory.stringRows", rows, listBytes);
+            reportMemory(out, "memory.store", rows, storeBytes);
+            reportMemory(out, "memory.handler", rows, handlerBytes);
+            reportMemory(out, "memory.searchIndex", rows, indexBytes);
+            System.out.printf(Locale.ROOT, "  store is %.1fx smaller than String[] rows (target %.0fx)%n", ratio, STORE_TARGET_RATIO);
+        } finally {
+            deleteTree(dir);
+        }
+        System.out.println("Results appended to " + outPath);
+        return ratio >= STORE_TARGET_RATIO;
+    }
+
+    private static void reportMemory(PrintWriter out, String name, int rows, long bytes) {
+        System.out.printf(Locale.ROOT, "%-28s rows=%-8d %10.1f MB  %8.1f B/row%n", name, rows, bytes / 1e6, (double) bytes / rows);
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("benchmark", name);
+        m.put("rows", rows);
+        m.put("heapBytes", bytes);
+        m.put("bytesPerRow", Math.round(bytes * 10.0 / rows) / 10.0);
+        out.println(Json.write(m));
+        out.flush();
+    }
+
+    // Heap in use after full collections
+    private static long liveHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /** One client call; each client thread has its own Random. */
+    interface ClientOp {
+        void run(Random rnd, int i) throws Exception;
+    }
+
+    // Warm up briefly, then run op from `clients` threads for the given time and pool their latencies
+    private static Result loadTest(String name, int rows, String mode, int clients, long nanos, ClientOp op) throws Exception {
+        long[][] lats = new long[clients][];
+        int[] counts = new int[clients];
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        long warmEnd = System.nanoTime() + WARMUP_NANOS;
+        long[] window = new long[2]; // measurement start, end (set once warm-up is over)
+        window[0] = warmEnd;
+        window[1] = warmEnd + nanos;
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            Thread t = new Thread(() -> {
+                Random rnd = new Random(client);
+                long[] lat = new long[1024];
+                int n = 0;
+                try {
+                    for (int i = 0; ; i++) {
+                        long t0 = System.nanoTime();
+                        if (t0 >= window[1]) break;
+                        op.run(rnd, i);
+                        if (t0 < window[0]) continue; // warm-up call
+                        if (n == lat.length) lat = Arrays.copyOf(lat, n * 2);
+                        lat[n++] = System.nanoTime() - t0;
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+                lats[client] = lat;
+                counts[client] = n;
+            }, "load-client-" + c);
+            threads.add(t);
+            t.start();
+        }
+        for (Thread t : threads) t.join();
+        if (!errors.isEmpty()) throw new IllegalStateException(name + " failed", errors.get(0));
+        int total = 0;
+        for (int n : counts) total += n;
+        long[] all = new long[total];
+        int k = 0;
+        for (int c = 0; c < clients; c++) {
+            System.arraycopy(lats[c], 0, all, k, counts[c]);
+            k += counts[c];
+        }
+        return summarize(name, rows, mode, all, total, nanos, -1);
+    }
+
+    private static HttpRequest post(String url, String json) {
+        return HttpRequest.newBuilder(URI.create(url)).header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(json)).build();
+    }
+
+    // Send and insist on a 2xx answer
+    private static void send(HttpClient client, HttpRequest req) throws IOException, InterruptedException {
+        HttpResponse<String> res = client.send(req, HttpResponse.BodyHandlers.ofString());
+        if (res.statusCode() / 100 != 2) throw new IOException(req.uri() + " -> " + res.statusCode() + " " + res.body());
+    }
+
+    // ---------- Concurrency stress ----------
+
+    /**
+     * Every worker thread registers new participants and adds its own event ("W<process>T<thread>")
+     * to random existing participants, interleaved with attendance updates. Each worker records what
+     * it did; afterwards a fresh handler must show every registration (with unique IDs) and exactly
+     * the recorded members for every worker event.
+     */
+    static boolean stress(int rows, int threads, int ops, int processes, boolean journaled) throws Exception {
+        Path dir = Files.createTempDirectory("smartreg-stress");
+        try {
+            Path csv = dir.resolve("participants.csv");
+            writeSyntheticCsv(csv, rows);
+            String path = csv.toString();
+            long t0 = System.nanoTime();
+            if (processes <= 1) {
+                stressWorker(path, journaled, false, 0, rows, threads, ops, dir.resolve("expect-0.txt"));
+            } else {
+                String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+                List<Process> children = new ArrayList<>();
+                for (int w = 0; w < processes; w++) {
+                    children.add(new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                            "SmartRegBenchmark", "stress-worker", path, String.valueOf(journaled), String.valueOf(w),
+                            String.valueOf(rows), String.valueOf(threads), String.valueOf(ops),
+                            dir.resolve("expect-" + w + ".txt").toString()).inheritIO().start());
+                }
+                for (Process p : children) {
+                    if (p.waitFor() != 0) {
+                        System.out.println("stress FAIL: worker process exited with " + p.exitValue());
+                        return false;
+                    }
+                }
+            }
+            double secs = (System.nanoTime() - t0) / 1e9;
+            long total = (long) processes * threads * ops;
+            return verifyStress(path, journaled, rows, processes, dir, total, secs);
+        } finally {
+            deleteTree(dir);
+        }
+    }
+
+    static void stressWorker(String path, boolean journaled, boolean shared, int worker, int rows,
+                             int threads, int ops, Path expectFile) throws Exception {
+        ParticipantFileHandler h = new ParticipantFileHandler(path, journaled);
+        h.getBackupManager().setRetain(2);
+        h.setCompactThreshold(64 * 1024); // rotate often so compaction races with writers too
+        h.setShared(shared);
+        List<String> expect = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> pool = new ArrayList<>();
+        List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < threads; t++) {
+            String event = "W" + worker + "T" + t;
+            Random rnd = new Random(31L * worker + t);
+            Thread th = new Thread(() -> {
+                try {
+                    for (int i = 0; i < ops; i++) {
+                        int kind = rnd.nextInt(10);
+                        if (kind < 4) {
+                            String[] r = h.saveParticipant("Stress " + event + " " + i, event + "." + i + "@mail.com",
+                                    String.valueOf(8000000000L + rnd.nextInt(999999999)), "CSE", "College 1", "2",
+                                    Collections.singletonList(event));
+                            if (r == null) throw new IllegalStateException("registration failed");
+                            expect.add("R," + r[0] + "," + event);
+                        } else if (kind < 8) {
+                            String id = "P" + (1000 + rnd.nextInt(rows));
+                            if (h.mergeEvents(id, Collections.singletonList(event)) == null) throw new IllegalStateException("merge failed: " + id);
+                            expect.add("M," + id + "," + event);
+                        } else {
+                            h.markAttendance("P" + (1000 + rnd.nextInt(rows)), rnd.nextBoolean() ? "Present" : "Absent");
+                        }
+                    }
+                } catch (Throwable e) {
+                    errors.add(e);
+                }
+            }, "stress-" + event);
+            pool.add(th);
+            th.start();
+        }
+        for (Thread th : pool) th.join();
+        h.close();
+        Files.write(expectFile, expect);
+        if (!errors.isEmpty()) {
+            errors.get(0).printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static boolean verifyStress(String path, boolean journaled, int rows, int processes, Path dir,
+                                        long totalOps, double secs) throws IOException {
+        Map<String, Set<String>> members = new TreeMap<>();
+        int registered = 0;
+        for (int w = 0; w < processes; w++) {
+            for (String line : Files.readAllLines(dir.resolve("expect-" + w + ".txt"))) {
+                String[] f = line.split(",");
+                if (f[0].equals("R")) registered++;
+                members.computeIfAbsent(f[2], k -> new HashSet<>()).add(f[1]);
+            }
+        }
+        ParticipantFileHandler h = new ParticipantFileHandler(path, journaled);
+        List<String> problems = new ArrayList<>();
+        List<String[]> all = h.loadParticipants();
+        Set<String> ids = new HashSet<>();
+        for (String[] r : all) ids.add(r[0]);
+        if (all.size() != rows + registered) problems.add("rows " + all.size() + ", expected " + (rows + registered));
+        if (ids.size() != all.size()) problems.add((all.size() - ids.size()) + " duplicate IDs");
+        for (Map.Entry<String, Set<String>> e : members.entrySet()) {
+            Set<String> actual = new HashSet<>();
+            for (String[] r : h.participantsInEvent(e.getKey())) actual.add(r[0]);
+            if (!actual.equals(e.getValue())) {
+                problems.add(e.getKey() + ": " + actual.size() + " members, expected " + e.getValue().size());
+            }
+        }
+        if (!h.verifyAnalytics()) problems.add("analytics counters out of step");
+        h.close();
+        System.out.printf("stress processes=%d ops=%d registered=%d events=%d time=%.2fs throughput=%.0f ops/s %s%n",
+                processes, totalOps, registered, members.size(), secs, totalOps / secs, problems.isEmpty() ? "PASS" : "FAIL");
+        for (String p : problems) System.out.println("  " + p);
+        return problems.isEmpty();
+    }
+
+    private static int[] parseSizes(String s) {
+        String[] parts = s.split(",");
+        int[] sizes = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) sizes[i] = Integer.parseInt(parts[i].trim());
+        return sizes;
+    }
+
+    private static void deleteTree(Path dir) throws IOException {
+        if (!Files.exists(dir)) return;
+        try (java.util.stream.Stream<Path> walk = Files.walk(dir)) {
+            walk.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    // ---------- CSV tokenizer throughput ----------
+
+    // Tokenize an in-memory participants CSV of about the given size; true if the target is met
+    static boolean csvThroughput(int megabytes) throws IOException {
+        char[] data = syntheticCsv(megabytes * 1024L * 1024L).toCharArray();
+        double mb = data.length / (1024.0 * 1024.0);
+        double best = 0;
+        long records = 0;
+        for (int round = 0; round < 8; round++) { // early rounds double as JIT warm-up
+            long t0 = System.nanoTime();
+            try (CsvTokenizer csv = new CsvTokenizer(new CharArrayReader(data))) {
+                List<String> fields = new ArrayList<>(9);
+                while (csv.next(fields)) { }
+                records = csv.recordCount();
+            }
+            double secs = (System.nanoTime() - t0) / 1e9;
+            best = Math.max(best, mb / secs);
+        }
+        System.out.printf("csv.tokenize records=%d size=%.1fMB best=%.1fMB/s target=%.1fMB/s %s%n",
+                records, mb, best, CSV_TARGET_MB_PER_S, best >= CSV_TARGET_MB_PER_S ? "PASS" : "FAIL");
+        return best >= CSV_TARGET_MB_PER_S;
+    }
+
+    // ---------- Synthetic data ----------
+
+    // Participants CSV with the given number of rows (IDs P1000 upwards)
+    static void writeSyntheticCsv(Path path, int rows) throws IOException {
+        Random rnd = new Random(42);
+        try (Writer w = Files.newBufferedWriter(path)) {
+            w.write("ID,Name,Email,Phone,Department,College,Year,Events,Attendance\n");
+            StringBuilder sb = new StringBuilder(256);
+            for (int i = 0; i < rows; i++) {
+                sb.setLength(0);
+                appendCsvRow(sb, syntheticRow(rnd, 1000 + i));
+                w.append(sb);
+            }
+        }
+    }
+
+    // Participants CSV text with realistic field shapes, including quoted commas, quotes and newlines
+    static String syntheticCsv(long approxChars) {
+        StringBuilder sb = new StringBuilder((int) Math.min(Integer.MAX_VALUE - 16, approxChars + 256));
+        sb.append("ID,Name,Email,Phone,Department,College,Year,Events,Attendance\n");
+        Random rnd = new Random(42);
+        for (int i = 0; sb.length() < approxChars; i++) appendCsvRow(sb, syntheticRow(rnd, 1000 + i));
+        return sb.toString();
+    }
+
+    private static void appendCsvRow(StringBuilder sb, String[] r) {
+        for (int c = 0; c < r.length; c++) {
+            if (c > 0) sb.append(',');
+            String v = r[c];
+            if (v.contains(",") || v.contains("\"") || v.contains("\n")) sb.append('"').append(v.replace("\"", "\"\"")).append('"');
+            else sb.append(v);
+        }
+        sb.append('\n');
+    }
+
+    private static final String[] FIRST = {"Arun", "Bala", "Chitra", "Deepa", "Esha", "Farah", "Gopal", "Hari", "Indu", "Jaya"};
+    private static final String[] LAST = {"Kumar", "Raman", "Iyer", "Nair", "Das", "Rao", "Shah", "Menon"};
+    private static final String[] DEPTS = {"CSE", "ECE", "EEE", "MECH", "CIVIL", "IT"};
+    private static final String[] EVENTS = {"Coding", "Dance", "Debate", "Robotics", "Quiz", "Dance Battle"};
+
+    static String[] syntheticRow(Random rnd, int n) {
+        String name = FIRST[rnd.nextInt(FIRST.length)] + " " + LAST[rnd.nextInt(LAST.length)];
+        if (rnd.nextInt(50) == 0) name = name + ", Jr.";
+        if (rnd.nextInt(200) == 0) name = "\"" + name + "\"";
+        String evs = EVENTS[rnd.nextInt(EVENTS.length)];
+        if (rnd.nextBoolean()) evs = evs + " | " + EVENTS[rnd.nextInt(EVENTS.length)];
+        String college = "College " + rnd.nextInt(120) + (rnd.nextInt(500) == 0 ? "\nAnnex" : "");
+        return new String[]{"P" + n, name, "user" + n + "@mail.com", String.valueOf(9000000000L + rnd.nextInt(999999999)),
+                DEPTS[rnd.nextInt(DEPTS.length)], college, String.valueOf(1 + rnd.nextInt(4)), evs,
+                rnd.nextInt(3) == 0 ? "Present" : "Absent"};
+    }
+}
@@ -0,0 +1,503 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SmartRegServer
+ * Headless mode: the participant and event handlers behind a small HTTP/JSON API, so several
+ * registration and check-in desks can work on the same data through one process.
+ *
+ * Endpoints (request and response bodies are JSON):
+ *   POST /participants            register {name, email, phone, department, college, year, events: [..]};
+ *                                 events must exist (400 otherwise; add them with POST /events)
+ *   GET  /participants?q=kw       search (every participant without q); limit=N caps the list (default 100),
+ *                                 offset=N skips the first N (pages without q decode only the rows returned)
+ *   GET  /participants/{id}       one participant
+ *   POST /attendance              {id, status}
+ *   GET  /attendance?event=X      check-ins at the event over time: present now, and marks per hour
+ *                                 (optional from/to, epoch millis)
+ *   POST /checkin                 {id, event, status} timestamped per-event check-in (CheckInPipeline); answers
+ *                                 once the group commit holding it is on disk
+ *   GET  /analytics               the same figures as the GUI's analytics dialog
+ *   GET  /metrics                 latency histograms and counters (see Metrics)
+ *   GET  /export                  participants as CSV, streamed; optional event, college, attendance filters,
+ *                                 columns=ID,Name,... and gzip (also chosen by Accept-Encoding: gzip)
+ *   GET  /events, POST /events    list events, add {name}
+ *   POST /batch                   [{"op": "register" | "attendance" | "get", ...}, ...] -> array of results,
+ *                                 applied in order as one step (one round trip and one lock hold per batch)
+ *
+ * Requests run on virtual threads when the JVM has them (Java 21+), otherwise on a fixed pool.
+ * Each endpoint is timed in Metrics as "http.<endpoint>"; -Dsmartreg.metrics=<file> also dumps them.
+ *
+ * Usage: java SmartRegServer [--port 8080] [--host 127.0.0.1] [--dir .] [--threads 32]
+ *                            [--duplicates WARN|REJECT|MERGE] [--shared]
+ */
+public class SmartRegServer {
+    private static final int DEFAULT_LIMIT = 100;
+
+    static {
+        // the JDK server writes headers and body separately; without TCP_NODELAY every response
+        // waits ~40 ms for the client's delayed ACK (read once, when the server config is loaded)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+
+    private final ParticipantFileHandler participants;
+    private final EventFileHandler events;
+    private final CheckInPipeline checkIns;
+    private final HttpServer http;
+    private final ExecutorService executor;
+
+    public SmartRegServer(ParticipantFileHandler participants, EventFileHandler events, CheckInPipeline checkIns,
+                          InetSocketAddress address, int threads) throws IOException {
+        this.participants = participants;
+        this.events = events;
+        this.checkIns = checkIns;
+        this.executor = requestExecutor(threads);
+        this.http = HttpServer.create(address, 256);
+        http.setExecutor(executor);
+        http.createContext("/participants", ex -> handle(ex, this::participantsRoute));
+        http.createContext("/attendance", ex -> handle(ex, this::attendanceRoute));
+        http.createContext("/checkin", ex -> handle(ex, this::checkInRoute));
+        http.createContext("/analytics", ex -> handle(ex, this::analyticsRoute));
+        http.createContext("/export", ex -> handle(ex, this::exportRoute));
+        http.createContext("/metrics", ex -> handle(ex, e -> {
+            requireGet(e.getRequestMethod());
+            return new Response(200, Metrics.snapshot());
+        }));
+        http.createContext("/events", ex -> handle(ex, this::eventsRoute));
+        http.createContext("/batch", ex -> handle(ex, this::batchRoute));
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080, threads = 32;
+        String host = "127.0.0.1", dir = ".", duplicates = "WARN";
+        boolean shared = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port")) port = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--host")) host = args[++i];
+            else if (args[i].equals("--dir")) dir = args[++i];
+            else if (args[i].equals("--threads")) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("--duplicates")) duplicates = args[++i];
+            else if (args[i].equals("--shared")) shared = true;
+            else {
+                System.err.println("Usage: java SmartRegServer [--port 8080] [--host 127.0.0.1] [--dir .] [--threads 32]"
+                        + " [--duplicates WARN|REJECT|MERGE] [--shared]");
+                System.exit(2);
+            }
+        }
+        Metrics.startDumpFromProperties();
+        EventFileHandler ev = new EventFileHandler(Paths.get(dir, "events.csv").toString());
+        ParticipantFileHandler ph = new ParticipantFileHandler(Paths.get(dir, "participants.csv").toString(),
+                true, true, ev.dictionary());
+        ph.setDuplicatePolicy(ParticipantFileHandler.DuplicatePolicy.valueOf(duplicates.toUpperCase()));
+        ph.setShared(shared);
+        CheckInPipeline checkIns = new CheckInPipeline(ph, ev.dictionary(), Paths.get(dir, "attendance.dat").toString());
+        SmartRegServer server = new SmartRegServer(ph, ev, checkIns, new InetSocketAddress(host, port), threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        server.start();
+        System.out.println("SmartReg server listening on http://" + host + ":" + server.port());
+    }
+
+    public void start() {
+        http.start();
+    }
+
+    // Port actually bound (useful with port 0)
+    public int port() {
+        return http.getAddress().getPort();
+    }
+
+    // Stop accepting requests, let running ones finish (up to 2 s), then flush and close the handler
+    public void stop() {
+        http.stop(2);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        checkIns.close();
+        participants.close();
+    }
+
+    // Virtual thread per request where available; the platform pool otherwise
+    static ExecutorService requestExecutor(int threads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "smartreg-http");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // ---------- Routes ----------
+
+    /** A route answers with a status and a JSON-writable body, or throws ApiError. */
+    interface Route {
+        Response serve(HttpExchange ex) throws IOException;
+    }
+
+    static class Response {
+        final int status;
+        final Object body;
+        final String contentType;
+        final Stream stream;
+
+        Response(int status, Object body) {
+            this(status, body, null, null);
+        }
+
+        // A body written straight to the client (chunked) instead of as JSON
+        Response(int status, String contentType, Stream stream) {
+            this(status, null, contentType, stream);
+        }
+
+        private Response(int status, Object body, String contentType, Stream stream) {
+            this.status = status;
+            this.body = body;
+            this.contentType = contentType;
+            this.stream = stream;
+        }
+    }
+
+    interface Stream {
+        void writeTo(WritableByteChannel out) throws IOException;
+    }
+
+    static class ApiError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        ApiError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private Response participantsRoute(HttpExchange ex) throws IOException {
+        String path = ex.getRequestURI().getPath();
+        String method = ex.getRequestMethod();
+        if (path.equals("/participants") || path.equals("/participants/")) {
+            if (method.equals("POST")) return registration(asObject(readBody(ex)));
+            requireGet(method);
+            Map<String, String> q = query(ex);
+            String kw = q.get("q");
+            int limit = q.containsKey("limit") ? parseInt(q.get("limit"), "limit") : DEFAULT_LIMIT;
+            int offset = q.containsKey("offset") ? parseInt(q.get("offset"), "offset") : 0;
+            if (limit < 0 || offset < 0) throw new ApiError(400, "limit and offset must not be negative");
+            int count;
+            List<String[]> rows;
+            if (kw == null || kw.trim().isEmpty()) {
+                count = participants.participantCount();
+                rows = participants.participantsPage(offset, limit);
+            } else {
+                List<String[]> hits = participants.search(kw.trim());
+                count = hits.size();
+                rows = hits.subList(Math.min(offset, count), (int) Math.min(count, (long) offset + limit));
+            }
+            List<Object> list = new ArrayList<>();
+            for (String[] r : rows) list.add(participantJson(r));
+            Map<String, Object> body = new LinkedHashMap<>();
+            body.put("count", count);
+            body.put("participants", list);
+            return new Response(200, body);
+        }
+        requireGet(method);
+        String id = path.substring("/participants/".length());
+        return new Response(200, participantJson(existing(id)));
+    }
+
+    private Response attendanceRoute(HttpExchange ex) throws IOException {
+        if (ex.getRequestMethod().equals("GET")) return new Response(200, eventAttendance(query(ex)));
+        if (!ex.getRequestMethod().equals("POST")) throw new ApiError(405, "use GET or POST");
+        return new Response(200, attendance(asObject(readBody(ex))));
+    }
+
+    private Map<String, Object> eventAttendance(Map<String, String> q) {
+        String event = q.getOrDefault("event", "").trim();
+        if (event.isEmpty()) throw new ApiError(400, "missing event");
+        int id = events.idOf(event);
+        if (id < 0) throw new ApiError(404, "no event " + event);
+        long from = q.containsKey("from") ? parseLong(q.get("from"), "from") : Long.MIN_VALUE;
+        long to = q.containsKey("to") ? parseLong(q.get("to"), "to") : Long.MAX_VALUE;
+        AttendanceStore store = checkIns.store();
+        List<Object> hours = new ArrayList<>();
+        for (Map.Entry<Long, int[]> h : store.hourly(id, from, to).entrySet()) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("hour", java.time.Instant.ofEpochMilli(h.getKey()).toString());
+            m.put("present", h.getValue()[0]);
+            m.put("absent", h.getValue()[1]);
+            hours.add(m);
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("event", event);
+        body.put("presentNow", store.presentCount(id));
+        body.put("participantsMarked", store.participantCount(id));
+        body.put("marks", store.markCount(id));
+        body.put("hourly", hours);
+        return body;
+    }
+
+    private Response checkInRoute(HttpExchange ex) throws IOException {
+        if (!ex.getRequestMethod().equals("POST")) throw new ApiError(405, "use POST");
+        Map<String, Object> p = asObject(readBody(ex));
+        String id = text(p, "id", true), event = text(p, "event", true), status = text(p, "status", false);
+        if (status.isEmpty()) status = "Present";
+        if (!status.equals("Present") && !status.equals("Absent")) throw new ApiError(400, "status must be Present or Absent");
+        CheckInPipeline.Outcome outcome = checkIns.submit(id, event, status).join();
+        switch (outcome) {
+            case CHECKED_IN:
+                CheckInPipeline.CheckIn c = checkIns.lastCheckIn(id, event);
+                Map<String, Object> body = new LinkedHashMap<>();
+                body.put("id", id);
+                body.put("event", event);
+                body.put("status", status);
+                if (c != null) body.put("timestamp", c.timestamp);
+                return new Response(200, body);
+            case UNKNOWN_PARTICIPANT: throw new ApiError(404, "no participant " + id);
+            case UNKNOWN_EVENT: throw new ApiError(404, "no event " + event);
+            case NOT_REGISTERED: throw new ApiError(409, id + " is not registered for " + event);
+            case CLOSED: throw new ApiError(503, "server is shutting down");
+            default: throw new ApiError(500, "check-in could not be saved");
+        }
+    }
+
+    private Response analyticsRoute(HttpExchange ex) {
+        requireGet(ex.getRequestMethod());
+        return new Response(200, participants.analytics());
+    }
+
+    private Response eventsRoute(HttpExchange ex) throws IOException {
+        if (ex.getRequestMethod().equals("POST")) {
+            String name = text(asObject(readBody(ex)), "name", true);
+            if (!events.addEvent(name)) throw new ApiError(409, "event exists or could not be saved: " + name);
+            return new Response(201, events.loadEvents());
+        }
+        requireGet(ex.getRequestMethod());
+        return new Response(200, events.loadEvents());
+    }
+
+    // Each operation gets its own result object; a failed one carries "error" and does not stop the rest
+    private Response batchRoute(HttpExchange ex) throws IOException {
+        if (!ex.getRequestMethod().equals("POST")) throw new ApiError(405, "use POST");
+        Object body = readBody(ex);
+        if (!(body instanceof List)) throw new ApiError(400, "expected a JSON array of operations");
+        List<?> ops = (List<?>) body;
+        List<Object> results = participants.atomically(() -> {
+            List<Object> out = new ArrayList<>(ops.size());
+            for (Object o : ops) {
+                try {
+                    Map<String, Object> op = asObject(o);
+                    String kind = text(op, "op", true);
+                    if (kind.equals("register")) out.add(registration(op).body);
+                    else if (kind.equals("attendance")) out.add(attendance(op));
+                    else if (kind.equals("get")) out.add(participantJson(existing(text(op, "id", true))));
+                    else throw new ApiError(400, "unknown op: " + kind);
+                } catch (ApiError e) {
+                    out.add(errorBody(e.status, e.getMessage()));
+                }
+            }
+            return out;
+        });
+        return new Response(200, results);
+    }
+
+    // ---------- Operations shared by single and batch requests ----------
+
+    private Response registration(Map<String, Object> p) {
+        String name = text(p, "name", true), email = text(p, "email", true), phone = text(p, "phone", true);
+        List<String> evs = new ArrayList<>();
+        Object list = p.get("events");
+        if (list instanceof List) {
+            for (Object e : (List<?>) list) if (e != null) evs.add(e.toString());
+        } else if (list instanceof String) {
+            evs.add((String) list);
+        }
+        // register() would create a misspelled event on the spot; events are added through /events
+        for (String e : evs) {
+            if (e.trim().isEmpty() || events.idOf(e) >= 0) continue;
+            participants.sync(); // another desk may have just added it (no-op unless shared)
+            if (events.idOf(e) < 0) throw new ApiError(400, "unknown event: " + e);
+        }
+        ParticipantFileHandler.Registration reg = participants.register(name, email, phone, text(p, "department", false),
+                text(p, "college", false), text(p, "year", false), evs);
+        if (reg.row == null && reg.duplicate != null && !reg.merged) {
+            throw new ApiError(409, "duplicate " + reg.duplicate.field + " of " + reg.duplicate.id);
+        }
+        if (reg.row == null) throw new ApiError(500, "registration could not be saved");
+        Map<String, Object> body = participantJson(reg.row);
+        if (reg.duplicate != null) {
+            body.put("duplicateOf", reg.duplicate.id);
+            body.put("merged", reg.merged);
+        }
+        return new Response(reg.merged ? 200 : 201, body);
+    }
+
+    private Map<String, Object> attendance(Map<String, Object> p) {
+        String id = text(p, "id", true);
+        String status = text(p, "status", false);
+        if (status.isEmpty()) status = "Present";
+        if (!status.equals("Present") && !status.equals("Absent")) throw new ApiError(400, "status must be Present or Absent");
+        if (!participants.markAttendance(id, status)) {
+            throw participants.findById(id) == null ? new ApiError(404, "no participant " + id)
+                    : new ApiError(500, "attendance could not be saved");
+        }
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("id", id);
+        body.put("attendance", status);
+        return body;
+    }
+
+    private String[] existing(String id) {
+        String[] r = participants.findById(id);
+        if (r == null) throw new ApiError(404, "no participant " + id);
+        return r;
+    }
+
+    private Response exportRoute(HttpExchange ex) {
+        requireGet(ex.getRequestMethod());
+        Map<String, String> q = query(ex);
+        String event = q.getOrDefault("event", "").trim();
+        if (!event.isEmpty() && events.idOf(event) < 0) throw new ApiError(404, "no event " + event);
+        String columns = q.getOrDefault("columns", "").trim();
+        String accept = ex.getRequestHeaders().getFirst("Accept-Encoding");
+        String g = q.getOrDefault("gzip", "");
+        boolean gzip = g.equals("1") || g.equalsIgnoreCase("true") || accept != null && accept.contains("gzip");
+        ParticipantExport spec = new ParticipantExport().event(event).college(q.get("college"))
+                .attendance(q.get("attendance")).columns(columns.isEmpty() ? new String[0] : columns.split("\\s*,\\s*"))
+                .gzip(gzip);
+        if (gzip) ex.getResponseHeaders().set("Content-Encoding", "gzip");
+        ex.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"participants.csv\"");
+        return new Response(200, "text/csv", out -> participants.export(spec, out));
+    }
+
+    static Map<String, Object> participantJson(String[] r) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("id", r[0]);
+        m.put("name", r[1]);
+        m.put("email", r[2]);
+        m.put("phone", r[3]);
+        m.put("department", r[4]);
+        m.put("college", r[5]);
+        m.put("year", r[6]);
+        List<String> evs = new ArrayList<>();
+        for (String e : r[7].split("\\|")) if (!e.trim().isEmpty()) evs.add(e.trim());
+        m.put("events", evs);
+        m.put("attendance", r[8]);
+        return m;
+    }
+
+    // ---------- HTTP plumbing ----------
+
+    private void handle(HttpExchange ex, Route route) throws IOException {
+        try (Metrics.Timer t = Metrics.time("http." + ex.getHttpContext().getPath().substring(1))) {
+            t.bytesWritten(respond(ex, route));
+        }
+    }
+
+    // Returns the bytes of a JSON body sent (streamed bodies are counted by their own operations)
+    private long respond(HttpExchange ex, Route route) throws IOException {
+        Response res;
+        try {
+            res = route.serve(ex);
+        } catch (ApiError e) {
+            res = new Response(e.status, errorBody(e.status, e.getMessage()));
+        } catch (IllegalArgumentException e) { // malformed JSON
+            res = new Response(400, errorBody(400, e.getMessage()));
+        } catch (RuntimeException e) {
+            Metrics.error("server", e);
+            res = new Response(500, errorBody(500, String.valueOf(e)));
+        }
+        if (res.stream != null) {
+            ex.getResponseHeaders().set("Content-Type", res.contentType);
+            ex.sendResponseHeaders(res.status, 0);
+            try (OutputStream os = ex.getResponseBody()) {
+                res.stream.writeTo(Channels.newChannel(os));
+            } catch (IOException e) {
+                Metrics.error("server", e); // the status is already sent; the client sees a cut-off body
+            }
+            return 0;
+        }
+        byte[] out = Json.write(res.body).getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        ex.sendResponseHeaders(res.status, out.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(out);
+        }
+        return out.length;
+    }
+
+    private static Map<String, Object> errorBody(int status, String message) {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("status", status);
+        m.put("error", message);
+        return m;
+    }
+
+    private static Object readBody(HttpExchange ex) throws IOException {
+        try (InputStream in = ex.getRequestBody()) {
+            return Json.parse(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asObject(Object o) {
+        if (!(o instanceof Map)) throw new ApiError(400, "expected a JSON object");
+        return (Map<String, Object>) o;
+    }
+
+    private static String text(Map<String, Object> m, String key, boolean required) {
+        Object v = m.get(key);
+        String s = v == null ? "" : v instanceof Number && ((Number) v).doubleValue() == ((Number) v).longValue()
+                ? String.valueOf(((Number) v).longValue()) : v.toString().trim();
+        if (required && s.isEmpty()) throw new ApiError(400, "missing " + key);
+        return s;
+    }
+
+    private static void requireGet(String method) {
+        if (!method.equals("GET")) throw new ApiError(405, "use GET");
+    }
+
+    private static int parseInt(String s, String what) {
+        try {
+            return Integer.parseInt(s.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiError(400, "bad " + what + ": " + s);
+        }
+    }
+
+    private static long parseLong(String s, String what) {
+        try {
+            return Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            throw new ApiError(400, "bad " + what + ": " + s);
+        }
+    }
+
+    private static Map<String, String> query(HttpExchange ex) {
+        Map<String, String> q = new HashMap<>();
+        String raw = ex.getRequestURI().getRawQuery();
+        if (raw == null) return q;
+        for (String pair : raw.split("&")) {
+            int eq = pair.indexOf('=');
+            String k = eq < 0 ? pair : pair.substring(0, eq);
+            String v = eq < 0 ? "" : pair.substring(eq + 1);
+            q.put(URLDecoder.decode(k, StandardCharsets.UTF_8), URLDecoder.decode(v, StandardCharsets.UTF_8));
+        }
+        return q;
+    }
+}
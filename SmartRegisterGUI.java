@@ -1,5 +1,7 @@
 import javax.swing.*;
-import javax.swing.table.DefaultTableModel;  // <-- for table model
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.table.TableRowSorter;
 import java.awt.*;
 import java.awt.event.*;
 import java.io.*;
@@ -7,6 +9,9 @@ import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.Arrays;  // <-- for Arrays.asList()
 
 /**
@@ -14,32 +19,64 @@ import java.util.Arrays;  // <-- for Arrays.asList()
  * Requires EventFileHandler.java and ParticipantFileHandler.java in same folder.
  */
 public class SmartRegisterGUI {
+    private static final int SEARCH_DEBOUNCE_MS = 250;
+
     // handlers
     private final EventFileHandler eventHandler = new EventFileHandler();
-    private final ParticipantFileHandler participantHandler = new ParticipantFileHandler();
+    private final ParticipantFileHandler participantHandler = new ParticipantFileHandler("participants.csv", true, true, eventHandler.dictionary());
+    private CheckInPipeline checkIns; // per-event, timestamped check-ins (attendance.dat)
 
     // GUI components
     private JFrame frame;
-    private DefaultTableModel tableModel;
+    private BackgroundRunner bg;
+    private ParticipantTableModel tableModel;
     private JTable participantTable;
+    private TableRowSorter<ParticipantTableModel> sorter;
+
+    // live search state (EDT only)
+    private javax.swing.Timer searchDebounce;
+    private SwingWorker<List<String[]>, Void> searchWorker;
+    private int searchSeq;
+    private String lastQuery = "";
+    private List<String[]> lastHits;
+    private int lastHitsModCount;
 
     // registration fields
     private JTextField nameField, emailField, phoneField, deptField, collegeField, yearField, searchField;
     private JPanel eventPanel;
-    private java.util.List<JCheckBox> regEventCBs;
+    private java.util.List<JCheckBox> regEventCBs = new ArrayList<>();
 
     public static void main(String[] args) {
-        SwingUtilities.invokeLater(() -> {
-            SmartRegisterGUI gui = new SmartRegisterGUI();
-            gui.createAndShow();
-        });
+        // metrics dump for event day: -Dsmartreg.metrics=metrics.json [-Dsmartreg.metrics.interval=60]
+        Metrics.startDumpFromProperties();
+        // stack traces of EDT blocks over the threshold (Diagnostics button): -Dsmartreg.edt.threshold=100 [-Dsmartreg.edt.log=edt-stalls.log]
+        EdtWatchdog.install(Long.getLong("smartreg.edt.threshold", EdtWatchdog.DEFAULT_THRESHOLD_MILLIS));
+        // handlers load their files here on the main thread, before the EDT gets involved
+        SmartRegisterGUI gui = new SmartRegisterGUI();
+        // duplicate policy for registration and import: -Dsmartreg.duplicates=REJECT|WARN|MERGE
+        gui.participantHandler.setDuplicatePolicy(ParticipantFileHandler.DuplicatePolicy.valueOf(
+                System.getProperty("smartreg.duplicates", "WARN").toUpperCase()));
+        // several desks on one shared folder: -Dsmartreg.shared=true (before the check-in thread starts)
+        gui.participantHandler.setShared(Boolean.getBoolean("smartreg.shared"));
+        try {
+            gui.checkIns = new CheckInPipeline(gui.participantHandler, gui.eventHandler.dictionary(), "attendance.dat");
+        } catch (IOException e) {
+            Metrics.error("checkin", e); // event check-in stays disabled
+        }
+        SwingUtilities.invokeLater(gui::createAndShow);
     }
 
     private void createAndShow() {
         frame = new JFrame("SmartRegister - Participant Management");
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(1200, 700);
+        // fold the journal back into participants.csv (and refresh participants.csv.bin) on the way out
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            if (checkIns != null) checkIns.close();
+            participantHandler.close();
+        }));
         frame.setLayout(new BorderLayout(8, 8));
+        bg = new BackgroundRunner(frame);
 
         // Top: Registration panel
         JPanel regPanel = new JPanel(new BorderLayout());
@@ -79,12 +116,10 @@ public class SmartRegisterGUI {
         frame.add(regPanel, BorderLayout.NORTH);
 
         // Center: table
-        String[] cols = {"ID","Name","Email","Phone","Department","College","Year","Events","Attendance"};
-        tableModel = new DefaultTableModel(cols, 0) {
-            public boolean isCellEditable(int r,int c){ return false; }
-        };
+        tableModel = new ParticipantTableModel(participantHandler);
         participantTable = new JTable(tableModel);
-        participantTable.setAutoCreateRowSorter(true);
+        sorter = tableModel.createSorter();
+        participantTable.setRowSorter(sorter);
         JScrollPane tableScroll = new JScrollPane(participantTable);
         tableScroll.setBorder(BorderFactory.createTitledBorder("Registered Participants"));
         frame.add(tableScroll, BorderLayout.CENTER);
@@ -107,7 +142,8 @@ public class SmartRegisterGUI {
         JButton deleteBtn = new JButton("Delete");
         JButton markPresent = new JButton("Mark Present");
         JButton markAbsent = new JButton("Mark Absent");
-        editP.add(editBtn); editP.add(deleteBtn); editP.add(markPresent); editP.add(markAbsent);
+        JButton checkInBtn = new JButton("Event Check-In");
+        editP.add(editBtn); editP.add(deleteBtn); editP.add(markPresent); editP.add(markAbsent); editP.add(checkInBtn);
         right.add(editP);
 
         // Event management
@@ -123,8 +159,9 @@ public class SmartRegisterGUI {
         JButton exportBtn = new JButton("Export CSV");
         JButton analyticsBtn = new JButton("Analytics");
         JButton adminBtn = new JButton("Admin Login");
+        JButton diagBtn = new JButton("Diagnostics");
         JButton exitBtn = new JButton("Exit");
-        utilP.add(exportBtn); utilP.add(analyticsBtn); utilP.add(adminBtn); utilP.add(exitBtn);
+        utilP.add(exportBtn); utilP.add(analyticsBtn); utilP.add(adminBtn); utilP.add(diagBtn); utilP.add(exitBtn);
         right.add(utilP);
 
         frame.add(right, BorderLayout.EAST);
@@ -138,69 +175,76 @@ public class SmartRegisterGUI {
         clearBtn.addActionListener(e -> clearForm());
         importBtn.addActionListener(e -> doImport());
 
-        searchBtn.addActionListener(e -> {
-            String kw = searchField.getText().trim();
-            if (kw.isEmpty()) { reloadTable(); return; }
-            List<String[]> r = participantHandler.search(kw);
-            tableModel.setRowCount(0);
-            for (String[] arr : r) tableModel.addRow(arr);
+        // search as you type: debounce keystrokes, then filter the view (the model is never rebuilt)
+        searchDebounce = new javax.swing.Timer(SEARCH_DEBOUNCE_MS, e -> runSearch());
+        searchDebounce.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            public void removeUpdate(DocumentEvent e) { searchDebounce.restart(); }
+            public void changedUpdate(DocumentEvent e) { }
         });
-        resetBtn.addActionListener(e -> { searchField.setText(""); reloadTable(); });
+        searchBtn.addActionListener(e -> { searchDebounce.stop(); runSearch(); });
+        resetBtn.addActionListener(e -> { searchField.setText(""); searchDebounce.stop(); runSearch(); });
 
         editBtn.addActionListener(e -> doEdit());
         deleteBtn.addActionListener(e -> doDelete());
         markPresent.addActionListener(e -> changeAttendance("Present"));
         markAbsent.addActionListener(e -> changeAttendance("Absent"));
+        checkInBtn.addActionListener(e -> doEventCheckIn());
 
         addEv.addActionListener(e -> {
             String ev = JOptionPane.showInputDialog(frame, "Enter new event name:");
             if (ev == null || ev.trim().isEmpty()) return;
-            boolean ok = eventHandler.addEvent(ev.trim());
-            if (ok) { buildEventCheckboxes(); reloadTable(); JOptionPane.showMessageDialog(frame, "Event added."); }
-            else JOptionPane.showMessageDialog(frame, "Event exists or invalid.");
+            bg.run("Add event", () -> eventHandler.addEvent(ev.trim()), ok -> {
+                if (ok) { buildEventCheckboxes(); JOptionPane.showMessageDialog(frame, "Event added."); }
+                else JOptionPane.showMessageDialog(frame, "Event exists or invalid.");
+            });
         });
 
-        renameEv.addActionListener(e -> {
-            List<String> evs = eventHandler.loadEvents();
+        renameEv.addActionListener(e -> bg.run("Load events", eventHandler::loadEvents, evs -> {
             if (evs.isEmpty()) { JOptionPane.showMessageDialog(frame, "No events to rename."); return; }
             String oldEv = (String) JOptionPane.showInputDialog(frame, "Select event to rename:", "Rename", JOptionPane.QUESTION_MESSAGE, null, evs.toArray(), evs.get(0));
             if (oldEv == null) return;
             String newEv = JOptionPane.showInputDialog(frame, "New name for " + oldEv + ":");
             if (newEv == null || newEv.trim().isEmpty()) return;
-            boolean ok = eventHandler.renameEvent(oldEv, newEv.trim());
-            if (ok) {
-                participantHandler.updateParticipantsForEvent(oldEv, newEv.trim());
-                buildEventCheckboxes();
-                reloadTable();
-                JOptionPane.showMessageDialog(frame, "Event renamed globally.");
-            } else JOptionPane.showMessageDialog(frame, "Rename failed (duplicate or invalid).");
-        });
-
-        removeEv.addActionListener(e -> {
-            List<String> evs = eventHandler.loadEvents();
+            bg.run("Rename event", () -> {
+                // participants store the event ID, so only events.csv is rewritten
+                int id = eventHandler.idOf(oldEv);
+                boolean ok = eventHandler.renameEvent(oldEv, newEv.trim());
+                if (ok) participantHandler.refreshEvent(id);
+                return ok;
+            }, ok -> {
+                if (ok) {
+                    buildEventCheckboxes();
+                    reloadTable();
+                    JOptionPane.showMessageDialog(frame, "Event renamed globally.");
+                } else JOptionPane.showMessageDialog(frame, "Rename failed (duplicate or invalid).");
+            });
+        }));
+
+        removeEv.addActionListener(e -> bg.run("Load events", eventHandler::loadEvents, evs -> {
             if (evs.isEmpty()) { JOptionPane.showMessageDialog(frame, "No events to remove."); return; }
             String ev = (String) JOptionPane.showInputDialog(frame, "Select event to remove:", "Remove", JOptionPane.QUESTION_MESSAGE, null, evs.toArray(), evs.get(0));
             if (ev == null) return;
             int c = JOptionPane.showConfirmDialog(frame, "Remove event '" + ev + "'? This will remove the tag from participants.", "Confirm", JOptionPane.YES_NO_OPTION);
             if (c != JOptionPane.YES_OPTION) return;
-            boolean ok = eventHandler.removeEvent(ev);
-            if (ok) {
-                participantHandler.updateParticipantsForEvent(ev, "");
-                buildEventCheckboxes();
-                reloadTable();
-                JOptionPane.showMessageDialog(frame, "Event removed.");
-            } else JOptionPane.showMessageDialog(frame, "Remove failed.");
-        });
-
-        exportBtn.addActionListener(e -> {
-            String dest = JOptionPane.showInputDialog(frame, "Enter destination path (e.g. out.csv):");
-            if (dest == null || dest.trim().isEmpty()) return;
-            boolean ok = participantHandler.exportTo(dest.trim());
-            JOptionPane.showMessageDialog(frame, ok ? "Exported to " + dest : "Export failed.");
-        });
-
-        analyticsBtn.addActionListener(e -> {
-            Map<String,Object> stats = participantHandler.analytics();
+            bg.run("Remove event", () -> {
+                int id = eventHandler.idOf(ev);
+                boolean ok = eventHandler.removeEvent(ev);
+                if (ok) participantHandler.refreshEvent(id);
+                return ok;
+            }, ok -> {
+                if (ok) {
+                    buildEventCheckboxes();
+                    reloadTable();
+                    JOptionPane.showMessageDialog(frame, "Event removed.");
+                } else JOptionPane.showMessageDialog(frame, "Remove failed.");
+            });
+        }));
+
+        exportBtn.addActionListener(e -> bg.run("Load events", eventHandler::loadEvents, this::showExportDialog));
+
+        analyticsBtn.addActionListener(e -> bg.run("Analytics", participantHandler::analytics, stats -> {
             int total = (int) stats.getOrDefault("totalParticipants", 0);
             double rate = (double) stats.getOrDefault("attendanceRate", 0.0);
             @SuppressWarnings("unchecked")
@@ -210,8 +254,19 @@ public class SmartRegisterGUI {
             sb.append(String.format("Attendance rate: %.2f%%\n\n", rate));
             sb.append("Participants per event:\n");
             if (byEvent.isEmpty()) sb.append(" (none)\n"); else byEvent.forEach((k,v)-> sb.append("  ").append(k).append(": ").append(v).append("\n"));
+            if (checkIns != null) {
+                StringBuilder in = new StringBuilder();
+                for (String ev : byEvent.keySet()) {
+                    int n = checkIns.presentCount(ev);
+                    if (n > 0) in.append("  ").append(ev).append(": ").append(n).append("\n");
+                }
+                if (in.length() > 0) sb.append("\nChecked in now (per event):\n").append(in);
+            }
+            appendTop(sb, "\nTop colleges:\n", stats.get("byCollege"));
+            appendTop(sb, "\nTop departments:\n", stats.get("byDepartment"));
+            appendTop(sb, "\nBy year:\n", stats.get("byYear"));
             JOptionPane.showMessageDialog(frame, sb.toString(), "Analytics", JOptionPane.INFORMATION_MESSAGE);
-        });
+        }));
 
         adminBtn.addActionListener(e -> {
             String pw = JOptionPane.showInputDialog(frame, "Enter admin password:");
@@ -220,6 +275,8 @@ public class SmartRegisterGUI {
             else JOptionPane.showMessageDialog(frame, "Invalid password.");
         });
 
+        diagBtn.addActionListener(e -> EdtWatchdog.get().showDialog(frame));
+
         exitBtn.addActionListener(e -> System.exit(0));
 
         frame.setLocationRelativeTo(null);
@@ -229,9 +286,12 @@ public class SmartRegisterGUI {
     // ---------- Helper UI & actions ----------
 
     private void buildEventCheckboxes() {
+        bg.run("Load events", eventHandler::loadEvents, this::showEventCheckboxes);
+    }
+
+    private void showEventCheckboxes(List<String> events) {
         eventPanel.removeAll();
         regEventCBs = new ArrayList<>();
-        List<String> events = eventHandler.loadEvents();
         for (String ev : events) {
             JCheckBox cb = new JCheckBox(ev);
             regEventCBs.add(cb);
@@ -242,9 +302,74 @@ public class SmartRegisterGUI {
     }
 
     private void reloadTable() {
-        tableModel.setRowCount(0);
-        List<String[]> rows = participantHandler.loadParticipants();
-        for (String[] r : rows) tableModel.addRow(r);
+        // pick up what other desks saved first (no-op unless shared)
+        bg.run("Load participants", () -> {
+            participantHandler.sync();
+            return participantHandler.participantSnapshot();
+        }, this::showRows);
+    }
+
+    private void showRows(ParticipantFileHandler.Snapshot snapshot) {
+        tableModel.setSnapshot(snapshot);
+        refreshSearch();
+    }
+
+    // Show the participant's current row after a change made outside the table (a check-in)
+    private void reloadRow(String id) {
+        bg.run("Load participant", () -> participantHandler.findById(id), updated -> {
+            if (updated != null) { tableModel.rowUpdated(updated); refreshSearch(); }
+        });
+    }
+
+    // Re-apply an active search filter after rows changed
+    private void refreshSearch() {
+        if (!searchField.getText().trim().isEmpty()) runSearch();
+    }
+
+    /**
+     * Run the query in the search field and show only matching rows. A query that extends the
+     * previous one narrows the previous hits instead of hitting the index; any older query still
+     * queued is cancelled and late results of superseded queries are dropped.
+     */
+    private void runSearch() {
+        String kw = searchField.getText().trim();
+        int seq = ++searchSeq;
+        if (searchWorker != null) searchWorker.cancel(false);
+        if (kw.isEmpty()) {
+            searchWorker = null;
+            lastQuery = "";
+            lastHits = null;
+            sorter.setRowFilter(null);
+            return;
+        }
+        List<String[]> within = lastHits != null && kw.toLowerCase().contains(lastQuery.toLowerCase()) ? lastHits : null;
+        int withinModCount = lastHitsModCount;
+        int[] modCount = new int[1];
+        Set<Integer> keys = new HashSet<>(); // filled off the EDT, read on it once the search is done
+        searchWorker = bg.run("Search", () -> {
+            modCount[0] = participantHandler.modCount();
+            List<String[]> hits = within != null && modCount[0] == withinModCount
+                    ? participantHandler.search(kw, within) : participantHandler.search(kw);
+            for (String[] h : hits) keys.add(participantHandler.keyOf(h[0]));
+            return hits;
+        }, hits -> {
+            if (seq != searchSeq) return;
+            lastQuery = kw;
+            lastHits = hits;
+            lastHitsModCount = modCount[0];
+            // match on the row's key: the model decodes no row for this
+            sorter.setRowFilter(new RowFilter<ParticipantTableModel, Integer>() {
+                public boolean include(Entry<? extends ParticipantTableModel, ? extends Integer> entry) {
+                    return keys.contains(entry.getModel().keyAt(entry.getIdentifier()));
+                }
+            });
+        });
+    }
+
+    // Model index of the selected row (the view may be sorted), or -1
+    private int selectedModelRow() {
+        int row = participantTable.getSelectedRow();
+        return row == -1 ? -1 : participantTable.convertRowIndexToModel(row);
     }
 
     private void doRegister() {
@@ -260,24 +385,35 @@ public class SmartRegisterGUI {
             JOptionPane.showMessageDialog(frame, "Please fill Name, Email, Phone and select at least one event.");
             return;
         }
-        // duplicate detection by email or phone
-        for (String[] r : participantHandler.loadParticipants()) {
-            if (r.length > 2 && email.equalsIgnoreCase(r[2])) {
-                int opt = JOptionPane.showConfirmDialog(frame, "A participant with same email exists. Continue?", "Duplicate", JOptionPane.YES_NO_OPTION);
+        // duplicate detection by email or phone (hash lookup); under WARN ask first, the rest is
+        // decided by register(), which checks and saves as one step so two desks cannot both insert
+        boolean warn = participantHandler.getDuplicatePolicy() == ParticipantFileHandler.DuplicatePolicy.WARN;
+        bg.run("Register", () -> warn ? participantHandler.findDuplicate(email, phone) : null, seen -> {
+            if (seen != null) {
+                int opt = JOptionPane.showConfirmDialog(frame, "A participant with same " + seen.field + " exists. Continue?", "Duplicate", JOptionPane.YES_NO_OPTION);
                 if (opt != JOptionPane.YES_OPTION) return;
-                break;
             }
-            if (r.length > 3 && phone.equals(r[3])) {
-                int opt = JOptionPane.showConfirmDialog(frame, "A participant with same phone exists. Continue?", "Duplicate", JOptionPane.YES_NO_OPTION);
-                if (opt != JOptionPane.YES_OPTION) return;
-                break;
-            }
-        }
-        // save
-        participantHandler.saveParticipant(name, email, phone, dept, college, year, chosen);
-        reloadTable();
-        clearForm();
-        JOptionPane.showMessageDialog(frame, "Participant registered.");
+            bg.run("Register", () -> participantHandler.register(name, email, phone, dept, college, year, chosen), reg -> {
+                ParticipantFileHandler.Duplicate dup = reg.duplicate;
+                if (reg.row == null) {
+                    JOptionPane.showMessageDialog(frame, dup != null && !reg.merged
+                            ? "A participant with same " + dup.field + " exists (" + dup.id + "). Registration rejected."
+                            : "Registration failed.");
+                    return;
+                }
+                if (reg.merged) tableModel.rowUpdated(reg.row);
+                else tableModel.rowInserted(reg.row);
+                refreshSearch();
+                clearForm();
+                if (reg.merged) {
+                    JOptionPane.showMessageDialog(frame, "Same " + dup.field + " as " + dup.id + ": events merged into that participant.");
+                } else if (dup != null && seen == null) { // registered at another desk meanwhile
+                    JOptionPane.showMessageDialog(frame, "Participant registered (" + reg.row[0] + "), but " + dup.id + " has the same " + dup.field + ".");
+                } else {
+                    JOptionPane.showMessageDialog(frame, "Participant registered.");
+                }
+            });
+        });
     }
 
     private void clearForm() {
@@ -291,41 +427,48 @@ public class SmartRegisterGUI {
         int res = fc.showOpenDialog(frame);
         if (res != JFileChooser.APPROVE_OPTION) return;
         File f = fc.getSelectedFile();
-        try (BufferedReader br = new BufferedReader(new FileReader(f))) {
-            String line; boolean first=true;
-            int added=0;
-            while ((line = br.readLine()) != null) {
-                if (first) { first=false; continue; } // skip header
-                String[] p = splitCSV(line);
-                // expected: Name,Email,Phone,Department,College,Year,Events
-                if (p.length >= 7) {
-                    String name = p[0].trim(), email = p[1].trim(), phone = p[2].trim();
-                    String dept = p[3].trim(), college = p[4].trim(), year = p[5].trim();
-                    String events = p[6].trim();
-                    List<String> evs = new ArrayList<>();
-                    for (String s : events.split("[;|]")) {
-                        String t = s.trim();
-                        if (!t.isEmpty()) evs.add(t);
-                    }
-                    participantHandler.saveParticipant(name, email, phone, dept, college, year, evs);
-                    added++;
-                }
+        bg.runWithProgress("Importing " + f.getName(), progress -> {
+            // parsed and validated on all cores; rows are still written (and given IDs) in sheet order
+            try (Reader in = new FileReader(f)) {
+                return new ImportPipeline(participantHandler).run(in, new ParticipantFileHandler.ImportListener() {
+                    public void progress(int done, int total) { progress.update(done, total); }
+                    public boolean isCancelled() { return progress.isCancelled(); }
+                });
             }
+        }, r -> {
             reloadTable();
-            JOptionPane.showMessageDialog(frame, "Imported " + added + " participants.");
-        } catch (IOException ex) {
-            JOptionPane.showMessageDialog(frame, "Import failed: " + ex.getMessage());
-        }
+            StringBuilder msg = new StringBuilder((r.cancelled ? "Import cancelled after " : "Imported ") + r.added + " participants.");
+            if (!r.errors.isEmpty()) {
+                msg.append("\n").append(r.errors.size()).append(" rows skipped:");
+                for (int i = 0; i < Math.min(10, r.errors.size()); i++) msg.append("\n  ").append(r.errors.get(i));
+                if (r.errors.size() > 10) msg.append("\n  ...");
+            }
+            if (r.merged > 0) msg.append("\n").append(r.merged).append(" duplicate rows merged into existing participants.");
+            if (!r.warnings.isEmpty()) {
+                msg.append("\n").append(r.warnings.size()).append(" possible duplicates imported:");
+                for (int i = 0; i < Math.min(10, r.warnings.size()); i++) msg.append("\n  ").append(r.warnings.get(i));
+                if (r.warnings.size() > 10) msg.append("\n  ...");
+            }
+            JOptionPane.showMessageDialog(frame, msg.toString());
+        });
     }
 
     private void doEdit() {
-        int row = participantTable.getSelectedRow();
+        int row = selectedModelRow();
         if (row == -1) { JOptionPane.showMessageDialog(frame, "Select a participant to edit."); return; }
         String id = (String) tableModel.getValueAt(row, 0);
         String curName = getSafe(row,1), curEmail = getSafe(row,2), curPhone = getSafe(row,3);
         String curDept = getSafe(row,4), curCollege = getSafe(row,5), curYear = getSafe(row,6);
-        String curEvents = getSafe(row,7);
-        String curAttendance = getSafe(row,8);
+        // event -> currently registered; exact membership, so "Dance" is not ticked for "Dance Battle"
+        bg.run("Load events", () -> {
+            Map<String, Boolean> evs = new LinkedHashMap<>();
+            for (String ev : eventHandler.loadEvents()) evs.put(ev, participantHandler.inEvent(id, ev));
+            return evs;
+        }, evs -> showEditDialog(id, curName, curEmail, curPhone, curDept, curCollege, curYear, evs));
+    }
+
+    private void showEditDialog(String id, String curName, String curEmail, String curPhone, String curDept,
+                                String curCollege, String curYear, Map<String, Boolean> evList) {
 
         JTextField nameF = new JTextField(curName);
         JTextField emailF = new JTextField(curEmail);
@@ -335,11 +478,10 @@ public class SmartRegisterGUI {
         JTextField yearF = new JTextField(curYear);
 
         JPanel evPanel = new JPanel(new GridLayout(0,1));
-        List<String> evList = eventHandler.loadEvents();
         List<JCheckBox> editCBs = new ArrayList<>();
-        for (String ev : evList) {
-            JCheckBox cb = new JCheckBox(ev);
-            if (curEvents != null && curEvents.contains(ev)) cb.setSelected(true);
+        for (Map.Entry<String, Boolean> ev : evList.entrySet()) {
+            JCheckBox cb = new JCheckBox(ev.getKey());
+            cb.setSelected(ev.getValue());
             editCBs.add(cb); evPanel.add(cb);
         }
 
@@ -357,29 +499,107 @@ public class SmartRegisterGUI {
         List<String> sel = new ArrayList<>();
         for (JCheckBox cb : editCBs) if (cb.isSelected()) sel.add(cb.getText());
         String evs = String.join(" | ", sel);
-        boolean ok = participantHandler.edit(id, nameF.getText().trim(), emailF.getText().trim(), phoneF.getText().trim(),
-                deptF.getText().trim(), collegeF.getText().trim(), yearF.getText().trim(), evs, curAttendance);
-        if (ok) reloadTable();
-        JOptionPane.showMessageDialog(frame, ok ? "Updated." : "Update failed.");
+        String name = nameF.getText().trim(), email = emailF.getText().trim(), phone = phoneF.getText().trim();
+        String dept = deptF.getText().trim(), college = collegeF.getText().trim(), year = yearF.getText().trim();
+        // null attendance keeps the stored value: a check-in made while the dialog was open must stand
+        bg.run("Edit", () -> participantHandler.edit(id, name, email, phone, dept, college, year, evs, null)
+                ? participantHandler.findById(id) : null, updated -> {
+            if (updated != null) { tableModel.rowUpdated(updated); refreshSearch(); }
+            JOptionPane.showMessageDialog(frame, updated != null ? "Updated." : "Update failed.");
+        });
+    }
+
+    // Destination, filters and columns of an export; a ".gz" destination is written gzip-compressed
+    private void showExportDialog(List<String> evs) {
+        JTextField destF = new JTextField("export.csv");
+        List<String> evChoices = new ArrayList<>();
+        evChoices.add("All events");
+        evChoices.addAll(evs);
+        JComboBox<String> eventBox = new JComboBox<>(evChoices.toArray(new String[0]));
+        JTextField collegeF = new JTextField();
+        JComboBox<String> attendanceBox = new JComboBox<>(new String[]{"Any", "Present", "Absent"});
+        JPanel colPanel = new JPanel(new GridLayout(0, 3));
+        List<JCheckBox> colCBs = new ArrayList<>();
+        for (String col : ParticipantExport.COLUMNS) {
+            JCheckBox cb = new JCheckBox(col, true);
+            colCBs.add(cb); colPanel.add(cb);
+        }
+
+        JPanel panel = new JPanel(new GridLayout(0,2,6,6));
+        panel.add(new JLabel("Destination (.csv or .csv.gz):")); panel.add(destF);
+        panel.add(new JLabel("Event:")); panel.add(eventBox);
+        panel.add(new JLabel("College:")); panel.add(collegeF);
+        panel.add(new JLabel("Attendance:")); panel.add(attendanceBox);
+        panel.add(new JLabel("Columns:")); panel.add(colPanel);
+
+        int res = JOptionPane.showConfirmDialog(frame, panel, "Export Participants", JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+        if (res != JOptionPane.OK_OPTION) return;
+        String dest = destF.getText().trim();
+        if (dest.isEmpty()) return;
+        List<String> cols = new ArrayList<>();
+        for (JCheckBox cb : colCBs) if (cb.isSelected()) cols.add(cb.getText());
+        if (cols.isEmpty()) { JOptionPane.showMessageDialog(frame, "Select at least one column."); return; }
+        ParticipantExport spec = new ParticipantExport()
+                .event(eventBox.getSelectedIndex() == 0 ? null : (String) eventBox.getSelectedItem())
+                .college(collegeF.getText())
+                .attendance(attendanceBox.getSelectedIndex() == 0 ? null : (String) attendanceBox.getSelectedItem())
+                .columns(cols.size() == ParticipantExport.COLUMNS.size() ? new String[0] : cols.toArray(new String[0]))
+                .gzip(dest.toLowerCase().endsWith(".gz"));
+        bg.run("Export", () -> participantHandler.exportTo(dest, spec),
+                ok -> JOptionPane.showMessageDialog(frame, ok ? "Exported to " + dest : "Export failed."));
     }
 
     private void doDelete() {
-        int row = participantTable.getSelectedRow();
+        int row = selectedModelRow();
         if (row == -1) { JOptionPane.showMessageDialog(frame, "Select a participant to delete."); return; }
         String id = (String) tableModel.getValueAt(row, 0);
         int c = JOptionPane.showConfirmDialog(frame, "Delete " + id + " ?", "Confirm", JOptionPane.YES_NO_OPTION);
         if (c != JOptionPane.YES_OPTION) return;
-        boolean ok = participantHandler.delete(id);
-        if (ok) { reloadTable(); JOptionPane.showMessageDialog(frame, "Deleted."); }
-        else JOptionPane.showMessageDialog(frame, "Delete failed.");
+        bg.run("Delete", () -> participantHandler.delete(id), ok -> {
+            if (ok) { tableModel.rowDeleted(id); JOptionPane.showMessageDialog(frame, "Deleted."); }
+            else JOptionPane.showMessageDialog(frame, "Delete failed.");
+        });
     }
 
     private void changeAttendance(String status) {
-        int row = participantTable.getSelectedRow();
+        int row = selectedModelRow();
         if (row == -1) { JOptionPane.showMessageDialog(frame, "Select a participant."); return; }
         String id = (String) tableModel.getValueAt(row, 0);
-        boolean ok = participantHandler.markAttendance(id, status);
-        if (ok) reloadTable();
+        bg.run("Attendance", () -> participantHandler.markAttendance(id, status) ? participantHandler.findById(id) : null, updated -> {
+            if (updated != null) { tableModel.rowUpdated(updated); refreshSearch(); }
+        });
+    }
+
+    // Check the selected participant in at one of their events (timestamped, group-committed)
+    private void doEventCheckIn() {
+        int row = selectedModelRow();
+        if (row == -1) { JOptionPane.showMessageDialog(frame, "Select a participant."); return; }
+        if (checkIns == null) { JOptionPane.showMessageDialog(frame, "Check-in log unavailable."); return; }
+        String id = (String) tableModel.getValueAt(row, 0);
+        List<String> evs = new ArrayList<>();
+        for (String ev : getSafe(row, 7).split("\\|")) if (!ev.trim().isEmpty()) evs.add(ev.trim());
+        if (evs.isEmpty()) { JOptionPane.showMessageDialog(frame, id + " is not registered for any event."); return; }
+        String ev = (String) JOptionPane.showInputDialog(frame, "Check " + id + " in at:", "Event Check-In",
+                JOptionPane.QUESTION_MESSAGE, null, evs.toArray(), evs.get(0));
+        if (ev == null) return;
+        bg.run("Check-in", () -> checkIns.checkIn(id, ev).join(), outcome -> {
+            if (outcome == CheckInPipeline.Outcome.CHECKED_IN) {
+                reloadRow(id);
+                JOptionPane.showMessageDialog(frame, id + " checked in at " + ev + " (" + checkIns.presentCount(ev) + " present).");
+            } else JOptionPane.showMessageDialog(frame, "Check-in failed: " + outcome);
+        });
+    }
+
+    // Append the 10 largest entries of a count map, biggest first
+    @SuppressWarnings("unchecked")
+    private static void appendTop(StringBuilder sb, String title, Object counts) {
+        if (!(counts instanceof Map)) return;
+        List<Map.Entry<String,Integer>> entries = new ArrayList<>(((Map<String,Integer>) counts).entrySet());
+        if (entries.isEmpty()) return;
+        entries.sort((a, b) -> b.getValue() - a.getValue());
+        sb.append(title);
+        for (int i = 0; i < Math.min(10, entries.size()); i++)
+            sb.append("  ").append(entries.get(i).getKey()).append(": ").append(entries.get(i).getValue()).append("\n");
     }
 
     // safe getter
@@ -387,23 +607,4 @@ public class SmartRegisterGUI {
         Object o = tableModel.getValueAt(row,col);
         return o == null ? "" : o.toString();
     }
-
-    // split CSV line with basic quoting support
-    private String[] splitCSV(String line) {
-        List<String> parts = new ArrayList<>();
-        if (line == null) return new String[0];
-        StringBuilder cur = new StringBuilder();
-        boolean inQuotes = false;
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (c == '"') {
-                if (inQuotes && i+1 < line.length() && line.charAt(i+1) == '"') { cur.append('"'); i++; }
-                else inQuotes = !inQuotes;
-            } else if (c == ',' && !inQuotes) {
-                parts.add(cur.toString()); cur.setLength(0);
-            } else cur.append(c);
-        }
-        parts.add(cur.toString());
-        return parts.toArray(new String[0]);
-    }
 }